@@ -0,0 +1,460 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.client;
+
+import android.app.Activity;
+import android.location.Location;
+import android.view.Choreographer;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * Live part of the client dashboard: location, satellites, data age, jitter buffer state and
+ * the state of every server when backup servers are configured.
+ * <p>
+ * Updates only store values; the views are rendered at most once per display frame, and a view
+ * is touched only when the value it shows, rounded to the displayed precision, has changed. Text
+ * is built with a reused {@link Formatter} and format strings resolved once. Nothing is scheduled
+ * while the activity is not visible, the data age is refreshed by a frame callback timed to the
+ * moment the displayed second changes.
+ */
+public class ClientDashboard {
+    // Data older than this is shown in red, seconds
+    private static final long STALE_DATA_AGE = 10;
+
+    /**
+     * Status line template like "Location: %s" split around its placeholder, so the value can be
+     * formatted straight into the shared buffer
+     */
+    private static final class Template {
+        final String prefix;
+        final String suffix;
+
+        Template(String template) {
+            int index = template.indexOf("%s");
+            prefix = index < 0 ? template : template.substring(0, index);
+            suffix = index < 0 ? "" : template.substring(index + 2);
+        }
+    }
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final StringBuilder text = new StringBuilder(128);
+    private final Formatter formatter = new Formatter(text, Locale.getDefault());
+
+    private final TextView locationText;
+    private final TextView satellitesText;
+    private final TextView providerText;
+    private final TextView ageText;
+    private final TextView additionalInfoText;
+    private final TextView jitterBufferText;
+    private final TextView dataAgeText;
+    private final TextView serversText;
+
+    private final String unknown;
+    private final Template locationStatus;
+    private final String locationFormat;
+    private final String altitudeFormat;
+    private final String accuracyFormat;
+    private final String satellitesStatus;
+    private final Template providerStatus;
+    private final Template ageStatus;
+    private final String ageFormat;
+    private final Template movementSpeed;
+    private final String speedFormat;
+    private final Template movementBearing;
+    private final String bearingFormat;
+    private final String jitterBufferStatus;
+    private final Template dataAgeStatus;
+    private final String dataAgeSeconds;
+    private final String dataAgeMinutes;
+    private final String serverStats;
+    private final String serverScoreFormat;
+    private final String serverNoScore;
+    private final String serverPrimaryMark;
+    private final String connectedText;
+    private final String connectingText;
+    private final String disconnectedText;
+    private final int freshColor;
+    private final int staleColor;
+
+    // Latest values, written by the setters
+    private boolean hasLocation = false;
+    private double latitude, longitude, altitude;
+    private float accuracy, speed, bearing, locationAge;
+    private boolean hasAltitude, hasAccuracy, hasSpeed, hasBearing;
+    private String provider = null;
+    private int satellites = 0;
+    private boolean hasJitterBuffer = false;
+    private int jitterBufferDepth;
+    private float jitterBufferLatency;
+    private long jitterBufferLateDrops;
+
+    // Values currently shown, in displayed units; Long.MIN_VALUE means never rendered
+    private long shownLatitude = Long.MIN_VALUE, shownLongitude, shownAltitude, shownAccuracy;
+    private int shownSatellites = -1;
+    private String shownProvider = null;
+    private boolean shownHasLocation = true;
+    private long shownLocationAge = Long.MIN_VALUE;
+    private long shownSpeed = Long.MIN_VALUE, shownBearing = Long.MIN_VALUE;
+    private long shownJitterDepth = Long.MIN_VALUE, shownJitterLatency, shownJitterLateDrops;
+    private long shownDataAge = Long.MIN_VALUE;
+    private String shownServers = null;
+    // Filled in place on every frame
+    private final ArrayList<GNSSClientService.ServerStats> servers = new ArrayList<>();
+
+    private boolean visible = false;
+    // An immediate frame is pending; a delayed data age frame is not counted
+    private boolean framePending = false;
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> {
+        framePending = false;
+        render();
+    };
+
+    public ClientDashboard(Activity activity) {
+        locationText = activity.findViewById(R.id.locationText);
+        satellitesText = activity.findViewById(R.id.satellitesText);
+        providerText = activity.findViewById(R.id.providerText);
+        ageText = activity.findViewById(R.id.ageText);
+        additionalInfoText = activity.findViewById(R.id.additionalInfoText);
+        jitterBufferText = activity.findViewById(R.id.jitterBufferText);
+        dataAgeText = activity.findViewById(R.id.dataAgeText);
+        serversText = activity.findViewById(R.id.serversText);
+
+        unknown = activity.getString(R.string.unknown);
+        locationStatus = new Template(activity.getString(R.string.location_status));
+        locationFormat = activity.getString(R.string.location_format);
+        altitudeFormat = activity.getString(R.string.altitude_format);
+        accuracyFormat = activity.getString(R.string.location_accuracy_format);
+        satellitesStatus = activity.getString(R.string.satellites_status);
+        providerStatus = new Template(activity.getString(R.string.provider_status));
+        ageStatus = new Template(activity.getString(R.string.age_status));
+        ageFormat = activity.getString(R.string.age_format);
+        movementSpeed = new Template(activity.getString(R.string.movement_speed));
+        speedFormat = activity.getString(R.string.speed_format);
+        movementBearing = new Template(activity.getString(R.string.movement_bearing));
+        bearingFormat = activity.getString(R.string.bearing_format);
+        jitterBufferStatus = activity.getString(R.string.jitter_buffer_status);
+        dataAgeStatus = new Template(activity.getString(R.string.data_age_status));
+        dataAgeSeconds = activity.getString(R.string.data_age_format_s);
+        dataAgeMinutes = activity.getString(R.string.data_age_format_ms);
+        serverStats = activity.getString(R.string.server_stats);
+        serverScoreFormat = activity.getString(R.string.server_score_format);
+        serverNoScore = activity.getString(R.string.server_no_score);
+        serverPrimaryMark = activity.getString(R.string.server_primary_mark);
+        connectedText = activity.getString(R.string.connected);
+        connectingText = activity.getString(R.string.connecting);
+        disconnectedText = activity.getString(R.string.disconnected);
+        freshColor = activity.getColor(android.R.color.holo_green_light);
+        staleColor = activity.getColor(android.R.color.holo_red_light);
+
+        // Initial placeholders
+        text.setLength(0);
+        text.append(dataAgeStatus.prefix).append(unknown).append(dataAgeStatus.suffix);
+        dataAgeText.setText(text);
+        text.setLength(0);
+        text.append(movementSpeed.prefix).append(unknown).append(movementSpeed.suffix).append("  ")
+                .append(movementBearing.prefix).append(unknown).append(movementBearing.suffix);
+        additionalInfoText.setText(text);
+    }
+
+    /**
+     * Start rendering, called when the activity becomes visible
+     */
+    public void start() {
+        visible = true;
+        invalidate();
+    }
+
+    /**
+     * Stop rendering, called when the activity is no longer visible
+     */
+    public void stop() {
+        visible = false;
+        framePending = false;
+        choreographer.removeFrameCallback(frameCallback);
+    }
+
+    public void setLocation(Location location, String provider, float locationAge) {
+        hasLocation = true;
+        latitude = location.getLatitude();
+        longitude = location.getLongitude();
+        hasAltitude = location.hasAltitude();
+        altitude = location.getAltitude();
+        hasAccuracy = location.hasAccuracy();
+        accuracy = location.getAccuracy();
+        hasSpeed = location.hasSpeed();
+        speed = location.getSpeed();
+        hasBearing = location.hasBearing();
+        bearing = location.getBearing();
+        this.provider = provider;
+        this.locationAge = locationAge;
+        invalidate();
+    }
+
+    public void setSatellites(int satellites) {
+        this.satellites = satellites;
+        invalidate();
+    }
+
+    public void setJitterBuffer(int depth, float addedLatency, long lateDrops) {
+        hasJitterBuffer = true;
+        jitterBufferDepth = depth;
+        jitterBufferLatency = addedLatency;
+        jitterBufferLateDrops = lateDrops;
+        invalidate();
+    }
+
+    /**
+     * Show the location as unknown, e.g. after the connection is lost
+     */
+    public void clearLocation() {
+        hasLocation = false;
+        provider = null;
+        satellites = 0;
+        invalidate();
+    }
+
+    private void invalidate() {
+        if (!visible || framePending) {
+            return;
+        }
+        // Replaces a pending data age frame, the immediate one refreshes the age too
+        choreographer.removeFrameCallback(frameCallback);
+        choreographer.postFrameCallback(frameCallback);
+        framePending = true;
+    }
+
+    private void render() {
+        renderLocation();
+        renderSatellites();
+        renderAdditionalInfo();
+        renderJitterBuffer();
+        renderServers();
+        renderDataAge();
+    }
+
+    private void renderLocation() {
+        if (!hasLocation) {
+            if (shownHasLocation) {
+                shownHasLocation = false;
+                shownLatitude = Long.MIN_VALUE;
+                shownLocationAge = Long.MIN_VALUE;
+                shownProvider = null;
+                setStatus(locationText, locationStatus, unknown);
+                setStatus(providerText, providerStatus, unknown);
+                setStatus(ageText, ageStatus, unknown);
+            }
+            return;
+        }
+        shownHasLocation = true;
+
+        long lat = Math.round(latitude * 1e6);
+        long lon = Math.round(longitude * 1e6);
+        long alt = hasAltitude ? Math.round(altitude * 10) : Long.MIN_VALUE;
+        long acc = hasAccuracy ? Math.round(accuracy * 10) : Long.MIN_VALUE;
+        if (lat != shownLatitude || lon != shownLongitude || alt != shownAltitude || acc != shownAccuracy) {
+            shownLatitude = lat;
+            shownLongitude = lon;
+            shownAltitude = alt;
+            shownAccuracy = acc;
+
+            text.setLength(0);
+            text.append(locationStatus.prefix);
+            formatter.format(locationFormat, latitude, longitude);
+            text.append(locationStatus.suffix);
+            if (hasAltitude) {
+                formatter.format(altitudeFormat, altitude);
+            }
+            if (hasAccuracy) {
+                formatter.format(accuracyFormat, accuracy);
+            }
+            locationText.setText(text);
+        }
+
+        String shown = provider != null ? provider : unknown;
+        if (!shown.equals(shownProvider)) {
+            shownProvider = shown;
+            setStatus(providerText, providerStatus, shown);
+        }
+
+        long age = Math.round(locationAge * 10);
+        if (age != shownLocationAge) {
+            shownLocationAge = age;
+            text.setLength(0);
+            text.append(ageStatus.prefix);
+            formatter.format(ageFormat, locationAge);
+            text.append(ageStatus.suffix);
+            ageText.setText(text);
+        }
+    }
+
+    private void renderSatellites() {
+        if (satellites != shownSatellites) {
+            shownSatellites = satellites;
+            text.setLength(0);
+            formatter.format(satellitesStatus, satellites);
+            satellitesText.setText(text);
+        }
+    }
+
+    private void renderAdditionalInfo() {
+        // Without speed and bearing the previous values stay on screen
+        if (!hasLocation || (!hasSpeed && !hasBearing)) {
+            return;
+        }
+        long spd = hasSpeed ? Math.round(speed * 10) : Long.MIN_VALUE;
+        long brg = hasBearing ? Math.round(bearing * 10) : Long.MIN_VALUE;
+        if (spd == shownSpeed && brg == shownBearing) {
+            return;
+        }
+        shownSpeed = spd;
+        shownBearing = brg;
+
+        text.setLength(0);
+        if (hasSpeed) {
+            text.append(movementSpeed.prefix);
+            formatter.format(speedFormat, speed);
+            text.append(movementSpeed.suffix);
+        }
+        if (hasBearing) {
+            if (text.length() > 0) {
+                text.append("  ");
+            }
+            text.append(movementBearing.prefix);
+            formatter.format(bearingFormat, bearing);
+            text.append(movementBearing.suffix);
+        }
+        additionalInfoText.setText(text);
+    }
+
+    private void renderJitterBuffer() {
+        if (!hasJitterBuffer) {
+            return;
+        }
+        long latency = Math.round(jitterBufferLatency);
+        if (jitterBufferDepth == shownJitterDepth && latency == shownJitterLatency &&
+                jitterBufferLateDrops == shownJitterLateDrops) {
+            return;
+        }
+        if (shownJitterDepth == Long.MIN_VALUE) {
+            jitterBufferText.setVisibility(View.VISIBLE);
+        }
+        shownJitterDepth = jitterBufferDepth;
+        shownJitterLatency = latency;
+        shownJitterLateDrops = jitterBufferLateDrops;
+
+        text.setLength(0);
+        formatter.format(jitterBufferStatus, jitterBufferDepth, jitterBufferLatency, jitterBufferLateDrops);
+        jitterBufferText.setText(text);
+    }
+
+    /**
+     * One line per server, shown only when there is more than one. Refreshed with every frame,
+     * the view is touched only when the text has changed.
+     */
+    private void renderServers() {
+        int count = GNSSClientService.getServerStats(servers);
+        if (count <= 1) {
+            if (shownServers != null) {
+                shownServers = null;
+                serversText.setVisibility(View.GONE);
+            }
+            return;
+        }
+
+        text.setLength(0);
+        for (int i = 0; i < count; i++) {
+            GNSSClientService.ServerStats server = servers.get(i);
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            String state = switch (server.state) {
+                case CONNECTED -> connectedText;
+                case CONNECTING -> connectingText;
+                case DISCONNECTED -> disconnectedText;
+            };
+            formatter.format(serverStats,
+                    server.selection.primary ? serverPrimaryMark : "",
+                    server.address != null ? server.address : unknown,
+                    state,
+                    server.rttMillis >= 0 ? server.rttMillis : "-",
+                    server.selection.selectedFixes,
+                    server.selection.fixes);
+            if (Float.isNaN(server.selection.score)) {
+                text.append(serverNoScore);
+            } else {
+                formatter.format(serverScoreFormat, server.selection.score);
+            }
+        }
+
+        if (shownServers == null) {
+            serversText.setVisibility(View.VISIBLE);
+        } else if (shownServers.contentEquals(text)) {
+            return;
+        }
+        shownServers = text.toString();
+        serversText.setText(shownServers);
+    }
+
+    private void renderDataAge() {
+        if (!GNSSClientService.isServiceRunning()) {
+            return;
+        }
+        long lastUpdateTime = GNSSClientService.getLastUpdateTime();
+        if (lastUpdateTime <= 0) {
+            return;
+        }
+
+        long ageMillis = Math.max(0, System.currentTimeMillis() - lastUpdateTime);
+        long ageSeconds = ageMillis / 1000;
+        if (ageSeconds != shownDataAge) {
+            boolean wasStale = shownDataAge >= STALE_DATA_AGE;
+            boolean colorUnknown = shownDataAge == Long.MIN_VALUE;
+            shownDataAge = ageSeconds;
+
+            text.setLength(0);
+            text.append(dataAgeStatus.prefix);
+            if (ageSeconds < 60) {
+                formatter.format(dataAgeSeconds, ageSeconds);
+            } else {
+                formatter.format(dataAgeMinutes, ageSeconds / 60, ageSeconds % 60);
+            }
+            text.append(dataAgeStatus.suffix);
+            dataAgeText.setText(text);
+
+            boolean stale = ageSeconds >= STALE_DATA_AGE;
+            if (colorUnknown || stale != wasStale) {
+                dataAgeText.setTextColor(stale ? staleColor : freshColor);
+            }
+        }
+
+        // Come back exactly when the displayed second changes
+        choreographer.postFrameCallbackDelayed(frameCallback, 1000 - ageMillis % 1000);
+    }
+
+    private void setStatus(TextView view, Template template, String value) {
+        text.setLength(0);
+        text.append(template.prefix).append(value).append(template.suffix);
+        view.setText(text);
+    }
+}
@@ -19,11 +19,24 @@ package dezz.gnssshare.client;
 
 import android.content.Context;
 import android.net.DhcpInfo;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.net.Network;
 import android.net.wifi.WifiManager;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import dezz.gnssshare.shared.ClientSession;
+import dezz.gnssshare.shared.ConfigStore;
+import dezz.gnssshare.shared.FlightRecorder;
+import dezz.gnssshare.shared.FrameChannel;
+import dezz.gnssshare.shared.LivenessMonitor;
+import dezz.gnssshare.shared.LocalFrameChannel;
+import dezz.gnssshare.shared.LowLatencyWifi;
+
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
@@ -34,11 +47,26 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ConnectionManager {
     private static final String TAG = "ConnectionManager";
+
+    private static final FlightRecorder.Event EVENT_PACKET_SENT = FlightRecorder.define(Log.VERBOSE, TAG,
+            "Packet sent: %d");
     private static final int SERVER_PORT = 8887;
     private static final long RECONNECT_DELAY = 500;
+    // Failed attempts back off up to this delay, with jitter so clients don't retry in lockstep
+    private static final long MAX_RECONNECT_DELAY = 8000;
     private static final long CONNECTION_CHECK_INTERVAL = 1000;
-    private static final long HEARTBEAT_INTERVAL = 1000; // Send heartbeat every second
-    private static final byte HEARTBEAT_PACKET = 0x01; // Simple heartbeat packet
+    // Ping the server after it has been silent this much longer than the requested fix interval.
+    // A live server probes us after 1.5 s of our silence, so normally the ping is never needed
+    private static final long PROBE_MARGIN = 1500;
+    private static final long DEFAULT_UPDATE_INTERVAL = 1000;
+    // A dead server is detected within this time at the latest
+    private static final long LIVENESS_TIMEOUT = 3000;
+    private static final long LIVENESS_CHECK_INTERVAL = 250;
+    public static final String LOCAL_SERVER_ADDRESS = "local";
+    // Lets the server batch fixes in the GNSS chip and deliver them in bursts
+    private static final int LOW_RATE_UPDATE_INTERVAL = 5000;
+    // The address is edited a character at a time, reconnect once typing stops
+    private static final long ADDRESS_CHANGE_DELAY = 1500;
 
     public enum ConnectionState {
         DISCONNECTED,
@@ -49,7 +77,7 @@ public class ConnectionManager {
     public interface ConnectionListener {
         void onConnectionStateChanged(ConnectionState state, String message, String serverAddress);
 
-        void onConnectionEstablished(Socket socket, String serverAddress);
+        void onConnectionEstablished(FrameChannel channel, String serverAddress);
 
         void onDisconnected();
     }
@@ -63,27 +91,96 @@ public class ConnectionManager {
     private ConnectionState currentState = ConnectionState.DISCONNECTED;
     private String gatewayIP = null;
     private String serverAddress = null;
-    private Socket socket;
+    private volatile FrameChannel channel;
+    // Connect to a server app on this device instead of over Wi-Fi
+    private final boolean localTransport;
+    // Backup server address, null to follow the server settings
+    private final String fixedAddress;
+    // Wi-Fi network reported by the system, sockets are bound to it so they don't go over LTE
+    private volatile Network network = null;
+    // Network the current connection was made on
+    private volatile Network sessionNetwork = null;
     private final AtomicBoolean shutdown = new AtomicBoolean(false);
     private final AtomicBoolean isNetworkAvailable = new AtomicBoolean(false);
+    private int reconnectAttempts = 0;
 
-    private final Handler heartbeatHandler = new Handler(Looper.getMainLooper());
-    private final Runnable heartbeatRunnable;
+    private volatile LivenessMonitor liveness = null;
+    private final Handler livenessHandler = new Handler(Looper.getMainLooper());
+    private final Runnable livenessRunnable;
 
     private final Handler gatewayIpGetHandler = new Handler(Looper.getMainLooper());
     private final Runnable gatewayIpGetRunnable;
 
+    private final Runnable addressChangedRunnable = () -> {
+        if (shutdown.get() || currentState == ConnectionState.DISCONNECTED) {
+            // The next connection attempt picks up the new address anyway
+            return;
+        }
+        Log.i(TAG, "Server address changed, reconnecting");
+        disconnect("Server address changed");
+        scheduleReconnect();
+    };
+
+    // Settings that can change while connected are applied here
+    private final ConfigStore.Listener<Preferences.Config> configListener = (oldConfig, config) -> {
+        if (!localTransport && fixedAddress == null && (oldConfig.useGatewayIp != config.useGatewayIp ||
+                !Objects.equals(oldConfig.serverAddress, config.serverAddress))) {
+            mainHandler.removeCallbacks(addressChangedRunnable);
+            mainHandler.postDelayed(addressChangedRunnable, ADDRESS_CHANGE_DELAY);
+        }
+        if (oldConfig.lowRateMode != config.lowRateMode) {
+            FrameChannel channel = this.channel;
+            if (channel != null) {
+                // 0 lets the server stream at its own rate
+                int interval = config.lowRateMode ? LOW_RATE_UPDATE_INTERVAL : 0;
+                executor.execute(() -> sendUpdateInterval(channel, interval));
+                LivenessMonitor liveness = this.liveness;
+                if (liveness != null) {
+                    liveness.setIdleGap(probeIdleGap(config.lowRateMode));
+                }
+            }
+        }
+        if (oldConfig.satelliteDetail != config.satelliteDetail) {
+            FrameChannel channel = this.channel;
+            if (channel != null) {
+                executor.execute(() -> sendSatelliteDetail(channel, config.satelliteDetail));
+            }
+        }
+    };
+
     public ConnectionManager(Context context, ConnectionListener listener) {
+        this(context, listener, null);
+    }
+
+    /**
+     * @param fixedAddress address of a backup server, or null to connect to the configured server
+     */
+    public ConnectionManager(Context context, ConnectionListener listener, String fixedAddress) {
         this.context = context;
         this.listener = listener;
+        this.fixedAddress = fixedAddress;
+        this.localTransport = fixedAddress == null && Preferences.useLocalServer(context);
+        // The local server doesn't depend on Wi-Fi
+        this.isNetworkAvailable.set(localTransport);
 
-        this.heartbeatRunnable = new Runnable() {
+        this.livenessRunnable = new Runnable() {
             @Override
             public void run() {
-                if (currentState != ConnectionState.DISCONNECTED && socket != null) {
-                    sendHeartbeat();
-                    heartbeatHandler.postDelayed(this, HEARTBEAT_INTERVAL);
+                if (currentState == ConnectionState.DISCONNECTED || channel == null || liveness == null) {
+                    return;
+                }
+                if (liveness.isDead()) {
+                    Log.w(TAG, "Server not responding (timeout " + liveness.getTimeout() +
+                            "ms, RTT " + liveness.getSmoothedRtt() + "ms)");
+                    disconnect("Connection lost - attempting to reconnect...");
+                    scheduleReconnect();
+                    return;
+                }
+                if (liveness.shouldProbe()) {
+                    liveness.onProbeSent();
+                    sendPacket(ClientSession.PING_PACKET);
                 }
+                livenessHandler.postDelayed(this, LIVENESS_CHECK_INTERVAL);
             }
         };
 
@@ -103,33 +200,115 @@ public class ConnectionManager {
                 }
             }
         };
+
+        Preferences.addListener(context, configListener);
+    }
+
+    /**
+     * Must be called for every frame received from the server, the server is alive as long as
+     * frames keep coming.
+     */
+    public void onFrameReceived(boolean probe) {
+        LivenessMonitor liveness = this.liveness;
+        if (liveness != null) {
+            liveness.onFrameReceived();
+        }
+        if (probe) {
+            sendPacket(ClientSession.PONG_PACKET);
+        }
     }
 
-    private void sendHeartbeat() {
+    private void sendPacket(byte packet) {
         executor.execute(() -> {
+            FrameChannel channel = this.channel;
+            if (channel == null) {
+                return;
+            }
             try {
-                // Send a simple heartbeat packet (1 byte)
-                socket.getOutputStream().write(HEARTBEAT_PACKET);
-                socket.getOutputStream().flush();
-                Log.v(TAG, "Heartbeat sent");
+                channel.writePacket(packet);
+                FlightRecorder.record(EVENT_PACKET_SENT, packet);
             } catch (IOException e) {
-                Log.w(TAG, "Failed to send heartbeat", e);
+                Log.w(TAG, "Failed to send packet " + packet, e);
                 mainHandler.post(this::handleConnectionLoss);
             }
         });
     }
 
-    public void onNetworkAvailable() {
-        Log.d(TAG, "Network available");
+    /**
+     * Fixes, including batched ones in low rate mode, keep the link busy, a ping before the next
+     * one is due would only make the server send its status in between
+     */
+    private static long probeIdleGap(boolean lowRateMode) {
+        return (lowRateMode ? LOW_RATE_UPDATE_INTERVAL : DEFAULT_UPDATE_INTERVAL) + PROBE_MARGIN;
+    }
+
+    private void sendUpdateInterval(FrameChannel channel, int intervalMillis) {
+        try {
+            channel.writePacket(ClientSession.UPDATE_INTERVAL_PACKET, intervalMillis);
+            Log.d(TAG, "Requested update interval " + intervalMillis + "ms");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to request update interval", e);
+        }
+    }
+
+    private void sendSatelliteDetail(FrameChannel channel, boolean enabled) {
+        try {
+            channel.writePacket(ClientSession.SATELLITE_DETAIL_PACKET, enabled ? 1 : 0);
+            Log.d(TAG, (enabled ? "Requested" : "Stopped") + " satellite details");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to request satellite details", e);
+        }
+    }
+
+    /**
+     * Ask the server for a full satellite snapshot, after changes were missed
+     */
+    public void requestSatelliteSnapshot() {
+        FrameChannel channel = this.channel;
+        if (channel != null) {
+            executor.execute(() -> sendSatelliteDetail(channel, true));
+        }
+    }
+
+    /**
+     * Tell the server that fixes are read from its shared memory ring and need not be streamed
+     */
+    public void sendRingMode() {
+        sendPacket(ClientSession.RING_MODE_PACKET);
+    }
+
+    public void onNetworkAvailable(Network network) {
+        if (localTransport) {
+            return;
+        }
+        Log.d(TAG, "Network available: " + network);
+        this.network = network;
         isNetworkAvailable.set(true);
         gatewayIP = null;
-        if (!shutdown.get() && currentState == ConnectionState.DISCONNECTED) {
+        if (shutdown.get()) {
+            return;
+        }
+        if (currentState == ConnectionState.DISCONNECTED) {
             connect();
+        } else if (currentState == ConnectionState.CONNECTED && sessionNetwork != null && !sessionNetwork.equals(network)) {
+            // Don't wait for the old socket to time out
+            mainHandler.post(() -> {
+                disconnect("Network changed - reconnecting...");
+                scheduleReconnect();
+            });
         }
     }
 
-    public void onNetworkLost() {
-        Log.d(TAG, "Network lost");
+    public void onNetworkLost(Network network) {
+        if (localTransport) {
+            return;
+        }
+        if (this.network != null && !this.network.equals(network)) {
+            Log.d(TAG, "Network lost: " + network + ", not the one in use");
+            return;
+        }
+        Log.d(TAG, "Network lost: " + network);
+        this.network = null;
         gatewayIP = null;
         isNetworkAvailable.set(false);
         if (!shutdown.get() && currentState != ConnectionState.DISCONNECTED) {
@@ -146,11 +325,26 @@ public class ConnectionManager {
             return;
         }
 
-        boolean useGatewayIp = Preferences.useGatewayIp(context);
+        if (localTransport) {
+            serverAddress = LOCAL_SERVER_ADDRESS;
+            setState(ConnectionState.CONNECTING, "Attempting to connect to local server...", serverAddress);
+            doConnect();
+            return;
+        }
+
+        if (fixedAddress != null) {
+            serverAddress = fixedAddress;
+            setState(ConnectionState.CONNECTING, "Attempting to connect to server...", serverAddress);
+            doConnect();
+            return;
+        }
+
+        Preferences.Config config = Preferences.get(context);
+        boolean useGatewayIp = config.useGatewayIp;
         if (useGatewayIp) {
             serverAddress = gatewayIP;
         } else {
-            serverAddress = Preferences.serverAddress(context);
+            serverAddress = config.serverAddress;
         }
 
         setState(ConnectionState.CONNECTING, "Attempting to connect to server...", serverAddress);
@@ -164,54 +358,100 @@ public class ConnectionManager {
 
     private void doConnect() {
         executor.execute(() -> {
+            FrameChannel channel;
             try {
-                Log.i(TAG, "Connecting to " + serverAddress + ":" + SERVER_PORT);
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(serverAddress, SERVER_PORT), 500);
-                socket.setSoTimeout(2500);
-
-                if (shutdown.get()) {
-                    // Connection no longer wanted
-                    try {
-                        socket.close();
-                    } catch (IOException e) {
-                        Log.w(TAG, "Error closing unwanted socket", e);
-                    }
-                    return;
-                }
+                channel = localTransport ? connectLocal() : connectTcp();
             } catch (IOException e) {
                 Log.w(TAG, "Connection failed: " + e.getMessage());
-                if (socket != null) {
-                    try {
-                        socket.close();
-                    } catch (IOException ex) {
-                        Log.w(TAG, "Error closing socket", ex);
-                    }
-                    socket = null;
-                }
+                sessionNetwork = null;
                 scheduleReconnect();
                 return;
             }
 
-            heartbeatHandler.post(heartbeatRunnable);
-            mainHandler.post(() -> listener.onConnectionEstablished(socket, serverAddress));
+            if (shutdown.get()) {
+                // Connection no longer wanted
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Error closing unwanted connection", e);
+                }
+                return;
+            }
+            this.channel = channel;
+
+            if (Preferences.lowRateMode(context)) {
+                sendUpdateInterval(channel, LOW_RATE_UPDATE_INTERVAL);
+            }
+            if (Preferences.satelliteDetail(context)) {
+                sendSatelliteDetail(channel, true);
+            }
+
+            liveness = new LivenessMonitor(probeIdleGap(Preferences.lowRateMode(context)), LIVENESS_TIMEOUT,
+                    SystemClock::elapsedRealtime);
+            livenessHandler.post(livenessRunnable);
+            mainHandler.post(() -> listener.onConnectionEstablished(channel, serverAddress));
         });
     }
 
+    private FrameChannel connectTcp() throws IOException {
+        Log.i(TAG, "Connecting to " + serverAddress + ":" + SERVER_PORT);
+        Network network = this.network;
+        Socket socket = new Socket();
+        try {
+            if (network != null) {
+                network.bindSocket(socket);
+            }
+            sessionNetwork = network;
+            socket.connect(new InetSocketAddress(serverAddress, SERVER_PORT), 500);
+            socket.setSoTimeout((int) LIVENESS_TIMEOUT);
+            if (Preferences.lowLatencyWifi(context)) {
+                LowLatencyWifi.applySocketOptions(socket);
+            }
+
+            if (network != this.network && !shutdown.get()) {
+                // The network changed while connecting, start over on the new one
+                throw new IOException("Network changed while connecting");
+            }
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+        return FrameChannel.of(socket);
+    }
+
+    private FrameChannel connectLocal() throws IOException {
+        Log.i(TAG, "Connecting to local server " + FrameChannel.LOCAL_SOCKET_NAME);
+        LocalSocket socket = new LocalSocket();
+        try {
+            socket.connect(new LocalSocketAddress(FrameChannel.LOCAL_SOCKET_NAME));
+            socket.setSoTimeout((int) LIVENESS_TIMEOUT);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+        return new LocalFrameChannel(socket);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing socket", e);
+        }
+    }
+
     public void disconnect(String message) {
         setState(ConnectionState.DISCONNECTED, message, null);
 
-        heartbeatHandler.removeCallbacks(heartbeatRunnable);
+        livenessHandler.removeCallbacks(livenessRunnable);
+        liveness = null;
         mainHandler.removeCallbacksAndMessages(null);
 
-        if (socket != null) {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                Log.w(TAG, "Error closing socket", e);
-            }
-            socket = null;
+        if (channel != null) {
+            closeQuietly(channel);
+            channel = null;
         }
+        sessionNetwork = null;
 
         listener.onDisconnected();
     }
@@ -228,10 +468,21 @@ public class ConnectionManager {
         return serverAddress;
     }
 
+    /**
+     * @return smoothed round trip time to the server, or -1 if not connected
+     */
+    public long getSmoothedRtt() {
+        LivenessMonitor liveness = this.liveness;
+        return liveness == null ? -1 : liveness.getSmoothedRtt();
+    }
+
     void setState(ConnectionState newState, String message, String serverAddress) {
         if (currentState != newState || !Objects.equals(this.serverAddress, serverAddress)) {
             Log.d(TAG, "State change: " + currentState + " -> " + newState + " (" + message + ")");
             currentState = newState;
+            if (newState == ConnectionState.CONNECTED) {
+                reconnectAttempts = 0;
+            }
             listener.onConnectionStateChanged(newState, message, serverAddress);
         }
     }
@@ -261,16 +512,22 @@ public class ConnectionManager {
             return;
         }
 
+        long delay = Math.min(MAX_RECONNECT_DELAY, RECONNECT_DELAY << Math.min(reconnectAttempts, 5));
+        delay += (long) (Math.random() * delay / 2);
+        reconnectAttempts++;
+
+        Log.i(TAG, "Scheduling reconnection attempt in " + delay + "ms");
         mainHandler.postDelayed(() -> {
             if (!shutdown.get() && this.isNetworkAvailable.get()) {
-                Log.i(TAG, "Scheduling reconnection attempt in " + RECONNECT_DELAY + "ms");
                 connect();
             }
-        }, RECONNECT_DELAY);
+        }, delay);
     }
 
     public void shutdown() {
         shutdown.set(true);
+        Preferences.removeListener(context, configListener);
+        mainHandler.removeCallbacks(addressChangedRunnable);
         disconnect("Shutting down");
         executor.shutdown();
     }
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.client;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+
+import dezz.gnssshare.shared.Metrics;
+
+/**
+ * Writes to one downstream consumer on its own thread, so a consumer that stops reading can't
+ * block the thread that publishes fixes.
+ * <p>
+ * Only the latest unsent data is kept: publishing copies it into a slot, replacing whatever the
+ * consumer hasn't taken yet, which for fixes loses nothing of value. A consumer that leaves data
+ * in the slot for longer than the stall timeout is stuck and gets closed. Drops and closed
+ * consumers are counted as {@code <prefix>.dropped} and {@code <prefix>.stalled} metrics.
+ */
+class ConsumerWriter implements Runnable {
+    private static final String TAG = "ConsumerWriter";
+
+    interface Sink {
+        /**
+         * Called on the writer thread, may block
+         */
+        void write(byte[] data, int length) throws IOException;
+
+        void close();
+    }
+
+    private final String description;
+    private final long stallTimeout;
+    private final Sink sink;
+    private final String droppedMetric;
+    private final String stalledMetric;
+
+    private byte[] slot;
+    // -1 while the slot is empty
+    private int slotLength = -1;
+    private long pendingSince = 0;
+    private byte[] writing;
+    private boolean closed = false;
+
+    ConsumerWriter(String description, int capacity, long stallTimeout, String metricPrefix, Sink sink) {
+        this.description = description;
+        this.stallTimeout = stallTimeout;
+        this.sink = sink;
+        this.droppedMetric = metricPrefix + ".dropped";
+        this.stalledMetric = metricPrefix + ".stalled";
+        this.slot = new byte[capacity];
+        this.writing = new byte[capacity];
+    }
+
+    /**
+     * Queue data for the consumer, replacing data it hasn't taken yet
+     *
+     * @return false if the consumer is closed or stuck, in which case it is closed now
+     */
+    boolean offer(byte[] data, int length) {
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            long now = SystemClock.elapsedRealtime();
+            if (slotLength < 0) {
+                pendingSince = now;
+            } else if (now - pendingSince > stallTimeout) {
+                closed = true;
+                notifyAll();
+            } else {
+                Metrics.increment(droppedMetric);
+            }
+            if (!closed) {
+                if (slot.length < length) {
+                    slot = new byte[length];
+                }
+                System.arraycopy(data, 0, slot, 0, length);
+                slotLength = length;
+                notifyAll();
+                return true;
+            }
+        }
+        onStalled();
+        return false;
+    }
+
+    /**
+     * Queue data only if the consumer has nothing pending, e.g. a keep-alive
+     */
+    boolean offerIfIdle(byte[] data, int length) {
+        synchronized (this) {
+            if (slotLength >= 0) {
+                return !closed;
+            }
+        }
+        return offer(data, length);
+    }
+
+    void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    private void onStalled() {
+        Log.w(TAG, "Consumer stopped reading, closing " + description);
+        Metrics.increment(stalledMetric);
+        // Closing the connection also unblocks the writer thread
+        sink.close();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                int length;
+                synchronized (this) {
+                    while (slotLength < 0 && !closed) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    if (writing.length < slotLength) {
+                        writing = new byte[slot.length];
+                    }
+                    System.arraycopy(slot, 0, writing, 0, slotLength);
+                    length = slotLength;
+                    slotLength = -1;
+                }
+                sink.write(writing, length);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing to " + description + " - " + e.getMessage());
+            sink.close();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.client;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.FixRing;
+
+import java.util.Arrays;
+
+/**
+ * Reads fixes from the shared memory ring of a server app running on the same device.
+ * <p>
+ * The ring is obtained from the server's FixRingService. Nothing polls it: after writing a fix
+ * the server rings a doorbell, an empty frame on the local connection, and the receive thread of
+ * that connection reads the ring through {@link #onDoorbell()}. A fix is parsed only when the
+ * ring's write count has changed. Requires Android 13, see {@link FixRing}.
+ */
+public class FixRingReader {
+    private static final String TAG = "FixRingReader";
+
+    private static final ComponentName RING_SERVICE = new ComponentName(
+            "dezz.gnssshare.server", "dezz.gnssshare.server.FixRingService");
+    // Must match FixRingService
+    private static final int MSG_GET_RING = 1;
+    private static final String KEY_RING = "ring";
+
+    public interface Listener {
+        // Called on the reader thread
+        void onRingReady();
+
+        /**
+         * Called on the thread that rang the doorbell
+         *
+         * @param frame the serialized response exactly as read from the ring
+         */
+        void onRingFix(byte[] frame, LocationProto.ServerResponse response);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final HandlerThread thread = new HandlerThread("FixRingReader");
+    private final Handler handler;
+    private final Messenger replyMessenger;
+
+    private boolean bound = false;
+    // Guarded by this, mapped on the reader thread and read on the doorbell thread
+    private FixRing ring = null;
+    private byte[] buffer = null;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            Message request = Message.obtain(null, MSG_GET_RING);
+            request.replyTo = replyMessenger;
+            try {
+                new Messenger(service).send(request);
+            } catch (RemoteException e) {
+                Log.w(TAG, "Failed to request the ring", e);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // The mapping stays valid, the server just won't write to it anymore
+            Log.w(TAG, "Ring service disconnected");
+        }
+    };
+
+    public FixRingReader(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        replyMessenger = new Messenger(new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(@NonNull Message msg) {
+                onRingReply(msg);
+            }
+        });
+    }
+
+    public void start() {
+        bound = context.bindService(new Intent().setComponent(RING_SERVICE), connection, Context.BIND_AUTO_CREATE);
+        if (!bound) {
+            Log.w(TAG, "Ring service not found, is the server app installed?");
+        }
+    }
+
+    private void onRingReply(Message msg) {
+        Bundle data = msg.getData();
+        SharedMemory memory = data.getParcelable(KEY_RING);
+        if (memory == null) {
+            Log.i(TAG, "Server has no ring, shared memory ring must be enabled there");
+            return;
+        }
+
+        synchronized (this) {
+            try {
+                ring = FixRing.open(memory);
+            } catch (ErrnoException | IllegalArgumentException e) {
+                Log.w(TAG, "Failed to map the ring", e);
+                memory.close();
+                return;
+            }
+            buffer = new byte[ring.getMaxPayloadSize()];
+        }
+
+        Log.i(TAG, "Reading fixes from the shared memory ring");
+        listener.onRingReady();
+    }
+
+    /**
+     * The server wrote a fix to the ring, or sent an empty probe that looks the same
+     */
+    public void onDoorbell() {
+        byte[] frame;
+        synchronized (this) {
+            if (ring == null) {
+                return;
+            }
+            int length = ring.readNew(buffer);
+            if (length <= 0) {
+                return;
+            }
+            frame = Arrays.copyOf(buffer, length);
+        }
+
+        try {
+            listener.onRingFix(frame, LocationProto.ServerResponse.parseFrom(frame));
+        } catch (InvalidProtocolBufferException e) {
+            Log.w(TAG, "Corrupt fix in the ring", e);
+        }
+    }
+
+    public void shutdown() {
+        if (bound) {
+            context.unbindService(connection);
+            bound = false;
+        }
+        // After a ring reply that may still be queued
+        handler.post(() -> {
+            synchronized (this) {
+                if (ring != null) {
+                    ring.close();
+                    ring = null;
+                }
+            }
+        });
+        thread.quitSafely();
+    }
+}
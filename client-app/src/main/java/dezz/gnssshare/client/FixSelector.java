@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.client;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.FlightRecorder;
+import dezz.gnssshare.shared.Metrics;
+
+/**
+ * Decides which of several connected servers feeds the mock location provider.
+ * <p>
+ * Every fresh fix gets an error score: its reported accuracy plus the distance the car could have
+ * covered while the fix travelled to us, i.e. the age reported by the server plus half the link
+ * round trip time. Fixes of the current primary server are always used. Another server takes over
+ * when its fix beats the last score of the primary by {@link #SWITCH_MARGIN}, or when the next fix
+ * of the primary is overdue by half of its usual interval, so a failed primary is replaced within
+ * about one fix interval. Fixes of the other servers are dropped.
+ * <p>
+ * Only a timestamp newer than the last one of the server counts as a fresh fix: ping responses
+ * repeat the last fix, and a stalled server that keeps answering them must still become overdue.
+ *
+ * @param <S> server, {@link ServerSession} in the app
+ */
+public class FixSelector<S> {
+    private static final String TAG = "FixSelector";
+
+    // How fast the error of an old fix grows, m/s
+    private static final float AGING_SPEED = 15;
+    // Keeps two healthy servers of similar quality from taking turns
+    private static final float SWITCH_MARGIN = 5;
+    private static final float UNKNOWN_ACCURACY = 100;
+    private static final long DEFAULT_FIX_INTERVAL = 1000;
+    // Longer gaps are outages, they must not stretch the expected interval
+    private static final long MAX_FIX_INTERVAL = 10000;
+
+    private static final FlightRecorder.Event EVENT_FIX_DROPPED = FlightRecorder.define(Log.VERBOSE, TAG,
+            "Fix from backup server dropped, score %.1f, primary %.1f");
+
+    /**
+     * Ranking state of one server, filled in place by {@link #getStats}
+     */
+    public static final class Stats {
+        public long fixes;
+        public long selectedFixes;
+        // Error score of the latest fresh fix in meters, NaN before the first one
+        public float score = Float.NaN;
+        public boolean primary;
+    }
+
+    private static class Candidate {
+        long fixes = 0;
+        long selectedFixes = 0;
+        float score = Float.NaN;
+        long lastFixNanos = 0;
+        long lastTimestamp = 0;
+        long fixInterval = DEFAULT_FIX_INTERVAL;
+    }
+
+    private final LongSupplier nanoClock;
+    private final Map<S, Candidate> candidates = new HashMap<>();
+    private S primary = null;
+
+    public FixSelector() {
+        this(SystemClock::elapsedRealtimeNanos);
+    }
+
+    FixSelector(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param rttMillis smoothed round trip time to the server, or -1 if unknown
+     * @return true if the fix should be used
+     */
+    public synchronized boolean offer(S session, LocationProto.LocationUpdate locationUpdate, long rttMillis) {
+        Candidate candidate = getCandidate(session);
+        if (locationUpdate.getStale() || locationUpdate.getTimestamp() <= candidate.lastTimestamp) {
+            // A repeated old fix says nothing about the server, use it only while nothing is better
+            return primary == null || primary == session;
+        }
+        candidate.lastTimestamp = locationUpdate.getTimestamp();
+
+        long nowNanos = nanoClock.getAsLong();
+        if (candidate.lastFixNanos > 0) {
+            long interval = Math.min(MAX_FIX_INTERVAL, (nowNanos - candidate.lastFixNanos) / 1_000_000);
+            candidate.fixInterval = (3 * candidate.fixInterval + interval) / 4;
+        }
+        candidate.lastFixNanos = nowNanos;
+        candidate.fixes++;
+        candidate.score = score(locationUpdate, rttMillis);
+
+        if (session != primary) {
+            Candidate current = primary == null ? null : candidates.get(primary);
+            if (current != null && !isOverdue(current, nowNanos) && candidate.score + SWITCH_MARGIN >= current.score) {
+                FlightRecorder.record(EVENT_FIX_DROPPED, candidate.score, current.score);
+                return false;
+            }
+
+            Log.i(TAG, "Primary server " + (primary == null ? "none" : primary) +
+                    " -> " + session + (current == null ? "" : String.format(
+                    " (score %.1f vs %.1f%s)", candidate.score, current.score, isOverdue(current, nowNanos) ? ", overdue" : "")));
+            Metrics.increment("client.selector.switches");
+            primary = session;
+        }
+
+        candidate.selectedFixes++;
+        return true;
+    }
+
+    /**
+     * @return true if responses without a fix from this server should be used
+     */
+    public synchronized boolean isPrimaryOrNone(S session) {
+        return primary == null || primary == session;
+    }
+
+    public synchronized S getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Forget a disconnected server, the next fix from any other server takes over if it was the primary
+     */
+    public synchronized void remove(S session) {
+        candidates.remove(session);
+        if (primary == session) {
+            Log.i(TAG, "Primary server " + session + " lost");
+            primary = null;
+        }
+    }
+
+    public synchronized void getStats(S session, Stats stats) {
+        Candidate candidate = candidates.get(session);
+        stats.fixes = candidate == null ? 0 : candidate.fixes;
+        stats.selectedFixes = candidate == null ? 0 : candidate.selectedFixes;
+        stats.score = candidate == null ? Float.NaN : candidate.score;
+        stats.primary = candidate != null && primary == session;
+    }
+
+    private Candidate getCandidate(S session) {
+        Candidate candidate = candidates.get(session);
+        if (candidate == null) {
+            candidate = new Candidate();
+            candidates.put(session, candidate);
+        }
+        return candidate;
+    }
+
+    private static boolean isOverdue(Candidate candidate, long nowNanos) {
+        return (nowNanos - candidate.lastFixNanos) / 1_000_000 > candidate.fixInterval * 3 / 2;
+    }
+
+    private static float score(LocationProto.LocationUpdate locationUpdate, long rttMillis) {
+        float accuracy = locationUpdate.getAccuracy() > 0 ? locationUpdate.getAccuracy() : UNKNOWN_ACCURACY;
+        float delaySeconds = Math.max(0, locationUpdate.getLocationAge()) + Math.max(0, rttMillis) / 2000f;
+        return accuracy + delaySeconds * AGING_SPEED;
+    }
+}
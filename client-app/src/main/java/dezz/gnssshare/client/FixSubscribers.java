@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.client;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.util.Log;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.Metrics;
+
+/**
+ * Apps subscribed to fixes through the bound {@link IGnssShareService} interface.
+ * <p>
+ * Callbacks are one-way and dispatched from a dedicated thread, so a slow subscriber never holds
+ * up the receive path. Subscribers that die are dropped by {@link RemoteCallbackList}.
+ */
+public class FixSubscribers {
+    private static final String TAG = "FixSubscribers";
+
+    private final RemoteCallbackList<IGnssShareCallback> callbacks = new RemoteCallbackList<>() {
+        @Override
+        public void onCallbackDied(IGnssShareCallback callback) {
+            Log.i(TAG, "Subscriber died");
+            updateMetrics();
+        }
+    };
+    private final HandlerThread thread = new HandlerThread("FixSubscribers");
+    private final Handler handler;
+
+    private volatile byte[] lastLocationUpdate = null;
+    private volatile String connectionState = ConnectionManager.ConnectionState.DISCONNECTED.toString();
+    private volatile String serverAddress = null;
+
+    private final IGnssShareService.Stub binder = new IGnssShareService.Stub() {
+        @Override
+        public void registerCallback(IGnssShareCallback callback) {
+            if (callback == null || !callbacks.register(callback)) {
+                return;
+            }
+            Log.i(TAG, "Subscriber registered, uid " + getCallingUid());
+            updateMetrics();
+
+            String state = connectionState;
+            String address = serverAddress;
+            handler.post(() -> {
+                try {
+                    callback.onConnectionStateChanged(state, address);
+                } catch (RemoteException e) {
+                    Log.w(TAG, "Failed to notify new subscriber", e);
+                }
+            });
+        }
+
+        @Override
+        public void unregisterCallback(IGnssShareCallback callback) {
+            if (callback != null && callbacks.unregister(callback)) {
+                Log.i(TAG, "Subscriber unregistered, uid " + getCallingUid());
+                updateMetrics();
+            }
+        }
+
+        @Override
+        public String getConnectionState() {
+            return connectionState;
+        }
+
+        @Override
+        public byte[] getLastLocationUpdate() {
+            return lastLocationUpdate;
+        }
+    };
+
+    public FixSubscribers() {
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public IGnssShareService.Stub getBinder() {
+        return binder;
+    }
+
+    public void publishLocation(Location location, LocationProto.LocationUpdate locationUpdate) {
+        byte[] data = locationUpdate.toByteArray();
+        lastLocationUpdate = data;
+        if (callbacks.getRegisteredCallbackCount() == 0) {
+            return;
+        }
+
+        handler.post(() -> {
+            int count = callbacks.beginBroadcast();
+            try {
+                for (int i = 0; i < count; i++) {
+                    try {
+                        callbacks.getBroadcastItem(i).onLocation(location, data);
+                    } catch (RemoteException e) {
+                        // The subscriber is gone, RemoteCallbackList will drop it
+                    }
+                }
+            } finally {
+                callbacks.finishBroadcast();
+            }
+            Metrics.add("client.subscribers.fixes_delivered", count);
+        });
+    }
+
+    public void publishConnectionState(String state, String serverAddress) {
+        this.connectionState = state;
+        this.serverAddress = serverAddress;
+        if (callbacks.getRegisteredCallbackCount() == 0) {
+            return;
+        }
+
+        handler.post(() -> {
+            int count = callbacks.beginBroadcast();
+            try {
+                for (int i = 0; i < count; i++) {
+                    try {
+                        callbacks.getBroadcastItem(i).onConnectionStateChanged(state, serverAddress);
+                    } catch (RemoteException e) {
+                        // The subscriber is gone, RemoteCallbackList will drop it
+                    }
+                }
+            } finally {
+                callbacks.finishBroadcast();
+            }
+        });
+    }
+
+    private void updateMetrics() {
+        Metrics.set("client.subscribers", callbacks.getRegisteredCallbackCount());
+    }
+
+    public void shutdown() {
+        callbacks.kill();
+        updateMetrics();
+        thread.quitSafely();
+    }
+}
@@ -30,36 +30,79 @@ import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.NetworkCapabilities;
 import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.Socket;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import dezz.gnssshare.proto.LocationProto;
-
-public class GNSSClientService extends Service implements ConnectionManager.ConnectionListener {
+import dezz.gnssshare.shared.ConfigStore;
+import dezz.gnssshare.shared.FlightRecorder;
+import dezz.gnssshare.shared.LastFixStore;
+import dezz.gnssshare.shared.LogExporter;
+import dezz.gnssshare.shared.LatencyHistogram;
+import dezz.gnssshare.shared.LowLatencyWifi;
+
+public class GNSSClientService extends Service implements ServerSession.Callback {
     private static final String TAG = "GNSSClientService";
+
+    private static final FlightRecorder.Event EVENT_BATCH = FlightRecorder.define(Log.DEBUG, TAG,
+            "Received batch of %d fixes");
+    private static final FlightRecorder.Event EVENT_LOCATION = FlightRecorder.define(Log.INFO, TAG,
+            "Received location update: %.6f, %.6f ±%.1fm, %.1fs old");
     private static final String CHANNEL_ID = "GNSSClientChannel";
     private static final int NOTIFICATION_ID = 1;
+    private static final String LAST_FIX_FILE = "last_fix.bin";
+    private static final long LAST_FIX_SAVE_INTERVAL = 30000;
+    // A restored fix may be hours old, don't let it claim better accuracy than this
+    private static final float STALE_FIX_MIN_ACCURACY = 50;
+    // Bind action for in-car apps subscribing through IGnssShareService
+    public static final String ACTION_SUBSCRIBE = "dezz.gnssshare.client.SUBSCRIBE";
+    // The list is edited a character at a time, apply it once typing stops
+    private static final long BACKUP_SERVERS_CHANGE_DELAY = 1500;
 
     private static GNSSClientService instance = null;
 
-    private ConnectionManager connectionManager;
+    // The configured server first, then backup servers; fixes are picked by fixSelector
+    private final CopyOnWriteArrayList<ServerSession> sessions = new CopyOnWriteArrayList<>();
+    private final FixSelector<ServerSession> fixSelector = new FixSelector<>();
+    // Wi-Fi network for backup sessions created later
+    private volatile Network network = null;
+    private volatile ConnectionManager.ConnectionState connectionState = ConnectionManager.ConnectionState.DISCONNECTED;
+    private volatile String connectionAddress = null;
     private MockLocationManager mockLocationManager;
+    private JitterBuffer jitterBuffer;
+    private LastFixStore lastFixStore;
+    private LowLatencyWifi lowLatencyWifi;
+    private volatile LatencyHistogram transitHistogram;
+    private final Object selectionLock = new Object();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable backupServersChangedRunnable = () -> {
+        if (instance != null) {
+            updateBackupSessions(Preferences.backupServers(this));
+        }
+    };
     private NotificationManager notificationManager;
     private final ExecutorService executor = Executors.newCachedThreadPool();
     private final AtomicBoolean isReceivingUpdates = new AtomicBoolean(false);
 
-    private Socket currentSocket;
+    // Rung from the receive thread of the local session
+    private volatile FixRingReader fixRingReader = null;
+    private final FixSubscribers fixSubscribers = new FixSubscribers();
+    private volatile RelayServer relayServer = null;
+    private volatile NmeaServer nmeaServer = null;
     private Location lastReceivedLocation;
     private static long lastUpdateTime;
 
@@ -72,22 +115,97 @@ public class GNSSClientService extends Service implements ConnectionManager.Conn
     }
 
     public static ConnectionManager.ConnectionState getConnectionState() {
-        return instance != null && instance.connectionManager != null ? instance.connectionManager.getCurrentState() : ConnectionManager.ConnectionState.DISCONNECTED;
+        GNSSClientService instance = GNSSClientService.instance;
+        return instance != null ? instance.connectionState : ConnectionManager.ConnectionState.DISCONNECTED;
     }
 
     public static String getServerAddress() {
-        return instance != null && instance.connectionManager != null ? instance.connectionManager.getServerAddress() : null;
+        GNSSClientService instance = GNSSClientService.instance;
+        return instance != null ? instance.connectionAddress : null;
+    }
+
+    /**
+     * State of one of the servers the client keeps connected, filled in place by {@link #getServerStats}
+     */
+    public static final class ServerStats {
+        public String address;
+        public ConnectionManager.ConnectionState state;
+        public long rttMillis;
+        public final FixSelector.Stats selection = new FixSelector.Stats();
     }
 
+    /**
+     * Fills the stats of all servers, the configured one first, reusing the entries of the list
+     *
+     * @return number of servers, 0 if not running
+     */
+    public static int getServerStats(List<ServerStats> stats) {
+        GNSSClientService instance = GNSSClientService.instance;
+        if (instance == null) {
+            return 0;
+        }
+        int count = 0;
+        for (ServerSession session : instance.sessions) {
+            if (count == stats.size()) {
+                stats.add(new ServerStats());
+            }
+            ServerStats server = stats.get(count++);
+            String address = session.getServerAddress();
+            server.address = address != null ? address : session.getBackupAddress();
+            server.state = session.getState();
+            server.rttMillis = session.getConnectionManager().getSmoothedRtt();
+            instance.fixSelector.getStats(session, server.selection);
+        }
+        return count;
+    }
+
+    // Connection settings are applied by ConnectionManager, the jitter buffer and the transport
+    // still need a service restart
+    private final ConfigStore.Listener<Preferences.Config> configListener = (oldConfig, config) -> {
+        if (oldConfig.relayMode != config.relayMode) {
+            if (config.relayMode) {
+                startRelay();
+            } else {
+                stopRelay();
+            }
+        }
+        if (oldConfig.nmeaOutput != config.nmeaOutput) {
+            if (config.nmeaOutput) {
+                startNmeaOutput();
+            } else {
+                stopNmeaOutput();
+            }
+        }
+        if (oldConfig.lowLatencyWifi != config.lowLatencyWifi && isReceivingUpdates.get()) {
+            if (config.lowLatencyWifi) {
+                lowLatencyWifi.acquire();
+            } else {
+                lowLatencyWifi.release();
+            }
+        }
+        if (!oldConfig.backupServers.equals(config.backupServers) && !config.useLocalServer) {
+            mainHandler.removeCallbacks(backupServersChangedRunnable);
+            mainHandler.postDelayed(backupServersChangedRunnable, BACKUP_SERVERS_CHANGE_DELAY);
+        }
+    };
+
     private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
         @Override
         public void onAvailable(@NonNull Network network) {
-            connectionManager.onNetworkAvailable();
+            GNSSClientService.this.network = network;
+            for (ServerSession session : sessions) {
+                session.onNetworkAvailable(network);
+            }
         }
 
         @Override
         public void onLost(@NonNull Network network) {
-            connectionManager.onNetworkLost();
+            if (network.equals(GNSSClientService.this.network)) {
+                GNSSClientService.this.network = null;
+            }
+            for (ServerSession session : sessions) {
+                session.onNetworkLost(network);
+            }
         }
     };
 
@@ -97,9 +215,36 @@ public class GNSSClientService extends Service implements ConnectionManager.Conn
 
         notificationManager = getSystemService(NotificationManager.class);
         mockLocationManager = new MockLocationManager(this);
-        connectionManager = new ConnectionManager(this, this);
+
+        // Recorded fixes stay exportable after the service is stopped
+        LogExporter.registerSection("Recent fixes", writer -> FlightRecorder.dump(writer, EVENT_LOCATION));
+        sessions.add(new ServerSession(this, this, executor, null));
+        if (!Preferences.useLocalServer(this)) {
+            updateBackupSessions(Preferences.backupServers(this));
+        }
+        lastFixStore = new LastFixStore(this, LAST_FIX_FILE, LAST_FIX_SAVE_INTERVAL);
+        lowLatencyWifi = new LowLatencyWifi(this, TAG);
+
+        seedMockLocationFromCache();
+
+        if (Preferences.relayMode(this)) {
+            startRelay();
+        }
+        if (Preferences.nmeaOutput(this)) {
+            startNmeaOutput();
+        }
+        Preferences.addListener(this, configListener);
+
+        if (Preferences.useJitterBuffer(this)) {
+            Log.i(TAG, "Jitter buffer enabled");
+            jitterBuffer = new JitterBuffer(this::handleLocationUpdate);
+        }
 
         registerWiFiStateReceiver();
+        if (Preferences.useLocalServer(this)) {
+            // Wi-Fi callbacks don't matter for the local server
+            sessions.get(0).connect();
+        }
         createNotificationChannel();
 
         startForeground(NOTIFICATION_ID, createNotification(false));
@@ -127,57 +272,249 @@ public class GNSSClientService extends Service implements ConnectionManager.Conn
 
         super.onDestroy();
 
-        if (connectionManager != null) {
-            connectionManager.shutdown();
+        Preferences.removeListener(this, configListener);
+        mainHandler.removeCallbacks(backupServersChangedRunnable);
+        for (ServerSession session : sessions) {
+            session.shutdown();
+        }
+        if (jitterBuffer != null) {
+            jitterBuffer.shutdown();
         }
+        lastFixStore.flush();
+        lowLatencyWifi.release();
+        fixSubscribers.shutdown();
+        stopRelay();
+        stopNmeaOutput();
         executor.shutdown();
     }
 
+    private void startRelay() {
+        if (relayServer != null) {
+            return;
+        }
+        Log.i(TAG, "Relay mode enabled");
+        RelayServer relay = new RelayServer(Build.MODEL);
+        relay.start();
+        relayServer = relay;
+    }
+
+    private void stopRelay() {
+        RelayServer relay = relayServer;
+        if (relay == null) {
+            return;
+        }
+        relayServer = null;
+        relay.stop();
+    }
+
+    private void startNmeaOutput() {
+        if (nmeaServer != null) {
+            return;
+        }
+        Log.i(TAG, "NMEA output enabled");
+        NmeaServer server = new NmeaServer();
+        server.start();
+        nmeaServer = server;
+    }
+
+    private void stopNmeaOutput() {
+        NmeaServer server = nmeaServer;
+        if (server == null) {
+            return;
+        }
+        nmeaServer = null;
+        server.stop();
+    }
+
     public IBinder onBind(Intent intent) {
+        if (ACTION_SUBSCRIBE.equals(intent.getAction())) {
+            return fixSubscribers.getBinder();
+        }
         return null;
     }
 
-    // ConnectionManager.ConnectionListener implementation
+    /**
+     * Keep one session per backup server, the session of the configured server is not touched
+     */
+    private void updateBackupSessions(List<String> backupServers) {
+        for (ServerSession session : sessions) {
+            String address = session.getBackupAddress();
+            if (address != null && !backupServers.contains(address)) {
+                Log.i(TAG, "Backup server removed: " + address);
+                sessions.remove(session);
+                session.shutdown();
+                fixSelector.remove(session);
+            }
+        }
+
+        // The server replaces a session when the same client connects again, so the configured
+        // server must not be connected twice
+        String mainAddress = sessions.get(0).getServerAddress();
+        Preferences.Config config = Preferences.get(this);
+        Network network = this.network;
+        for (String address : backupServers) {
+            if (address.equals(mainAddress) || (!config.useGatewayIp && address.equals(config.serverAddress))) {
+                Log.w(TAG, "Backup server " + address + " is the main server, ignored");
+                continue;
+            }
+            boolean exists = false;
+            for (ServerSession session : sessions) {
+                if (address.equals(session.getBackupAddress())) {
+                    exists = true;
+                    break;
+                }
+            }
+            if (exists) {
+                continue;
+            }
+            Log.i(TAG, "Backup server added: " + address);
+            ServerSession session = new ServerSession(this, this, executor, address);
+            sessions.add(session);
+            if (network != null) {
+                session.onNetworkAvailable(network);
+            }
+        }
+
+        updateConnectionState();
+    }
+
+    // ServerSession.Callback implementation
     @Override
-    public void onConnectionStateChanged(ConnectionManager.ConnectionState state, String message, String serverAddress) {
-        Log.d(TAG, "Connection state: " + state + " - " + message);
+    public void onSessionStateChanged(ServerSession session, ConnectionManager.ConnectionState state) {
+        Log.d(TAG, "Connection state of " + session.getServerAddress() + ": " + state);
+        updateConnectionState();
+    }
+
+    /**
+     * Report the best state of all sessions, with the address of the primary server if there is one
+     */
+    private synchronized void updateConnectionState() {
+        ConnectionManager.ConnectionState state = ConnectionManager.ConnectionState.DISCONNECTED;
+        String address = null;
+        ServerSession primary = fixSelector.getPrimary();
+        for (ServerSession session : sessions) {
+            ConnectionManager.ConnectionState sessionState = session.getState();
+            if (session == primary && sessionState == ConnectionManager.ConnectionState.CONNECTED) {
+                state = sessionState;
+                address = session.getServerAddress();
+                break;
+            }
+            if (sessionState.ordinal() > state.ordinal()) {
+                state = sessionState;
+                address = session.getServerAddress();
+            }
+        }
+
+        if (state == connectionState && Objects.equals(address, connectionAddress)) {
+            return;
+        }
+        connectionState = state;
+        connectionAddress = address;
 
         updateNotification();
 
+        fixSubscribers.publishConnectionState(state.toString(), address);
+
         // Notify activity about connection status change
         sendBroadcast(new Intent("dezz.gnssshare.CONNECTION_CHANGED")
                 .putExtra("state", state.toString())
-                .putExtra("serverAddress", serverAddress));
+                .putExtra("serverAddress", address));
     }
 
     @Override
-    public void onConnectionEstablished(Socket socket, String serverAddress) {
-        Log.i(TAG, "Connection established, starting location updates");
+    public synchronized void onSessionEstablished(ServerSession session) {
+        if (!isReceivingUpdates.get()) {
+            Log.i(TAG, "Connection established, starting location updates");
+            startReceivingLocationUpdates();
+        }
+
+        String serverAddress = session.getServerAddress();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU &&
+                ConnectionManager.LOCAL_SERVER_ADDRESS.equals(serverAddress) && Preferences.useSharedMemoryRing(this)) {
+            fixRingReader = new FixRingReader(this, new FixRingReader.Listener() {
+                @Override
+                public void onRingReady() {
+                    session.getConnectionManager().sendRingMode();
+                }
 
-        this.currentSocket = socket;
-        startReceivingLocationUpdates(serverAddress);
+                @Override
+                public void onRingFix(byte[] frame, LocationProto.ServerResponse response) {
+                    // Same path as frames from the socket, so relay clients get ring fixes too
+                    onSessionResponse(session, frame, response, SystemClock.elapsedRealtimeNanos());
+                }
+            });
+            fixRingReader.start();
+        }
     }
 
     @Override
-    public void onDisconnected() {
-        Log.i(TAG, "Connection lost, stopping location updates");
+    public synchronized void onSessionDisconnected(ServerSession session) {
+        boolean wasPrimary = fixSelector.getPrimary() == session;
+        fixSelector.remove(session);
+        if (wasPrimary && jitterBuffer != null) {
+            // Timestamps of the next primary may have a different base
+            jitterBuffer.reset();
+        }
+
+        if (fixRingReader != null && ConnectionManager.LOCAL_SERVER_ADDRESS.equals(session.getServerAddress())) {
+            fixRingReader.shutdown();
+            fixRingReader = null;
+        }
 
-        this.currentSocket = null;
+        for (ServerSession other : sessions) {
+            if (other.isReceiving()) {
+                // The other servers keep the mock location going
+                updateConnectionState();
+                return;
+            }
+        }
+
+        Log.i(TAG, "Connection lost, stopping location updates");
 
         stopReceivingLocationUpdates();
 
-        // Notify activity about disconnection
-        sendBroadcast(new Intent("dezz.gnssshare.CONNECTION_CHANGED")
-                .putExtra("state", ConnectionManager.ConnectionState.DISCONNECTED.toString()));
+        updateConnectionState();
     }
 
-    private void startReceivingLocationUpdates(String serverAddress) {
-        if (isReceivingUpdates.get() || currentSocket == null) {
+    @Override
+    public void onSessionResponse(ServerSession session, byte[] frame, LocationProto.ServerResponse response,
+                                  long receiveNanos) {
+        if (response.hasSatelliteStatus()) {
+            // Not relayed, a relay has no snapshot to resync its clients with
+            handleSatelliteStatus(session, response);
             return;
         }
 
+        if (!handleServerResponse(session, response)) {
+            return;
+        }
+
+        // Only the fixes that were used are relayed
+        RelayServer relay = relayServer;
+        if (relay != null) {
+            relay.publish(frame, response, receiveNanos);
+        }
+    }
+
+    @Override
+    public void onSessionDoorbell(ServerSession session) {
+        FixRingReader reader = fixRingReader;
+        if (reader != null && ConnectionManager.LOCAL_SERVER_ADDRESS.equals(session.getServerAddress())) {
+            reader.onDoorbell();
+        }
+    }
+
+    private void startReceivingLocationUpdates() {
         isReceivingUpdates.set(true);
 
+        // Separate histograms let the two modes be compared from the metrics
+        if (Preferences.lowLatencyWifi(this)) {
+            lowLatencyWifi.acquire();
+            transitHistogram = new LatencyHistogram("client.excess_transit.low_latency");
+        } else {
+            transitHistogram = new LatencyHistogram("client.excess_transit.default");
+        }
+
         if (!MockLocationManager.isMockLocationEnabled(getContentResolver())) {
             Log.w(TAG, "Mock locations not enabled - please enable in Developer Options");
             broadcastMockLocationStatus(getString(R.string.mock_location_enable_message), true);
@@ -192,74 +529,106 @@ public class GNSSClientService extends Service implements ConnectionManager.Conn
             Log.e(TAG, "Error setting up mock location provider", e);
             broadcastMockLocationStatus(String.format(getString(R.string.mock_location_setup_failed), e.getMessage()), true);
         }
+    }
+
+    /**
+     * Process a server response received over the connection or read from the shared memory ring
+     *
+     * @return true if the response came from the selected server and was used
+     */
+    private boolean handleServerResponse(ServerSession session, LocationProto.ServerResponse response) {
+        if (response.hasLocationUpdate()) {
+            recordTransit(session, response.getLocationUpdate());
+        }
 
-        executor.execute(() -> {
-            try {
-                InputStream inputStream = currentSocket.getInputStream();
-
-                while (isReceivingUpdates.get() && !currentSocket.isClosed()) {
-                    try {
-                        // Read message length (4 bytes)
-                        byte[] lengthBytes = new byte[4];
-                        int bytesRead = 0;
-                        while (bytesRead < 4) {
-                            int read = inputStream.read(lengthBytes, bytesRead, 4 - bytesRead);
-                            if (read == -1) {
-                                throw new IOException("Connection closed by server");
-                            }
-                            bytesRead += read;
-                        }
-
-                        int messageLength = bytesToInt(lengthBytes);
-
-                        // Read message data
-                        byte[] messageData = new byte[messageLength];
-                        bytesRead = 0;
-                        while (bytesRead < messageLength) {
-                            int read = inputStream.read(messageData, bytesRead, messageLength - bytesRead);
-                            if (read == -1) {
-                                throw new IOException("Connection closed by server");
-                            }
-                            bytesRead += read;
-                        }
-
-                        // Parse protobuf message
-                        LocationProto.ServerResponse response =
-                                LocationProto.ServerResponse.parseFrom(messageData);
-
-                        if (!connectionManager.isConnected()) {
-                            connectionManager.setState(ConnectionManager.ConnectionState.CONNECTED, "Received first server response", serverAddress);
-                        }
-
-                        if (response.hasLocationUpdate()) {
-                            handleLocationUpdate(response);
-                        } else {
-                            Log.i(TAG, "Server status: " + response.getStatus());
-                            // Broadcast satellite info to activity
-                            Intent intent = new Intent("dezz.gnssshare.LOCATION_UPDATE");
-                            intent.putExtra("satellites", response.getSatellites());
-                            sendBroadcast(intent);
-                        }
-                    } catch (IOException e) {
-                        if (currentSocket != null && !currentSocket.isClosed() && !currentSocket.isInputShutdown() && !currentSocket.isOutputShutdown()) {
-                            Log.e(TAG, "Error receiving location update", e);
-                        }
-                        // Let ConnectionManager handle the reconnection
-                        break;
-                    }
+        ServerSession previousPrimary;
+        // Sessions receive on their own threads, fixes are injected one at a time
+        synchronized (selectionLock) {
+            previousPrimary = fixSelector.getPrimary();
+            if (response.hasLocationUpdate()) {
+                long rtt = session.getConnectionManager().getSmoothedRtt();
+                if (!fixSelector.offer(session, response.getLocationUpdate(), rtt)) {
+                    return false;
                 }
-            } catch (IOException e) {
-                Log.e(TAG, "Error in location update receiver", e);
+                if (previousPrimary != null && previousPrimary != session && jitterBuffer != null) {
+                    // Timestamps of the new primary may have a different base
+                    jitterBuffer.reset();
+                }
+            } else if (!fixSelector.isPrimaryOrNone(session)) {
+                return false;
             }
 
-            connectionManager.disconnect("Connection lost - attempting to reconnect...");
-            connectionManager.scheduleReconnect();
-        });
+            if (response.getBatchCount() > 1) {
+                // The latest fix is also in location_update, the older ones go to subscribers and NMEA
+                FlightRecorder.record(EVENT_BATCH, response.getBatchCount());
+            }
+
+            if (response.hasLocationUpdate()) {
+                if (jitterBuffer != null && !response.getLocationUpdate().getStale()) {
+                    jitterBuffer.push(response);
+                } else {
+                    handleLocationUpdate(response);
+                }
+            } else {
+                Log.i(TAG, "Server status: " + response.getStatus());
+                // Broadcast satellite info to activity
+                Intent intent = new Intent("dezz.gnssshare.LOCATION_UPDATE");
+                intent.putExtra("satellites", response.getSatellites());
+                sendBroadcast(intent);
+            }
+        }
+
+        if (fixSelector.getPrimary() != previousPrimary) {
+            // The reported server address follows the primary
+            updateConnectionState();
+        }
+        return true;
+    }
+
+    /**
+     * Apply satellite changes to the state of the session and show the sky of the selected server
+     */
+    private void handleSatelliteStatus(ServerSession session, LocationProto.ServerResponse response) {
+        SatelliteStatusDecoder decoder = session.getSatelliteStatusDecoder();
+        if (!decoder.apply(response.getSatelliteStatus())) {
+            if (decoder.shouldRequestSnapshot()) {
+                Log.d(TAG, "Satellite changes missed, requesting a snapshot from " + session.getServerAddress());
+                session.getConnectionManager().requestSatelliteSnapshot();
+            }
+            return;
+        }
+
+        // Backup servers keep their state current but their sky is not shown
+        if (!fixSelector.isPrimaryOrNone(session)) {
+            return;
+        }
+
+        SatelliteStatusDecoder.Snapshot snapshot = decoder.getSnapshot();
+        Intent intent = new Intent("dezz.gnssshare.SATELLITE_STATUS");
+        intent.putExtra("satellites", response.getSatellites());
+        intent.putExtra("keys", snapshot.keys);
+        intent.putExtra("cn0", snapshot.cn0);
+        intent.putExtra("elevation", snapshot.elevation);
+        intent.putExtra("azimuth", snapshot.azimuth);
+        intent.putExtra("flags", snapshot.flags);
+        sendBroadcast(intent);
     }
 
     private void stopReceivingLocationUpdates() {
         isReceivingUpdates.set(false);
 
+        lowLatencyWifi.release();
+
+        if (fixRingReader != null) {
+            fixRingReader.shutdown();
+            fixRingReader = null;
+        }
+
+        if (jitterBuffer != null) {
+            // Timestamps of the next session may restart from a different base
+            jitterBuffer.reset();
+        }
+
         // Stop providing mock locations
         if (instance == null) {
             mockLocationManager.shutdown();
@@ -268,32 +637,50 @@ public class GNSSClientService extends Service implements ConnectionManager.Conn
         }
     }
 
-    private int bytesToInt(byte[] bytes) {
-        return ((bytes[0] & 0xFF) << 24) |
-                ((bytes[1] & 0xFF) << 16) |
-                ((bytes[2] & 0xFF) << 8) |
-                (bytes[3] & 0xFF);
+    /**
+     * Record how much longer than the fastest fix of the session this fix took to arrive, for
+     * every server whether or not its fixes are used
+     */
+    private void recordTransit(ServerSession session, LocationProto.LocationUpdate locationUpdate) {
+        long excessTransit = session.getExcessTransit(locationUpdate);
+        LatencyHistogram histogram = transitHistogram;
+        if (excessTransit >= 0 && histogram != null) {
+            histogram.record(excessTransit);
+        }
     }
 
     private void handleLocationUpdate(LocationProto.ServerResponse response) {
         try {
             LocationProto.LocationUpdate locationUpdate = response.getLocationUpdate();
-            // Create Android Location object
-            Location location = new Location(LocationManager.GPS_PROVIDER);
-            location.setLatitude(locationUpdate.getLatitude());
-            location.setLongitude(locationUpdate.getLongitude());
-            location.setTime(locationUpdate.getTimestamp());
-            location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
-            location.setAltitude(locationUpdate.getAltitude());
-            location.setAccuracy(locationUpdate.getAccuracy());
-            location.setBearing(locationUpdate.getBearing());
-            location.setSpeed(locationUpdate.getSpeed());
-
-            Log.i(TAG, "Received location update: " + location);
+            Location location = toLocation(locationUpdate);
+
+            FlightRecorder.record(EVENT_LOCATION, location.getLatitude(), location.getLongitude(),
+                    location.getAccuracy(), locationUpdate.getLocationAge());
+
+            // Subscribers get the fix first, they are the latency sensitive consumers. Older fixes
+            // of a batch go before it with their own times, the mock provider gets only the latest.
+            int batchCount = response.getBatchCount();
+            for (int i = 0; i < batchCount - 1; i++) {
+                LocationProto.LocationUpdate batched = response.getBatch(i);
+                long olderNanos = (locationUpdate.getTimestamp() - batched.getTimestamp()) * 1_000_000;
+                fixSubscribers.publishLocation(toLocation(batched, location.getElapsedRealtimeNanos() - olderNanos),
+                        batched);
+            }
+            fixSubscribers.publishLocation(location, locationUpdate);
+            NmeaServer nmea = nmeaServer;
+            if (nmea != null) {
+                if (batchCount > 1) {
+                    nmea.publishBatch(response.getBatchList(), response.getSatellites());
+                } else {
+                    nmea.publish(locationUpdate, response.getSatellites());
+                }
+            }
 
             // Update internal state
             lastReceivedLocation = location;
-            lastUpdateTime = System.currentTimeMillis();
+            if (!locationUpdate.getStale()) {
+                lastUpdateTime = System.currentTimeMillis();
+            }
 
             // Update notification with new location data
             updateNotification();
@@ -304,10 +691,21 @@ public class GNSSClientService extends Service implements ConnectionManager.Conn
             intent.putExtra("satellites", response.getSatellites());
             intent.putExtra("provider", locationUpdate.getProvider());
             intent.putExtra("locationAge", locationUpdate.getLocationAge());
+            intent.putExtra("relayHops", response.getRelayCount());
+            if (jitterBuffer != null) {
+                JitterBuffer.Stats stats = jitterBuffer.getStats();
+                intent.putExtra("jitterBufferDepth", stats.depth);
+                intent.putExtra("jitterBufferLatency", stats.addedLatencyMillis);
+                intent.putExtra("jitterBufferLateDrops", stats.lateDrops);
+            }
             sendBroadcast(intent);
 
             // Set mock location
             mockLocationManager.setMockLocation(location);
+
+            if (!locationUpdate.getStale()) {
+                lastFixStore.save(locationUpdate.toByteArray());
+            }
         } catch (SecurityException e) {
             Log.e(TAG, "Security exception - mock location permission denied", e);
             broadcastMockLocationStatus(getString(R.string.mock_location_permission_denied), true);
@@ -317,6 +715,57 @@ public class GNSSClientService extends Service implements ConnectionManager.Conn
         }
     }
 
+    private static Location toLocation(LocationProto.LocationUpdate locationUpdate) {
+        return toLocation(locationUpdate, SystemClock.elapsedRealtimeNanos());
+    }
+
+    private static Location toLocation(LocationProto.LocationUpdate locationUpdate, long elapsedRealtimeNanos) {
+        // Create Android Location object
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(locationUpdate.getLatitude());
+        location.setLongitude(locationUpdate.getLongitude());
+        location.setTime(locationUpdate.getTimestamp());
+        location.setElapsedRealtimeNanos(elapsedRealtimeNanos);
+        location.setAltitude(locationUpdate.getAltitude());
+        location.setAccuracy(locationUpdate.getAccuracy());
+        location.setBearing(locationUpdate.getBearing());
+        location.setSpeed(locationUpdate.getSpeed());
+
+        if (locationUpdate.getStale()) {
+            // Navigation apps ignore old fixes, so present the cached one as current but coarse
+            location.setTime(System.currentTimeMillis());
+            location.setAccuracy(Math.max(locationUpdate.getAccuracy(), STALE_FIX_MIN_ACCURACY));
+            location.setSpeed(0);
+        }
+
+        return location;
+    }
+
+    /**
+     * Inject the last fix saved before shutdown so navigation starts near the right place
+     * while the connection to the server is being established
+     */
+    private void seedMockLocationFromCache() {
+        byte[] data = lastFixStore.load();
+        if (data == null || !MockLocationManager.isMockLocationEnabled(getContentResolver())) {
+            return;
+        }
+
+        try {
+            LocationProto.LocationUpdate locationUpdate = LocationProto.LocationUpdate.parseFrom(data)
+                    .toBuilder()
+                    .setStale(true)
+                    .build();
+
+            mockLocationManager.startMockLocationProvider();
+            mockLocationManager.setMockLocation(toLocation(locationUpdate));
+
+            Log.i(TAG, "Mock location seeded from cached fix");
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to seed mock location from cached fix", e);
+        }
+    }
+
     private void broadcastMockLocationStatus(String message, boolean error) {
         Intent intent = new Intent("dezz.gnssshare.MOCK_LOCATION_STATUS");
         intent.putExtra("message", message);
@@ -365,7 +814,7 @@ public class GNSSClientService extends Service implements ConnectionManager.Conn
     }
 
     private void updateNotification() {
-        boolean isConnected = connectionManager != null && connectionManager.isConnected();
+        boolean isConnected = connectionState == ConnectionManager.ConnectionState.CONNECTED;
 
         notificationManager.notify(NOTIFICATION_ID, createNotification(isConnected));
     }
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.client;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.FlightRecorder;
+
+/**
+ * Playout buffer between the receive loop and the mock location provider.
+ * <p>
+ * Every fix is held back until {@code serverTimestamp + baseOffset + targetDelay}, where
+ * {@code baseOffset} is the smallest recently observed difference between the local arrival time
+ * and the server timestamp (it absorbs the clock offset between the devices) and
+ * {@code targetDelay} follows the measured interarrival jitter. Fixes therefore leave the buffer
+ * with the same spacing they had on the server, regardless of Wi-Fi jitter. Fixes whose playout
+ * time has already passed when they arrive are dropped and counted as late.
+ */
+public class JitterBuffer {
+    private static final String TAG = "JitterBuffer";
+
+    private static final FlightRecorder.Event EVENT_LATE_DROP = FlightRecorder.define(Log.VERBOSE, TAG,
+            "Late fix dropped, missed playout by %dms");
+
+    // Number of recent transit samples used to find the base offset
+    private static final int BASE_WINDOW = 64;
+    // Target delay is this many jitter estimates above the base offset
+    private static final float JITTER_MULTIPLIER = 3.0f;
+    private static final long MIN_DELAY = 20;
+    private static final long MAX_DELAY = 500;
+    private static final int MAX_DEPTH = 16;
+
+    public interface Listener {
+        void onPlayout(LocationProto.ServerResponse response);
+    }
+
+    public static class Stats {
+        public final int depth;
+        public final long lateDrops;
+        public final long targetDelayMillis;
+        public final float addedLatencyMillis;
+
+        Stats(int depth, long lateDrops, long targetDelayMillis, float addedLatencyMillis) {
+            this.depth = depth;
+            this.lateDrops = lateDrops;
+            this.targetDelayMillis = targetDelayMillis;
+            this.addedLatencyMillis = addedLatencyMillis;
+        }
+    }
+
+    private final Listener listener;
+    private final HandlerThread playoutThread = new HandlerThread("JitterBufferPlayout");
+    private final Handler playoutHandler;
+
+    private final ArrayDeque<LocationProto.ServerResponse> pending = new ArrayDeque<>();
+    private final long[] transitSamples = new long[BASE_WINDOW];
+    private int transitSampleCount = 0;
+    private int transitSampleIndex = 0;
+
+    private long lastTransit = Long.MIN_VALUE;
+    private float jitter = 0;
+    private long lastPushedTimestamp = 0;
+    private long lastEmittedTimestamp = 0;
+    private long lateDrops = 0;
+    private float addedLatency = 0;
+
+    public JitterBuffer(Listener listener) {
+        this.listener = listener;
+
+        playoutThread.start();
+        playoutHandler = new Handler(playoutThread.getLooper());
+    }
+
+    public void push(LocationProto.ServerResponse response) {
+        long now = System.currentTimeMillis();
+        long timestamp = response.getLocationUpdate().getTimestamp();
+        long transit = now - timestamp;
+
+        long playoutTime;
+        long delay;
+        synchronized (this) {
+            if (timestamp <= lastPushedTimestamp) {
+                // The server repeats its last fix when answering a ping, nothing new to play out
+                return;
+            }
+            lastPushedTimestamp = timestamp;
+
+            updateJitter(transit);
+
+            playoutTime = timestamp + baseOffset() + targetDelay();
+            delay = playoutTime - now;
+
+            if (delay < 0) {
+                lateDrops++;
+                FlightRecorder.record(EVENT_LATE_DROP, -delay);
+                return;
+            }
+
+            if (pending.size() >= MAX_DEPTH) {
+                // Should never happen with sane timestamps, but don't let the buffer grow unbounded
+                pending.pollFirst();
+                lateDrops++;
+            }
+            pending.addLast(response);
+
+            // Exponential moving average of the delay we are adding on top of the network transit
+            addedLatency += (delay - addedLatency) / 16.0f;
+        }
+
+        playoutHandler.postDelayed(() -> emit(response), delay);
+    }
+
+    private void emit(LocationProto.ServerResponse response) {
+        synchronized (this) {
+            if (!pending.remove(response)) {
+                // Evicted while waiting for its playout time
+                return;
+            }
+            long timestamp = response.getLocationUpdate().getTimestamp();
+            if (timestamp <= lastEmittedTimestamp) {
+                lateDrops++;
+                return;
+            }
+            lastEmittedTimestamp = timestamp;
+        }
+
+        listener.onPlayout(response);
+    }
+
+    // Interarrival jitter estimate as in RFC 3550, section 6.4.1
+    private void updateJitter(long transit) {
+        if (lastTransit != Long.MIN_VALUE) {
+            long d = Math.abs(transit - lastTransit);
+            jitter += (d - jitter) / 16.0f;
+        }
+        lastTransit = transit;
+
+        transitSamples[transitSampleIndex] = transit;
+        transitSampleIndex = (transitSampleIndex + 1) % BASE_WINDOW;
+        if (transitSampleCount < BASE_WINDOW) {
+            transitSampleCount++;
+        }
+    }
+
+    private long baseOffset() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < transitSampleCount; i++) {
+            min = Math.min(min, transitSamples[i]);
+        }
+        return min;
+    }
+
+    private long targetDelay() {
+        return Math.max(MIN_DELAY, Math.min(MAX_DELAY, (long) (jitter * JITTER_MULTIPLIER)));
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(pending.size(), lateDrops, targetDelay(), addedLatency);
+    }
+
+    public synchronized void reset() {
+        playoutHandler.removeCallbacksAndMessages(null);
+        pending.clear();
+        transitSampleCount = 0;
+        transitSampleIndex = 0;
+        lastTransit = Long.MIN_VALUE;
+        jitter = 0;
+        lastPushedTimestamp = 0;
+        lastEmittedTimestamp = 0;
+    }
+
+    public void shutdown() {
+        reset();
+        playoutThread.quitSafely();
+    }
+}
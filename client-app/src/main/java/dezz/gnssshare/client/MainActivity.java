@@ -26,13 +26,13 @@ import android.content.pm.PackageManager;
 import android.location.Location;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
 import android.provider.Settings;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.RadioButton;
 import android.widget.TextView;
@@ -66,12 +66,7 @@ public class MainActivity extends AppCompatActivity {
 
     private TextView statusText;
     private TextView connectionText;
-    private TextView dataAgeText;
-    private TextView locationText;
-    private TextView satellitesText;
-    private TextView providerText;
-    private TextView ageText;
-    private TextView additionalInfoText;
+    private ClientDashboard dashboard;
     private View permissionsSection;
     private Button requestPermissionsButton;
     private TextView permissionsStatusText;
@@ -79,10 +74,11 @@ public class MainActivity extends AppCompatActivity {
     private Button startServiceButton;
     private Button stopServiceButton;
     private TextView serviceStatusText;
+    private SkyPlotView skyPlotView;
     private TextView serverIpEditLabel;
     private EditText serverIpEdit;
+    private EditText backupServersEdit;
 
-    private final Handler uiHandler = new Handler();
     private String appVersion = "<unknown>";
 
     private final BroadcastReceiver connectionReceiver = new BroadcastReceiver() {
@@ -102,15 +98,40 @@ public class MainActivity extends AppCompatActivity {
         public void onReceive(Context context, Intent intent) {
             if ("dezz.gnssshare.LOCATION_UPDATE".equals(intent.getAction())) {
                 int satellites = intent.getIntExtra("satellites", 0);
-                updateSatelliteInfo(satellites);
+                dashboard.setSatellites(satellites);
 
                 Location location = intent.getParcelableExtra("location");
                 if (location != null) {
                     String provider = intent.getStringExtra("provider");
                     float locationAge = intent.getFloatExtra("locationAge", 0);
 
-                    updateLocationInfo(location, provider, locationAge);
+                    dashboard.setLocation(location, provider, locationAge);
                 }
+
+                if (intent.hasExtra("jitterBufferDepth")) {
+                    dashboard.setJitterBuffer(
+                            intent.getIntExtra("jitterBufferDepth", 0),
+                            intent.getFloatExtra("jitterBufferLatency", 0),
+                            intent.getLongExtra("jitterBufferLateDrops", 0)
+                    );
+                }
+            }
+        }
+    };
+
+    private final BroadcastReceiver satelliteStatusReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if ("dezz.gnssshare.SATELLITE_STATUS".equals(intent.getAction()) && Preferences.satelliteDetail(context)) {
+                dashboard.setSatellites(intent.getIntExtra("satellites", 0));
+                skyPlotView.setSatellites(
+                        intent.getIntArrayExtra("keys"),
+                        intent.getIntArrayExtra("cn0"),
+                        intent.getIntArrayExtra("elevation"),
+                        intent.getIntArrayExtra("azimuth"),
+                        intent.getIntArrayExtra("flags")
+                );
+                skyPlotView.setVisibility(View.VISIBLE);
             }
         }
     };
@@ -135,58 +156,69 @@ public class MainActivity extends AppCompatActivity {
         appVersion = VersionGetter.getAppVersionName(this);
 
         initializeViews();
-        registerReceivers();
+
+        IntentFilter mockLocationStatusFilter = new IntentFilter("dezz.gnssshare.MOCK_LOCATION_STATUS");
+        registerReceiver(mockLocationStatusReceiver, mockLocationStatusFilter, RECEIVER_NOT_EXPORTED);
 
         // Check permissions status on startup
         updatePermissionsStatus();
 
-        // Start periodic UI updates
-        startUIUpdates();
-
         if (GNSSClientService.isServiceEnabled(this) && !GNSSClientService.isServiceRunning()) {
             startGNSSService();
         }
     }
 
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
+    protected void onStart() {
+        super.onStart();
+
+        // Nothing on the dashboard is updated while it can't be seen
+        IntentFilter connectionFilter = new IntentFilter("dezz.gnssshare.CONNECTION_CHANGED");
+        registerReceiver(connectionReceiver, connectionFilter, RECEIVER_NOT_EXPORTED);
+
+        IntentFilter locationFilter = new IntentFilter("dezz.gnssshare.LOCATION_UPDATE");
+        registerReceiver(locationReceiver, locationFilter, RECEIVER_NOT_EXPORTED);
+
+        IntentFilter satelliteStatusFilter = new IntentFilter("dezz.gnssshare.SATELLITE_STATUS");
+        registerReceiver(satelliteStatusReceiver, satelliteStatusFilter, RECEIVER_NOT_EXPORTED);
+
+        // Catch up with changes missed while stopped
+        updateConnectionStatus(GNSSClientService.getConnectionState(), GNSSClientService.getServerAddress());
+        dashboard.start();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
 
         unregisterReceiver(connectionReceiver);
         unregisterReceiver(locationReceiver);
+        unregisterReceiver(satelliteStatusReceiver);
+        dashboard.stop();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
         unregisterReceiver(mockLocationStatusReceiver);
-        uiHandler.removeCallbacksAndMessages(null);
     }
 
     private void initializeViews() {
         statusText = findViewById(R.id.statusText);
         connectionText = findViewById(R.id.connectionText);
-        dataAgeText = findViewById(R.id.dataAgeText);
-        locationText = findViewById(R.id.locationText);
-        satellitesText = findViewById(R.id.satellitesText);
-        providerText = findViewById(R.id.providerText);
-        ageText = findViewById(R.id.ageText);
-        additionalInfoText = findViewById(R.id.additionalInfoText);
+        dashboard = new ClientDashboard(this);
         permissionsSection = findViewById(R.id.permissionsSection);
         requestPermissionsButton = findViewById(R.id.requestPermissionsButton);
         permissionsStatusText = findViewById(R.id.permissionsStatusText);
         mockLocationStatusText = findViewById(R.id.mockLocationStatusText);
         serverIpEditLabel = findViewById(R.id.serverIpEditLabel);
         serverIpEdit = findViewById(R.id.serverIpEdit);
+        backupServersEdit = findViewById(R.id.backupServersEdit);
         startServiceButton = findViewById(R.id.startServiceButton);
         stopServiceButton = findViewById(R.id.stopServiceButton);
         serviceStatusText = findViewById(R.id.serviceStatusText);
-
-        // Initialize with default values
-        updateConnectionStatus(GNSSClientService.getConnectionState(), GNSSClientService.getServerAddress());
-        dataAgeText.setText(String.format(getString(R.string.data_age_status), getString(R.string.unknown)));
-
-        additionalInfoText.setText(
-                String.format("%s  %s",
-                        String.format(getString(R.string.movement_speed), getString(R.string.unknown)),
-                        String.format(getString(R.string.movement_bearing), getString(R.string.unknown))
-                )
-        );
+        skyPlotView = findViewById(R.id.skyPlotView);
 
         boolean useGatewayIp = Preferences.useGatewayIp(this);
         RadioButton connectToGatewayIpRadio = findViewById(R.id.connectToGatewayIpRadioButton);
@@ -206,6 +238,45 @@ public class MainActivity extends AppCompatActivity {
         serverIpEditLabel.setEnabled(!useGatewayIp);
         serverIpEdit.setEnabled(!useGatewayIp);
         serverIpEdit.setText(Preferences.serverAddress(this));
+        backupServersEdit.setText(String.join(", ", Preferences.backupServers(this)));
+
+        CheckBox useJitterBufferCheckBox = findViewById(R.id.useJitterBufferCheckBox);
+        useJitterBufferCheckBox.setChecked(Preferences.useJitterBuffer(this));
+        useJitterBufferCheckBox.setOnCheckedChangeListener((v, isChecked) -> Preferences.setUseJitterBuffer(this, isChecked));
+
+        CheckBox lowRateModeCheckBox = findViewById(R.id.lowRateModeCheckBox);
+        lowRateModeCheckBox.setChecked(Preferences.lowRateMode(this));
+        lowRateModeCheckBox.setOnCheckedChangeListener((v, isChecked) -> Preferences.setLowRateMode(this, isChecked));
+
+        CheckBox lowLatencyWifiCheckBox = findViewById(R.id.lowLatencyWifiCheckBox);
+        lowLatencyWifiCheckBox.setChecked(Preferences.lowLatencyWifi(this));
+        lowLatencyWifiCheckBox.setOnCheckedChangeListener((v, isChecked) -> Preferences.setLowLatencyWifi(this, isChecked));
+
+        CheckBox useLocalServerCheckBox = findViewById(R.id.useLocalServerCheckBox);
+        useLocalServerCheckBox.setChecked(Preferences.useLocalServer(this));
+        useLocalServerCheckBox.setOnCheckedChangeListener((v, isChecked) -> Preferences.setUseLocalServer(this, isChecked));
+
+        CheckBox useSharedMemoryRingCheckBox = findViewById(R.id.useSharedMemoryRingCheckBox);
+        useSharedMemoryRingCheckBox.setChecked(Preferences.useSharedMemoryRing(this));
+        useSharedMemoryRingCheckBox.setOnCheckedChangeListener((v, isChecked) -> Preferences.setUseSharedMemoryRing(this, isChecked));
+
+        CheckBox relayModeCheckBox = findViewById(R.id.relayModeCheckBox);
+        relayModeCheckBox.setChecked(Preferences.relayMode(this));
+        relayModeCheckBox.setOnCheckedChangeListener((v, isChecked) -> Preferences.setRelayMode(this, isChecked));
+
+        CheckBox nmeaOutputCheckBox = findViewById(R.id.nmeaOutputCheckBox);
+        nmeaOutputCheckBox.setText(String.format(getString(R.string.nmea_output), NmeaServer.PORT));
+        nmeaOutputCheckBox.setChecked(Preferences.nmeaOutput(this));
+        nmeaOutputCheckBox.setOnCheckedChangeListener((v, isChecked) -> Preferences.setNmeaOutput(this, isChecked));
+
+        CheckBox satelliteDetailCheckBox = findViewById(R.id.satelliteDetailCheckBox);
+        satelliteDetailCheckBox.setChecked(Preferences.satelliteDetail(this));
+        satelliteDetailCheckBox.setOnCheckedChangeListener((v, isChecked) -> {
+            Preferences.setSatelliteDetail(this, isChecked);
+            if (!isChecked) {
+                skyPlotView.setVisibility(View.GONE);
+            }
+        });
 
         // Set up permissions button click listener
         requestPermissionsButton.setOnClickListener(v -> requestPermissions());
@@ -231,19 +302,24 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        // Initialize service status
-        updateServiceStatus(GNSSClientService.isServiceRunning());
-    }
+        // Sessions are added and removed by the service as the list changes
+        backupServersEdit.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                Preferences.setBackupServers(MainActivity.this, s.toString());
+            }
 
-    private void registerReceivers() {
-        IntentFilter connectionFilter = new IntentFilter("dezz.gnssshare.CONNECTION_CHANGED");
-        registerReceiver(connectionReceiver, connectionFilter, RECEIVER_NOT_EXPORTED);
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
 
-        IntentFilter locationFilter = new IntentFilter("dezz.gnssshare.LOCATION_UPDATE");
-        registerReceiver(locationReceiver, locationFilter, RECEIVER_NOT_EXPORTED);
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+        });
 
-        IntentFilter mockLocationStatusFilter = new IntentFilter("dezz.gnssshare.MOCK_LOCATION_STATUS");
-        registerReceiver(mockLocationStatusReceiver, mockLocationStatusFilter, RECEIVER_NOT_EXPORTED);
+        // Initialize service status
+        updateServiceStatus(GNSSClientService.isServiceRunning());
     }
 
     private void startGNSSService() {
@@ -449,84 +525,7 @@ public class MainActivity extends AppCompatActivity {
 
             if (state != ConnectionManager.ConnectionState.CONNECTED) {
                 // Clear location info when disconnected
-                locationText.setText(String.format(getString(R.string.location_status), getString(R.string.unknown)));
-                satellitesText.setText(String.format(getString(R.string.satellites_status), 0));
-                providerText.setText(String.format(getString(R.string.provider_status), getString(R.string.unknown)));
-                ageText.setText(String.format(getString(R.string.age_status), getString(R.string.unknown)));
-            }
-        });
-    }
-
-    private void updateSatelliteInfo(int satellites) {
-        satellitesText.setText(String.format(getString(R.string.satellites_status), satellites));
-    }
-
-    private void updateLocationInfo(Location location, String provider, float locationAge) {
-        runOnUiThread(() -> {
-            // Location coordinates
-            StringBuilder locationBuilder = new StringBuilder();
-
-            locationBuilder.append(
-                    String.format(getString(R.string.location_status),
-                            String.format(getString(R.string.location_format),
-                                    location.getLatitude(),
-                                    location.getLongitude()
-                            )
-                    )
-            );
-
-            if (location.hasAltitude()) {
-                locationBuilder.append(
-                        String.format(getString(R.string.altitude_format), location.getAltitude())
-                );
-            }
-
-            if (location.hasAccuracy()) {
-                locationBuilder.append(
-                        String.format(getString(R.string.location_accuracy_format), location.getAccuracy())
-                );
-            }
-
-            locationText.setText(locationBuilder.toString());
-
-            // Provider
-            providerText.setText(
-                    String.format(
-                            getString(R.string.provider_status),
-                            (provider != null ? provider : getString(R.string.unknown))
-                    )
-            );
-
-            // Age
-            ageText.setText(
-                    String.format(
-                            getString(R.string.age_status),
-                            String.format(getString(R.string.age_format), locationAge)
-                    )
-            );
-
-            // Additional info
-            StringBuilder additionalInfo = new StringBuilder();
-            if (location.hasSpeed()) {
-                additionalInfo.append(
-                        String.format(getString(R.string.movement_speed),
-                                String.format(getString(R.string.speed_format), location.getSpeed())
-                        )
-                );
-            }
-            if (location.hasBearing()) {
-                if (additionalInfo.length() > 0) {
-                    additionalInfo.append("  ");
-                }
-                additionalInfo.append(
-                        String.format(getString(R.string.movement_bearing),
-                                String.format(getString(R.string.bearing_format), location.getBearing())
-                        )
-                );
-            }
-
-            if (additionalInfo.length() > 0) {
-                additionalInfoText.setText(additionalInfo.toString());
+                dashboard.clearLocation();
             }
         });
     }
@@ -535,94 +534,46 @@ public class MainActivity extends AppCompatActivity {
         runOnUiThread(() -> updatePermissionsStatus(message, error));
     }
 
-    private void startUIUpdates() {
-        // Update UI every second to show connection age and other dynamic info
-        uiHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                updateDynamicInfo();
-                uiHandler.postDelayed(this, 1000); // Update every second
-            }
-        }, 1000);
-    }
-
-    private void updateDynamicInfo() {
-        if (!GNSSClientService.isServiceRunning()) {
-            return;
-        }
-
-        long lastUpdateTime = GNSSClientService.getLastUpdateTime();
-        if (lastUpdateTime > 0) {
-            long ageSeconds = (System.currentTimeMillis() - lastUpdateTime) / 1000;
-
-            runOnUiThread(() -> {
-                if (dataAgeText != null) {
-                    if (ageSeconds < 60) {
-                        dataAgeText.setText(
-                                String.format(
-                                        getString(R.string.data_age_status),
-                                        String.format(
-                                                getString(R.string.data_age_format_s),
-                                                ageSeconds
-                                        )
-                                )
-                        );
-
-                    } else {
-                        dataAgeText.setText(
-                                String.format(getString(R.string.data_age_status),
-                                        String.format(
-                                                getString(R.string.data_age_format_ms), ageSeconds / 60, ageSeconds % 60)
-                                )
-                        );
-                    }
-
-                    if (ageSeconds < 10) {
-                        dataAgeText.setTextColor(getColor(android.R.color.holo_green_light));
-                    } else {
-                        dataAgeText.setTextColor(getColor(android.R.color.holo_red_light));
-                    }
-                }
-            });
-        }
-    }
-
     /**
      * Export logs to a file and share it
      */
     private void exportLogs(String appName) {
+        Button exportLogsButton = findViewById(R.id.exportLogsButton);
+        exportLogsButton.setEnabled(false);
+
         // Show progress
         Toast.makeText(this, dezz.gnssshare.logexporter.R.string.export_logs_in_progress, Toast.LENGTH_SHORT).show();
 
-        // Run in background to avoid blocking UI
-        new Thread(() -> {
-            try {
-                // Export logs to a file
-                File logFile = LogExporter.exportLogs(this, appName);
-
-                // Clean up old logs
-                LogExporter.cleanupOldLogs(this, appName);
-
-                // Update UI on main thread
-                runOnUiThread(() -> {
-                    if (logFile != null) {
-                        // Share the log file
-                        shareLogFile(logFile);
-                        Toast.makeText(this, dezz.gnssshare.logexporter.R.string.export_logs_success, Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(this, dezz.gnssshare.logexporter.R.string.export_logs_no_logs, Toast.LENGTH_SHORT).show();
-                    }
-                });
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error exporting logs", e);
-                runOnUiThread(() ->
-                        Toast.makeText(this,
-                                String.format(getString(dezz.gnssshare.logexporter.R.string.export_logs_error), e.getMessage()),
-                                Toast.LENGTH_LONG).show()
-                );
+        // Runs in background, callbacks come on the main thread
+        LogExporter.exportLogsAsync(this, appName, new LogExporter.Callback() {
+            @Override
+            public void onProgress(long bytesWritten) {
+                exportLogsButton.setText(String.format(
+                        getString(dezz.gnssshare.logexporter.R.string.export_logs_progress),
+                        bytesWritten / (1024 * 1024.0)));
+            }
+
+            @Override
+            public void onComplete(File logFile) {
+                exportLogsButton.setText(dezz.gnssshare.logexporter.R.string.export_logs);
+                exportLogsButton.setEnabled(true);
+                if (isDestroyed()) {
+                    return;
+                }
+                // Share the log file
+                shareLogFile(logFile);
+                Toast.makeText(MainActivity.this, dezz.gnssshare.logexporter.R.string.export_logs_success, Toast.LENGTH_SHORT).show();
             }
-        }).start();
+
+            @Override
+            public void onError(Exception e) {
+                exportLogsButton.setText(dezz.gnssshare.logexporter.R.string.export_logs);
+                exportLogsButton.setEnabled(true);
+                Toast.makeText(MainActivity.this,
+                        String.format(getString(dezz.gnssshare.logexporter.R.string.export_logs_error), e.getMessage()),
+                        Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     /**
@@ -639,7 +590,7 @@ public class MainActivity extends AppCompatActivity {
 
             // Create share intent
             Intent shareIntent = new Intent(Intent.ACTION_SEND);
-            shareIntent.setType("text/plain");
+            shareIntent.setType("application/gzip");
             shareIntent.putExtra(Intent.EXTRA_STREAM, fileUri);
             shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 
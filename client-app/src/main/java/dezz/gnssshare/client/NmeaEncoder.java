@@ -0,0 +1,256 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.client;
+
+import dezz.gnssshare.proto.LocationProto;
+
+/**
+ * Encodes a fix as NMEA 0183 GGA, RMC, VTG and GSA sentences into a preallocated buffer.
+ * <p>
+ * Numbers are written digit by digit and the date is computed arithmetically, so encoding a fix
+ * creates no garbage. The buffer is reused by the next call, an instance must not be shared
+ * between threads without synchronization.
+ */
+public class NmeaEncoder {
+    private static final byte[] HEX = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+    private static final double KNOTS_PER_MPS = 1.943844;
+    private static final double KMH_PER_MPS = 3.6;
+    // HDOP is estimated from the accuracy with a typical user range error, meters
+    private static final float USER_RANGE_ERROR = 5;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    // Latitude and longitude minutes are written with 5 decimals
+    private static final long MINUTE_SCALE = 100_000;
+    // Four sentences are well under 400 bytes
+    private static final int BUFFER_SIZE = 512;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int length = 0;
+    private int sentenceStart = 0;
+
+    // Fields shared by several sentences, computed once per fix
+    private int hour, minute, second, centis;
+    private int day, month, year;
+    private float hdop;
+    private char mode;
+
+    /**
+     * @return the number of bytes written to {@link #getBuffer()}
+     */
+    public int encode(LocationProto.LocationUpdate locationUpdate, int satellites) {
+        length = 0;
+        setTime(locationUpdate.getTimestamp());
+        hdop = locationUpdate.getAccuracy() > 0 ? Math.max(0.5f, locationUpdate.getAccuracy() / USER_RANGE_ERROR) : 99.9f;
+        // A restored fix is not a measurement, mark it as estimated
+        mode = locationUpdate.getStale() ? 'E' : 'A';
+
+        writeGga(locationUpdate, satellites);
+        writeRmc(locationUpdate);
+        writeVtg(locationUpdate);
+        writeGsa();
+        return length;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    private void writeGga(LocationProto.LocationUpdate locationUpdate, int satellites) {
+        begin("GPGGA");
+        putTime();
+        putComma();
+        putLatitude(locationUpdate.getLatitude());
+        putComma();
+        putLongitude(locationUpdate.getLongitude());
+        putComma();
+        // Quality 6 is "estimated (dead reckoning)"
+        put(mode == 'E' ? '6' : '1');
+        putComma();
+        putInt(Math.min(satellites, 99), 2);
+        putComma();
+        putFixed(hdop, 1);
+        putComma();
+        putFixed(locationUpdate.getAltitude(), 1);
+        put(",M,,M,,");
+        end();
+    }
+
+    private void writeRmc(LocationProto.LocationUpdate locationUpdate) {
+        begin("GPRMC");
+        putTime();
+        put(",A,");
+        putLatitude(locationUpdate.getLatitude());
+        putComma();
+        putLongitude(locationUpdate.getLongitude());
+        putComma();
+        putFixed(locationUpdate.getSpeed() * KNOTS_PER_MPS, 1);
+        putComma();
+        putFixed(locationUpdate.getBearing(), 1);
+        putComma();
+        putInt(day, 2);
+        putInt(month, 2);
+        putInt(year % 100, 2);
+        put(",,,");
+        put(mode);
+        end();
+    }
+
+    private void writeVtg(LocationProto.LocationUpdate locationUpdate) {
+        begin("GPVTG");
+        putFixed(locationUpdate.getBearing(), 1);
+        put(",T,,M,");
+        putFixed(locationUpdate.getSpeed() * KNOTS_PER_MPS, 1);
+        put(",N,");
+        putFixed(locationUpdate.getSpeed() * KMH_PER_MPS, 1);
+        put(",K,");
+        put(mode);
+        end();
+    }
+
+    private void writeGsa() {
+        // Satellite ids are not known to the client, the twelve slots stay empty
+        begin("GPGSA");
+        put("A,3,,,,,,,,,,,,,");
+        putFixed(hdop, 1);
+        putComma();
+        putFixed(hdop, 1);
+        putComma();
+        end();
+    }
+
+    private void setTime(long timestamp) {
+        long days = Math.floorDiv(timestamp, MILLIS_PER_DAY);
+        long millisOfDay = Math.floorMod(timestamp, MILLIS_PER_DAY);
+        hour = (int) (millisOfDay / 3_600_000);
+        minute = (int) (millisOfDay / 60_000 % 60);
+        second = (int) (millisOfDay / 1000 % 60);
+        centis = (int) (millisOfDay / 10 % 100);
+
+        // Civil date from days since 1970-01-01, see Howard Hinnant's "chrono-Compatible Low-Level Date Algorithms"
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+    }
+
+    private void begin(String header) {
+        sentenceStart = length;
+        put('$');
+        put(header);
+        putComma();
+    }
+
+    private void end() {
+        // XOR of everything between '$' and '*'
+        int checksum = 0;
+        for (int i = sentenceStart + 1; i < length; i++) {
+            checksum ^= buffer[i];
+        }
+        put('*');
+        buffer[length++] = HEX[(checksum >> 4) & 0xF];
+        buffer[length++] = HEX[checksum & 0xF];
+        put('\r');
+        put('\n');
+    }
+
+    private void putTime() {
+        putInt(hour, 2);
+        putInt(minute, 2);
+        putInt(second, 2);
+        put('.');
+        putInt(centis, 2);
+    }
+
+    private void putLatitude(double latitude) {
+        putAngle(Math.abs(latitude), 2);
+        putComma();
+        put(latitude < 0 ? 'S' : 'N');
+    }
+
+    private void putLongitude(double longitude) {
+        putAngle(Math.abs(longitude), 3);
+        putComma();
+        put(longitude < 0 ? 'W' : 'E');
+    }
+
+    /**
+     * Degrees and decimal minutes, e.g. 5545.12345 for 55°45.12345'
+     */
+    private void putAngle(double degrees, int degreeDigits) {
+        // Rounded as a whole, so 59.999999' becomes the next degree instead of 60'
+        long minutes = Math.round(degrees * 60 * MINUTE_SCALE);
+        putInt(minutes / (60 * MINUTE_SCALE), degreeDigits);
+        long minutesOfDegree = minutes % (60 * MINUTE_SCALE);
+        putInt(minutesOfDegree / MINUTE_SCALE, 2);
+        put('.');
+        putInt(minutesOfDegree % MINUTE_SCALE, 5);
+    }
+
+    private void putFixed(double value, int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            put('-');
+        }
+        putInt(scaled / scale, 1);
+        if (decimals > 0) {
+            put('.');
+            putInt(scaled % scale, decimals);
+        }
+    }
+
+    private void putInt(long value, int minDigits) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < minDigits; i++) {
+            put('0');
+        }
+        int end = length + digits;
+        for (int i = end - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length = end;
+    }
+
+    private void putComma() {
+        put(',');
+    }
+
+    private void put(char c) {
+        buffer[length++] = (byte) c;
+    }
+
+    private void put(String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            buffer[length++] = (byte) ascii.charAt(i);
+        }
+    }
+}
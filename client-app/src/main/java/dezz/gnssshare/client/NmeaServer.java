@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.client;
+
+import android.util.Log;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the fixes used by the client as NMEA 0183 sentences on a TCP port, for navigation apps
+ * and dashcams that can't use Android mock locations.
+ * <p>
+ * Every fix is encoded once by {@link NmeaEncoder} and the same bytes are queued to all
+ * consumers, each written by its own {@link ConsumerWriter}, so a consumer that stops reading
+ * can't hold up the fix path. The consumer list is an array replaced on every change, so
+ * publishing a fix neither locks the list nor allocates.
+ */
+public class NmeaServer {
+    private static final String TAG = "NmeaServer";
+
+    // Port commonly used for NMEA over TCP
+    public static final int PORT = 10110;
+    private static final int MAX_CLIENTS = 8;
+    private static final int SENTENCES_PER_FIX = 4;
+    // A consumer that hasn't taken a fix for this long is closed
+    private static final long STALL_TIMEOUT = 5000;
+    private static final int WRITE_BUFFER_SIZE = 512;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final NmeaEncoder encoder = new NmeaEncoder();
+    // The sentences of all fixes of a batch, guarded by the encoder lock
+    private byte[] batchBuffer = new byte[WRITE_BUFFER_SIZE];
+    private final Object clientsLock = new Object();
+
+    private volatile ServerSocket serverSocket = null;
+    private volatile Client[] clients = new Client[0];
+
+    public void start() {
+        executor.execute(() -> {
+            ServerSocket socket;
+            try {
+                socket = new ServerSocket(PORT);
+                serverSocket = socket;
+                Log.i(TAG, "NMEA output listening on port " + PORT);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start NMEA output", e);
+                return;
+            }
+
+            while (serverSocket == socket) {
+                try {
+                    Socket clientSocket = socket.accept();
+                    clientSocket.setTcpNoDelay(true);
+                    Client client = new Client(clientSocket);
+                    if (!addClient(client)) {
+                        Log.w(TAG, "NMEA client limit reached, rejecting " + clientSocket.getRemoteSocketAddress());
+                        client.close();
+                        continue;
+                    }
+                    client.start();
+                } catch (IOException e) {
+                    if (serverSocket == socket) {
+                        Log.e(TAG, "Error accepting NMEA client", e);
+                    }
+                }
+            }
+        });
+    }
+
+    public void stop() {
+        ServerSocket socket = serverSocket;
+        serverSocket = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing NMEA socket", e);
+            }
+        }
+
+        for (Client client : clients) {
+            client.close();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Send a fix to all consumers
+     *
+     * @param satellites satellites used in the fix, as reported by the server
+     */
+    public void publish(LocationProto.LocationUpdate locationUpdate, int satellites) {
+        Client[] clients = this.clients;
+        if (clients.length == 0) {
+            return;
+        }
+
+        // The encoder buffer is shared, fixes may come from the receive threads and the jitter buffer.
+        // Queueing only copies the bytes, nothing blocks on a consumer while the lock is held.
+        synchronized (encoder) {
+            int length = encoder.encode(locationUpdate, satellites);
+            byte[] buffer = encoder.getBuffer();
+            for (Client client : clients) {
+                client.writer.offer(buffer, length);
+            }
+        }
+        Metrics.add("client.nmea.sentences", SENTENCES_PER_FIX);
+    }
+
+    /**
+     * Send the fixes of a batch to all consumers, oldest first. They are queued as one write, the
+     * writers keep only the latest unsent data and would drop all but the last fix otherwise.
+     */
+    public void publishBatch(List<LocationProto.LocationUpdate> batch, int satellites) {
+        Client[] clients = this.clients;
+        if (clients.length == 0) {
+            return;
+        }
+
+        synchronized (encoder) {
+            int total = 0;
+            for (LocationProto.LocationUpdate locationUpdate : batch) {
+                int length = encoder.encode(locationUpdate, satellites);
+                if (batchBuffer.length < total + length) {
+                    batchBuffer = Arrays.copyOf(batchBuffer, 2 * (total + length));
+                }
+                System.arraycopy(encoder.getBuffer(), 0, batchBuffer, total, length);
+                total += length;
+            }
+            for (Client client : clients) {
+                client.writer.offer(batchBuffer, total);
+            }
+        }
+        Metrics.add("client.nmea.sentences", (long) SENTENCES_PER_FIX * batch.size());
+    }
+
+    private boolean addClient(Client client) {
+        synchronized (clientsLock) {
+            if (clients.length >= MAX_CLIENTS) {
+                return false;
+            }
+            Client[] updated = Arrays.copyOf(clients, clients.length + 1);
+            updated[clients.length] = client;
+            clients = updated;
+            Metrics.set("client.nmea.clients", updated.length);
+            return true;
+        }
+    }
+
+    private void removeClient(Client client) {
+        synchronized (clientsLock) {
+            int index = Arrays.asList(clients).indexOf(client);
+            if (index < 0) {
+                return;
+            }
+            Client[] updated = new Client[clients.length - 1];
+            System.arraycopy(clients, 0, updated, 0, index);
+            System.arraycopy(clients, index + 1, updated, index, clients.length - index - 1);
+            clients = updated;
+            Metrics.set("client.nmea.clients", updated.length);
+        }
+    }
+
+    private class Client implements Runnable, ConsumerWriter.Sink {
+        private final Socket socket;
+        private final OutputStream output;
+        private final String description;
+        private final ConsumerWriter writer;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.output = socket.getOutputStream();
+            this.description = String.valueOf(socket.getRemoteSocketAddress());
+            this.writer = new ConsumerWriter("NMEA client " + description, WRITE_BUFFER_SIZE, STALL_TIMEOUT,
+                    "client.nmea", this);
+            Log.i(TAG, "NMEA client connected: " + description);
+        }
+
+        void start() {
+            executor.execute(writer);
+            executor.execute(this);
+        }
+
+        /**
+         * Consumers don't send anything, reading only detects that they went away
+         */
+        @Override
+        public void run() {
+            try {
+                InputStream input = socket.getInputStream();
+                byte[] discard = new byte[64];
+                while (input.read(discard) != -1) {
+                    // Ignored
+                }
+                Log.i(TAG, "NMEA client disconnected: " + description);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    Log.i(TAG, "NMEA client disconnected: " + description + " - " + e.getMessage());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        // Called on the writer thread
+        @Override
+        public void write(byte[] data, int length) throws IOException {
+            output.write(data, 0, length);
+        }
+
+        @Override
+        public void close() {
+            writer.close();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing NMEA client", e);
+            }
+            removeClient(this);
+        }
+    }
+}
@@ -20,34 +20,200 @@ package dezz.gnssshare.client;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import dezz.gnssshare.shared.ConfigStore;
+
+/**
+ * Client settings. Reads come from a cached {@link Config} snapshot, writes go to the
+ * preferences and are published to the snapshot and its listeners.
+ */
 public class Preferences {
     private static final String PREF_IS_SERVICE_ENABLED = "isServiceEnabled";
     private static final String PREF_USE_GATEWAY_IP = "useGatewayIp";
     private static final String PREF_SERVER_ADDRESS = "serverAddress";
+    private static final String PREF_USE_JITTER_BUFFER = "useJitterBuffer";
+    private static final String PREF_LOW_RATE_MODE = "lowRateMode";
+    private static final String PREF_LOW_LATENCY_WIFI = "lowLatencyWifi";
+    private static final String PREF_USE_LOCAL_SERVER = "useLocalServer";
+    private static final String PREF_USE_SHARED_MEMORY_RING = "useSharedMemoryRing";
+    private static final String PREF_RELAY_MODE = "relayMode";
+    // Comma separated addresses of servers to keep connected besides the main one
+    private static final String PREF_BACKUP_SERVERS = "backupServers";
+    private static final String PREF_NMEA_OUTPUT = "nmeaOutput";
+    private static final String PREF_SATELLITE_DETAIL = "satelliteDetail";
+
+    /**
+     * Immutable snapshot of all client settings
+     */
+    public static final class Config {
+        public final boolean serviceEnabled;
+        public final boolean useGatewayIp;
+        public final String serverAddress;
+        public final boolean useJitterBuffer;
+        public final boolean lowRateMode;
+        public final boolean lowLatencyWifi;
+        public final boolean useLocalServer;
+        public final boolean useSharedMemoryRing;
+        public final boolean relayMode;
+        public final List<String> backupServers;
+        public final boolean nmeaOutput;
+        public final boolean satelliteDetail;
+
+        Config(SharedPreferences prefs) {
+            serviceEnabled = prefs.getBoolean(PREF_IS_SERVICE_ENABLED, false);
+            useGatewayIp = prefs.getBoolean(PREF_USE_GATEWAY_IP, true);
+            serverAddress = prefs.getString(PREF_SERVER_ADDRESS, "192.168.43.1");
+            useJitterBuffer = prefs.getBoolean(PREF_USE_JITTER_BUFFER, false);
+            lowRateMode = prefs.getBoolean(PREF_LOW_RATE_MODE, false);
+            lowLatencyWifi = prefs.getBoolean(PREF_LOW_LATENCY_WIFI, true);
+            useLocalServer = prefs.getBoolean(PREF_USE_LOCAL_SERVER, false);
+            useSharedMemoryRing = prefs.getBoolean(PREF_USE_SHARED_MEMORY_RING, false);
+            relayMode = prefs.getBoolean(PREF_RELAY_MODE, false);
+            backupServers = parseAddressList(prefs.getString(PREF_BACKUP_SERVERS, ""));
+            nmeaOutput = prefs.getBoolean(PREF_NMEA_OUTPUT, false);
+            satelliteDetail = prefs.getBoolean(PREF_SATELLITE_DETAIL, false);
+        }
+    }
+
+    private static volatile ConfigStore<Config> store = null;
+
+    public static Config get(Context context) {
+        return getStore(context).get();
+    }
+
+    /**
+     * Listeners are called on the main thread after any setting has changed
+     */
+    public static void addListener(Context context, ConfigStore.Listener<Config> listener) {
+        getStore(context).addListener(listener);
+    }
+
+    public static void removeListener(Context context, ConfigStore.Listener<Config> listener) {
+        getStore(context).removeListener(listener);
+    }
 
     // SharedPreferences helper methods
     public static void setServiceEnabled(Context context, boolean enabled) {
-        getPrefs(context).edit().putBoolean(PREF_IS_SERVICE_ENABLED, enabled).apply();
+        getStore(context).edit().putBoolean(PREF_IS_SERVICE_ENABLED, enabled).apply();
     }
 
     public static boolean serviceEnabled(Context context) {
-        return getPrefs(context).getBoolean(PREF_IS_SERVICE_ENABLED, false);
+        return get(context).serviceEnabled;
     }
 
     public static void setUseGatewayIp(Context context, boolean value) {
-        getPrefs(context).edit().putBoolean(PREF_USE_GATEWAY_IP, value).apply();
+        getStore(context).edit().putBoolean(PREF_USE_GATEWAY_IP, value).apply();
     }
 
     public static boolean useGatewayIp(Context context) {
-        return getPrefs(context).getBoolean(PREF_USE_GATEWAY_IP, true);
+        return get(context).useGatewayIp;
     }
 
     public static void setServerAddress(Context context, String value) {
-        getPrefs(context).edit().putString(PREF_SERVER_ADDRESS, value).apply();
+        getStore(context).edit().putString(PREF_SERVER_ADDRESS, value).apply();
     }
 
     public static String serverAddress(Context context) {
-        return getPrefs(context).getString(PREF_SERVER_ADDRESS, "192.168.43.1");
+        return get(context).serverAddress;
+    }
+
+    public static void setUseJitterBuffer(Context context, boolean value) {
+        getStore(context).edit().putBoolean(PREF_USE_JITTER_BUFFER, value).apply();
+    }
+
+    public static boolean useJitterBuffer(Context context) {
+        return get(context).useJitterBuffer;
+    }
+
+    public static void setLowRateMode(Context context, boolean value) {
+        getStore(context).edit().putBoolean(PREF_LOW_RATE_MODE, value).apply();
+    }
+
+    public static boolean lowRateMode(Context context) {
+        return get(context).lowRateMode;
+    }
+
+    public static void setLowLatencyWifi(Context context, boolean value) {
+        getStore(context).edit().putBoolean(PREF_LOW_LATENCY_WIFI, value).apply();
+    }
+
+    public static boolean lowLatencyWifi(Context context) {
+        return get(context).lowLatencyWifi;
+    }
+
+    public static void setUseLocalServer(Context context, boolean value) {
+        getStore(context).edit().putBoolean(PREF_USE_LOCAL_SERVER, value).apply();
+    }
+
+    public static boolean useLocalServer(Context context) {
+        return get(context).useLocalServer;
+    }
+
+    public static void setUseSharedMemoryRing(Context context, boolean value) {
+        getStore(context).edit().putBoolean(PREF_USE_SHARED_MEMORY_RING, value).apply();
+    }
+
+    public static boolean useSharedMemoryRing(Context context) {
+        return get(context).useSharedMemoryRing;
+    }
+
+    public static void setRelayMode(Context context, boolean value) {
+        getStore(context).edit().putBoolean(PREF_RELAY_MODE, value).apply();
+    }
+
+    public static boolean relayMode(Context context) {
+        return get(context).relayMode;
+    }
+
+    public static void setBackupServers(Context context, String value) {
+        getStore(context).edit().putString(PREF_BACKUP_SERVERS, value).apply();
+    }
+
+    public static List<String> backupServers(Context context) {
+        return get(context).backupServers;
+    }
+
+    public static void setNmeaOutput(Context context, boolean value) {
+        getStore(context).edit().putBoolean(PREF_NMEA_OUTPUT, value).apply();
+    }
+
+    public static boolean nmeaOutput(Context context) {
+        return get(context).nmeaOutput;
+    }
+
+    public static void setSatelliteDetail(Context context, boolean value) {
+        getStore(context).edit().putBoolean(PREF_SATELLITE_DETAIL, value).apply();
+    }
+
+    public static boolean satelliteDetail(Context context) {
+        return get(context).satelliteDetail;
+    }
+
+    private static List<String> parseAddressList(String value) {
+        ArrayList<String> addresses = new ArrayList<>();
+        for (String address : value.split("[,\\s]+")) {
+            if (!address.isEmpty() && !addresses.contains(address)) {
+                addresses.add(address);
+            }
+        }
+        return Collections.unmodifiableList(addresses);
+    }
+
+    private static ConfigStore<Config> getStore(Context context) {
+        ConfigStore<Config> store = Preferences.store;
+        if (store == null) {
+            synchronized (Preferences.class) {
+                store = Preferences.store;
+                if (store == null) {
+                    store = new ConfigStore<>(getPrefs(context), Config::new);
+                    Preferences.store = store;
+                }
+            }
+        }
+        return store;
     }
 
     private static SharedPreferences getPrefs(Context context) {
@@ -0,0 +1,292 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.client;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.ClientSession;
+import dezz.gnssshare.shared.FlightRecorder;
+import dezz.gnssshare.shared.FrameChannel;
+import dezz.gnssshare.shared.Metrics;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Re-publishes frames received from the server to clients of this device, so devices that can't
+ * reach the phone's hotspot can still get fixes through the head unit.
+ * <p>
+ * Downstream clients see an ordinary server on the usual port, their packets and liveness are
+ * handled by the same {@link ClientSession} the servers use. Frames are passed through as received: the relay only appends a {@code RelayHop}
+ * entry, which protobuf merges into the {@code relay} list, so a chain of relays stays observable
+ * without any of them re-encoding the message. Probes are appended the same way.
+ * <p>
+ * Every client is written to by its own {@link ConsumerWriter}, so a device that stops reading
+ * holds up neither the upstream receive thread nor the other clients.
+ */
+public class RelayServer {
+    private static final String TAG = "RelayServer";
+
+    private static final FlightRecorder.Event EVENT_RELAYED = FlightRecorder.define(Log.VERBOSE, TAG,
+            "Relaying frame as hop %d, +%dus");
+
+    private static final int PORT = 8887;
+    private static final int MAX_CLIENTS = 16;
+    // A client that hasn't taken a frame for this long is dropped
+    private static final long STALL_TIMEOUT = 5000;
+    private static final int WRITE_BUFFER_SIZE = 512;
+    // Queued when idle, the writer turns it into a bare probe
+    private static final byte[] EMPTY_FRAME = new byte[0];
+    // Tag of the "relay" field (field 6, length delimited)
+    private static final int RELAY_FIELD_TAG = (6 << 3) | 2;
+
+    private final String relayName;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ArrayList<Session> sessions = new ArrayList<>();
+
+    private volatile ServerSocket serverSocket = null;
+    // Latest frame with our hop appended, sent to new clients
+    private volatile byte[] lastFrame = null;
+    // Its status answers pings
+    private volatile LocationProto.ServerResponse lastResponse = null;
+
+    public RelayServer(String relayName) {
+        this.relayName = relayName;
+    }
+
+    public void start() {
+        executor.execute(() -> {
+            ServerSocket socket;
+            try {
+                socket = new ServerSocket(PORT);
+                serverSocket = socket;
+                Log.i(TAG, "Relay listening on port " + PORT);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start relay", e);
+                return;
+            }
+
+            while (serverSocket == socket) {
+                try {
+                    Socket clientSocket = socket.accept();
+                    Session session = new Session(FrameChannel.of(clientSocket));
+                    synchronized (sessions) {
+                        if (sessions.size() >= MAX_CLIENTS) {
+                            Log.w(TAG, "Relay client limit reached, rejecting " + session.channel.getDescription());
+                            session.close();
+                            continue;
+                        }
+                        sessions.add(session);
+                        Metrics.set("client.relay.clients", sessions.size());
+                    }
+                    executor.execute(session);
+                } catch (IOException e) {
+                    if (serverSocket == socket) {
+                        Log.e(TAG, "Error accepting relay client", e);
+                    }
+                }
+            }
+        });
+    }
+
+    public void stop() {
+        ServerSocket socket = serverSocket;
+        serverSocket = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing relay socket", e);
+            }
+        }
+
+        ArrayList<Session> copy;
+        synchronized (sessions) {
+            copy = new ArrayList<>(sessions);
+        }
+        for (Session session : copy) {
+            session.close();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Pass a frame received from upstream on to our clients.
+     *
+     * @param frame        the frame exactly as received
+     * @param response     the parsed frame
+     * @param receiveNanos {@link SystemClock#elapsedRealtimeNanos()} when the frame was read
+     */
+    public void publish(byte[] frame, LocationProto.ServerResponse response, long receiveNanos) {
+        long addedMicros = (SystemClock.elapsedRealtimeNanos() - receiveNanos) / 1000;
+        byte[] hop = LocationProto.RelayHop.newBuilder()
+                .setRelay(relayName)
+                .setAddedLatencyMicros((int) Math.min(Integer.MAX_VALUE, addedMicros))
+                .build()
+                .toByteArray();
+
+        byte[] relayed = appendField(frame, hop);
+        lastFrame = relayed;
+        lastResponse = response;
+        Metrics.increment("client.relay.frames");
+        FlightRecorder.record(EVENT_RELAYED, response.getRelayCount() + 1, addedMicros);
+
+        ArrayList<Session> copy;
+        synchronized (sessions) {
+            copy = new ArrayList<>(sessions);
+        }
+        for (Session session : copy) {
+            session.send(relayed);
+        }
+    }
+
+    private static byte[] appendField(byte[] frame, byte[] value) {
+        byte[] length = varint(value.length);
+        byte[] result = new byte[frame.length + 1 + length.length + value.length];
+        System.arraycopy(frame, 0, result, 0, frame.length);
+        result[frame.length] = (byte) RELAY_FIELD_TAG;
+        System.arraycopy(length, 0, result, frame.length + 1, length.length);
+        System.arraycopy(value, 0, result, frame.length + 1 + length.length, value.length);
+        return result;
+    }
+
+    private static byte[] varint(int value) {
+        byte[] buffer = new byte[5];
+        int size = 0;
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+        byte[] result = new byte[size];
+        System.arraycopy(buffer, 0, result, 0, size);
+        return result;
+    }
+
+    private class Session implements Runnable, ClientSession.Listener, ConsumerWriter.Sink {
+        private final FrameChannel channel;
+        private final ClientSession session;
+        private final ConsumerWriter writer;
+
+        Session(FrameChannel channel) {
+            this.channel = channel;
+            this.session = new ClientSession(channel, SystemClock::elapsedRealtime, this);
+            this.writer = new ConsumerWriter(channel.getDescription(), WRITE_BUFFER_SIZE, STALL_TIMEOUT,
+                    "client.relay", this);
+            Log.i(TAG, "Relay client connected: " + channel.getDescription());
+        }
+
+        @Override
+        public void run() {
+            executor.execute(writer);
+            try {
+                byte[] frame = lastFrame;
+                if (frame != null) {
+                    send(frame);
+                }
+                // A client that stops reading stops answering probes too, or is caught by the
+                // next publish
+                if (session.run() == ClientSession.End.TIMED_OUT) {
+                    Log.w(TAG, "Relay client timed out: " + channel.getDescription());
+                }
+            } catch (IOException e) {
+                Log.i(TAG, "Relay client disconnected: " + channel.getDescription() + " - " + e.getMessage());
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Queue a frame for the writer thread, never blocks
+         */
+        void send(byte[] frame) {
+            writer.offer(frame, frame.length);
+        }
+
+        // ClientSession.Listener implementation, called on the session thread
+        @Override
+        public void onPing() {
+            LocationProto.ServerResponse response = lastResponse;
+            if (response != null) {
+                send(LocationProto.ServerResponse.newBuilder()
+                        .setStatus(response.getStatus())
+                        .build()
+                        .toByteArray());
+            }
+        }
+
+        @Override
+        public void onPong(long smoothedRtt) {
+        }
+
+        @Override
+        public void onUpdateInterval(int interval) {
+            // The rate is decided upstream
+        }
+
+        @Override
+        public void onRingMode() {
+            Log.w(TAG, "Relay client asked for the shared memory ring, not available here");
+        }
+
+        @Override
+        public void onSatelliteDetail(boolean enabled) {
+            // Satellite details are not relayed, a relay can't serve snapshots
+        }
+
+        @Override
+        public void onUnknownPacket(int packet) {
+            Log.w(TAG, "Unsupported packet from relay client: " + packet);
+        }
+
+        @Override
+        public void onIdle() {
+            // The writer turns it into a bare probe unless a frame is already pending
+            writer.offerIfIdle(EMPTY_FRAME, 0);
+        }
+
+        // ConsumerWriter.Sink implementation, called on the writer thread
+        @Override
+        public void write(byte[] frame, int length) throws IOException {
+            if (length > 0 || session.getLiveness().shouldProbe()) {
+                session.send(frame, length);
+            }
+        }
+
+        @Override
+        public void close() {
+            writer.close();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing relay client", e);
+            }
+            synchronized (sessions) {
+                if (sessions.remove(this)) {
+                    Metrics.set("client.relay.clients", sessions.size());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.client;
+
+import java.util.Arrays;
+
+import dezz.gnssshare.proto.LocationProto;
+
+/**
+ * Rebuilds the server's satellite snapshot from {@link LocationProto.SatelliteStatus} messages,
+ * the counterpart of the server's SatelliteStatusEncoder. See location.proto for the format.
+ * <p>
+ * Changes are applied only on top of the snapshot they were computed against. After a gap the
+ * decoder keeps its last state and the caller asks the server for a full snapshot.
+ */
+public class SatelliteStatusDecoder {
+    public static final int FLAG_USED_IN_FIX = 1;
+
+    /**
+     * Copy of the decoded state for the UI, sorted by key
+     */
+    public static final class Snapshot {
+        public final int count;
+        public final int[] keys;
+        public final int[] cn0;
+        public final int[] elevation;
+        public final int[] azimuth;
+        public final int[] flags;
+
+        Snapshot(int count, int[] keys, int[] cn0, int[] elevation, int[] azimuth, int[] flags) {
+            this.count = count;
+            this.keys = keys;
+            this.cn0 = cn0;
+            this.elevation = elevation;
+            this.azimuth = azimuth;
+            this.flags = flags;
+        }
+
+        public static int constellation(int key) {
+            return key >>> 9;
+        }
+
+        public static int svid(int key) {
+            return (key >>> 1) & 0xFF;
+        }
+
+        public static boolean isLowerBand(int key) {
+            return (key & 1) != 0;
+        }
+    }
+
+    private int[] keys = new int[0];
+    private int[] cn0 = new int[0];
+    private int[] elevation = new int[0];
+    private int[] azimuth = new int[0];
+    private int[] flags = new int[0];
+    private int count = 0;
+    private int sequence = 0;
+    // False until the first full snapshot
+    private boolean synced = false;
+    private boolean snapshotRequested = false;
+
+    /**
+     * @return false if the message doesn't apply to the current state and was dropped
+     */
+    public synchronized boolean apply(LocationProto.SatelliteStatus status) {
+        boolean full = status.getBaseSequence() == 0;
+        if (!full && (!synced || status.getBaseSequence() != sequence)) {
+            return false;
+        }
+        if (full) {
+            count = 0;
+            snapshotRequested = false;
+        }
+
+        int changed = status.getKeysCount();
+        int removed = status.getRemovedKeysCount();
+        int capacity = count + changed;
+        int[] newKeys = new int[capacity];
+        int[] newCn0 = new int[capacity];
+        int[] newElevation = new int[capacity];
+        int[] newAzimuth = new int[capacity];
+        int[] newFlags = new int[capacity];
+        int newCount = 0;
+
+        int oldIndex = 0;
+        int changeIndex = 0;
+        int removedIndex = 0;
+        int changeKey = changed > 0 ? status.getKeys(0) : Integer.MAX_VALUE;
+        int removedKey = removed > 0 ? status.getRemovedKeys(0) : Integer.MAX_VALUE;
+        while (oldIndex < count || changeIndex < changed) {
+            int oldKey = oldIndex < count ? keys[oldIndex] : Integer.MAX_VALUE;
+            if (changeIndex < changed && changeKey <= oldKey) {
+                // Changed or new signal, values are differences to the old ones or to zero
+                boolean known = changeKey == oldKey;
+                newKeys[newCount] = changeKey;
+                newCn0[newCount] = (known ? cn0[oldIndex] : 0) + status.getCn0(changeIndex);
+                newElevation[newCount] = (known ? elevation[oldIndex] : 0) + status.getElevation(changeIndex);
+                newAzimuth[newCount] = Math.floorMod((known ? azimuth[oldIndex] : 0) + status.getAzimuth(changeIndex), 360);
+                newFlags[newCount] = status.getFlags(changeIndex);
+                newCount++;
+                if (known) {
+                    oldIndex++;
+                }
+                changeIndex++;
+                if (changeIndex < changed) {
+                    changeKey += status.getKeys(changeIndex);
+                }
+                continue;
+            }
+
+            while (removedKey < oldKey) {
+                removedIndex++;
+                removedKey = removedIndex < removed ? removedKey + status.getRemovedKeys(removedIndex) : Integer.MAX_VALUE;
+            }
+            if (removedKey != oldKey) {
+                newKeys[newCount] = oldKey;
+                newCn0[newCount] = cn0[oldIndex];
+                newElevation[newCount] = elevation[oldIndex];
+                newAzimuth[newCount] = azimuth[oldIndex];
+                newFlags[newCount] = flags[oldIndex];
+                newCount++;
+            }
+            oldIndex++;
+        }
+
+        keys = newKeys;
+        cn0 = newCn0;
+        elevation = newElevation;
+        azimuth = newAzimuth;
+        flags = newFlags;
+        count = newCount;
+        sequence = status.getSequence();
+        synced = true;
+        return true;
+    }
+
+    /**
+     * @return true if a full snapshot should be requested after a dropped message, once until it
+     * arrives
+     */
+    public synchronized boolean shouldRequestSnapshot() {
+        if (snapshotRequested) {
+            return false;
+        }
+        snapshotRequested = true;
+        return true;
+    }
+
+    /**
+     * Forget the state, e.g. when connecting to a server again
+     */
+    public synchronized void reset() {
+        count = 0;
+        synced = false;
+        snapshotRequested = false;
+    }
+
+    public synchronized Snapshot getSnapshot() {
+        return new Snapshot(count, Arrays.copyOf(keys, count), Arrays.copyOf(cn0, count),
+                Arrays.copyOf(elevation, count), Arrays.copyOf(azimuth, count), Arrays.copyOf(flags, count));
+    }
+}
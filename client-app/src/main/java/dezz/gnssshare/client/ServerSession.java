@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.client;
+
+import android.content.Context;
+import android.net.Network;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.FrameChannel;
+
+/**
+ * Connection to one server: reconnects through its {@link ConnectionManager} and reads frames on
+ * the given executor while connected. The service keeps one session for the configured server and
+ * one for every backup server, and picks between their fixes with {@link FixSelector}.
+ */
+public class ServerSession implements ConnectionManager.ConnectionListener {
+    private static final String TAG = "ServerSession";
+
+    public interface Callback {
+        void onSessionStateChanged(ServerSession session, ConnectionManager.ConnectionState state);
+
+        void onSessionEstablished(ServerSession session);
+
+        void onSessionDisconnected(ServerSession session);
+
+        /**
+         * Called on the receive thread of the session for every frame except empty ones
+         */
+        void onSessionResponse(ServerSession session, byte[] frame, LocationProto.ServerResponse response,
+                               long receiveNanos);
+
+        /**
+         * Called on the receive thread for a frame with no content: a bare liveness probe, or the
+         * doorbell the server rings after writing a fix to its shared memory ring
+         */
+        void onSessionDoorbell(ServerSession session);
+    }
+
+    private final Callback callback;
+    private final Executor executor;
+    private final ConnectionManager connectionManager;
+    // Null for the configured server
+    private final String backupAddress;
+    // Satellite details are changes against the previous message of the same connection
+    private final SatelliteStatusDecoder satelliteStatusDecoder = new SatelliteStatusDecoder();
+
+    private volatile FrameChannel channel = null;
+    private volatile boolean receiving = false;
+
+    // Transit times, only the excess over the fastest fix of the session is meaningful
+    private long minTransit = Long.MAX_VALUE;
+    private long lastTransitTimestamp = 0;
+
+    /**
+     * @param backupAddress address of a backup server, or null for the configured server
+     */
+    public ServerSession(Context context, Callback callback, Executor executor, String backupAddress) {
+        this.callback = callback;
+        this.executor = executor;
+        this.backupAddress = backupAddress;
+        this.connectionManager = new ConnectionManager(context, this, backupAddress);
+    }
+
+    public String getBackupAddress() {
+        return backupAddress;
+    }
+
+    public ConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    public String getServerAddress() {
+        return connectionManager.getServerAddress();
+    }
+
+    @Override
+    public String toString() {
+        return getServerAddress();
+    }
+
+    public SatelliteStatusDecoder getSatelliteStatusDecoder() {
+        return satelliteStatusDecoder;
+    }
+
+    public ConnectionManager.ConnectionState getState() {
+        return connectionManager.getCurrentState();
+    }
+
+    public boolean isReceiving() {
+        return receiving;
+    }
+
+    public void connect() {
+        connectionManager.connect();
+    }
+
+    public void onNetworkAvailable(Network network) {
+        connectionManager.onNetworkAvailable(network);
+    }
+
+    public void onNetworkLost(Network network) {
+        connectionManager.onNetworkLost(network);
+    }
+
+    public void shutdown() {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * @return how much longer than the fastest fix of the session this fix took to arrive, or -1
+     * if the fix doesn't count: ping responses repeat the last fix, and restored fixes are old by design
+     */
+    public synchronized long getExcessTransit(LocationProto.LocationUpdate locationUpdate) {
+        if (locationUpdate.getStale() || locationUpdate.getTimestamp() <= lastTransitTimestamp) {
+            return -1;
+        }
+        lastTransitTimestamp = locationUpdate.getTimestamp();
+
+        // The clocks of the two devices differ, hence the minimum as the baseline
+        long transit = System.currentTimeMillis() - locationUpdate.getTimestamp();
+        if (transit < minTransit) {
+            minTransit = transit;
+        }
+        return transit - minTransit;
+    }
+
+    // ConnectionManager.ConnectionListener implementation
+    @Override
+    public void onConnectionStateChanged(ConnectionManager.ConnectionState state, String message, String serverAddress) {
+        callback.onSessionStateChanged(this, state);
+    }
+
+    @Override
+    public void onConnectionEstablished(FrameChannel channel, String serverAddress) {
+        if (receiving) {
+            return;
+        }
+        Log.i(TAG, "Connection to " + serverAddress + " established, receiving location updates");
+
+        this.channel = channel;
+        receiving = true;
+        synchronized (this) {
+            minTransit = Long.MAX_VALUE;
+            lastTransitTimestamp = 0;
+        }
+        satelliteStatusDecoder.reset();
+        callback.onSessionEstablished(this);
+
+        executor.execute(() -> receiveLoop(channel, serverAddress));
+    }
+
+    @Override
+    public void onDisconnected() {
+        channel = null;
+        if (!receiving) {
+            return;
+        }
+        receiving = false;
+        callback.onSessionDisconnected(this);
+    }
+
+    private void receiveLoop(FrameChannel channel, String serverAddress) {
+        while (receiving && this.channel == channel && !channel.isClosed()) {
+            try {
+                byte[] frame = channel.readFrame();
+                long receiveNanos = SystemClock.elapsedRealtimeNanos();
+                LocationProto.ServerResponse response = LocationProto.ServerResponse.parseFrom(frame);
+
+                connectionManager.onFrameReceived(response.getProbe());
+
+                if (!response.hasLocationUpdate() && !response.hasSatelliteStatus() &&
+                        (response.getProbe() || response.getStatus().isEmpty())) {
+                    callback.onSessionDoorbell(this);
+                    continue;
+                }
+
+                if (!connectionManager.isConnected()) {
+                    connectionManager.setState(ConnectionManager.ConnectionState.CONNECTED, "Received first server response", serverAddress);
+                }
+
+                callback.onSessionResponse(this, frame, response, receiveNanos);
+            } catch (IOException e) {
+                if (!channel.isClosed()) {
+                    Log.e(TAG, "Error receiving location update from " + serverAddress, e);
+                }
+                // Let ConnectionManager handle the reconnection
+                break;
+            }
+        }
+
+        if (this.channel == channel) {
+            connectionManager.disconnect("Connection lost - attempting to reconnect...");
+            connectionManager.scheduleReconnect();
+        }
+    }
+}
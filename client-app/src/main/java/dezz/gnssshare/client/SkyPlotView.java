@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.client;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.location.GnssStatus;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Sky plot of the satellites seen by the server: north up, the horizon on the outer ring and the
+ * zenith in the center. A satellite is colored by constellation, filled when it is used in the fix
+ * and sized by its signal strength. Of the two bands of a satellite only the stronger is drawn.
+ */
+public class SkyPlotView extends View {
+    // Signal strength drawn with the smallest and the largest dot, dB-Hz
+    private static final float MIN_CN0 = 10;
+    private static final float MAX_CN0 = 50;
+
+    private final Paint gridPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint satellitePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float density;
+
+    private int[] keys = new int[0];
+    private int[] cn0 = new int[0];
+    private int[] elevation = new int[0];
+    private int[] azimuth = new int[0];
+    private int[] flags = new int[0];
+
+    public SkyPlotView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        density = getResources().getDisplayMetrics().density;
+
+        gridPaint.setStyle(Paint.Style.STROKE);
+        gridPaint.setStrokeWidth(density);
+        gridPaint.setColor(context.getColor(R.color.text_secondary));
+
+        labelPaint.setColor(context.getColor(R.color.text_secondary));
+        labelPaint.setTextSize(12 * getResources().getDisplayMetrics().scaledDensity);
+        labelPaint.setTextAlign(Paint.Align.CENTER);
+
+        satellitePaint.setStrokeWidth(2 * density);
+    }
+
+    /**
+     * Arrays as in {@link SatelliteStatusDecoder.Snapshot}, sorted by key
+     */
+    public void setSatellites(int[] keys, int[] cn0, int[] elevation, int[] azimuth, int[] flags) {
+        this.keys = keys;
+        this.cn0 = cn0;
+        this.elevation = elevation;
+        this.azimuth = azimuth;
+        this.flags = flags;
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // Square, as wide as allowed
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        setMeasuredDimension(width, resolveSize(width, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float centerX = getWidth() / 2f;
+        float centerY = getHeight() / 2f;
+        float textSize = labelPaint.getTextSize();
+        float radius = Math.min(centerX, centerY) - textSize * 1.5f;
+        if (radius <= 0) {
+            return;
+        }
+
+        // Elevation 0, 30 and 60 degrees
+        for (int ring = 0; ring < 3; ring++) {
+            canvas.drawCircle(centerX, centerY, radius * (3 - ring) / 3, gridPaint);
+        }
+        canvas.drawLine(centerX - radius, centerY, centerX + radius, centerY, gridPaint);
+        canvas.drawLine(centerX, centerY - radius, centerX, centerY + radius, gridPaint);
+
+        float labelOffset = radius + textSize * 0.5f;
+        float baseline = textSize / 3;
+        canvas.drawText("N", centerX, centerY - labelOffset - baseline, labelPaint);
+        canvas.drawText("S", centerX, centerY + labelOffset + textSize - baseline, labelPaint);
+        canvas.drawText("E", centerX + labelOffset + textSize * 0.3f, centerY + baseline, labelPaint);
+        canvas.drawText("W", centerX - labelOffset - textSize * 0.3f, centerY + baseline, labelPaint);
+
+        for (int i = 0; i < keys.length; i++) {
+            // The other band of the same satellite has the neighboring key
+            if (i + 1 < keys.length && (keys[i + 1] >>> 1) == (keys[i] >>> 1) && cn0[i + 1] >= cn0[i]) {
+                continue;
+            }
+            if (i > 0 && (keys[i - 1] >>> 1) == (keys[i] >>> 1) && cn0[i - 1] > cn0[i]) {
+                continue;
+            }
+            if (elevation[i] < 0) {
+                continue;
+            }
+
+            double distance = radius * (90 - Math.min(elevation[i], 90)) / 90.0;
+            double angle = Math.toRadians(azimuth[i]);
+            float x = (float) (centerX + distance * Math.sin(angle));
+            float y = (float) (centerY - distance * Math.cos(angle));
+
+            float strength = Math.max(0, Math.min(1, (cn0[i] - MIN_CN0) / (MAX_CN0 - MIN_CN0)));
+            float dotRadius = (3 + 4 * strength) * density;
+
+            satellitePaint.setColor(constellationColor(SatelliteStatusDecoder.Snapshot.constellation(keys[i])));
+            boolean used = (flags[i] & SatelliteStatusDecoder.FLAG_USED_IN_FIX) != 0;
+            satellitePaint.setStyle(used ? Paint.Style.FILL : Paint.Style.STROKE);
+            canvas.drawCircle(x, y, dotRadius, satellitePaint);
+        }
+    }
+
+    private static int constellationColor(int constellation) {
+        return switch (constellation) {
+            case GnssStatus.CONSTELLATION_GPS -> Color.rgb(0x21, 0x96, 0xF3);
+            case GnssStatus.CONSTELLATION_GLONASS -> Color.rgb(0xF4, 0x43, 0x36);
+            case GnssStatus.CONSTELLATION_GALILEO -> Color.rgb(0x4C, 0xAF, 0x50);
+            case GnssStatus.CONSTELLATION_BEIDOU -> Color.rgb(0xFF, 0x98, 0x00);
+            case GnssStatus.CONSTELLATION_QZSS -> Color.rgb(0x9C, 0x27, 0xB0);
+            default -> Color.GRAY;
+        };
+    }
+}
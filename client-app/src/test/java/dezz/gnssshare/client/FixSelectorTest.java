@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+
+package dezz.gnssshare.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import dezz.gnssshare.proto.LocationProto;
+
+public class FixSelectorTest {
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    private long nowNanos = SECOND_NANOS;
+    private final FixSelector<String> selector = new FixSelector<>(() -> nowNanos);
+
+    private static LocationProto.LocationUpdate fix(long timestamp, float accuracy) {
+        return LocationProto.LocationUpdate.newBuilder()
+                .setTimestamp(timestamp)
+                .setAccuracy(accuracy)
+                .build();
+    }
+
+    @Test
+    public void stalledPrimaryAnsweringPingsIsReplaced() {
+        // Both servers deliver a fix every second, the primary is the more accurate one
+        for (int i = 0; i < 10; i++) {
+            long timestamp = 1000L * (i + 1);
+            assertTrue(selector.offer("primary", fix(timestamp, 3), 20));
+            assertFalse(selector.offer("backup", fix(timestamp, 10), 20));
+            nowNanos += SECOND_NANOS;
+        }
+        assertEquals("primary", selector.getPrimary());
+
+        // The primary stops getting fixes but keeps repeating the last one in ping replies
+        LocationProto.LocationUpdate last = fix(10_000, 3);
+        for (int i = 0; i < 3; i++) {
+            nowNanos += SECOND_NANOS / 2;
+            selector.offer("primary", last, 20);
+            nowNanos += SECOND_NANOS / 2;
+            if (selector.offer("backup", fix(11_000L + 1000L * i, 10), 20)) {
+                break;
+            }
+        }
+        assertEquals("backup", selector.getPrimary());
+        FixSelector.Stats stats = new FixSelector.Stats();
+        selector.getStats("primary", stats);
+        assertEquals(10, stats.fixes);
+        assertFalse(stats.primary);
+    }
+
+    @Test
+    public void repeatedFixDoesNotRefreshScore() {
+        assertTrue(selector.offer("primary", fix(1000, 3), 20));
+        nowNanos += SECOND_NANOS;
+        // Same timestamp with a different score, as a ping reply carrying the old fix would
+        selector.offer("primary", fix(1000, 50), 20);
+        FixSelector.Stats stats = new FixSelector.Stats();
+        selector.getStats("primary", stats);
+        assertEquals(1, stats.fixes);
+        assertEquals(3.15f, stats.score, 0.01f);
+    }
+
+    @Test
+    public void repeatedFixIsUsedOnlyFromPrimary() {
+        assertTrue(selector.offer("primary", fix(1000, 3), 20));
+        assertTrue(selector.offer("primary", fix(1000, 3), 20));
+        assertFalse(selector.offer("backup", fix(1000, 10), 20));
+        assertFalse(selector.offer("backup", fix(1000, 10), 20));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.client;
+
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import dezz.gnssshare.proto.LocationProto;
+
+/**
+ * NMEA sentences encoded per second, one fix being four sentences. Runs only with
+ * {@code ./gradlew :client-app:testDebugUnitTest -Pbenchmark}, the regular unit tests skip it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NmeaEncoderBenchmark {
+    private static final int SENTENCES_PER_FIX = 4;
+    // Fixes are varied so the encoder can't be specialized for one of them
+    private static final int FIXES = 64;
+
+    private final NmeaEncoder encoder = new NmeaEncoder();
+    private LocationProto.LocationUpdate[] fixes;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        fixes = new LocationProto.LocationUpdate[FIXES];
+        for (int i = 0; i < FIXES; i++) {
+            fixes[i] = LocationProto.LocationUpdate.newBuilder()
+                    .setLatitude(55.751244 + i * 1e-5)
+                    .setLongitude(37.618423 + i * 1e-5)
+                    .setAltitude(150.5 + i)
+                    .setAccuracy(3.5f + i * 0.1f)
+                    .setSpeed(i * 0.5f)
+                    .setBearing(i * 5.5f)
+                    .setTimestamp(1_760_000_000_000L + i * 1000L)
+                    .setStale(i % 16 == 0)
+                    .build();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SENTENCES_PER_FIX)
+    public int encode() {
+        LocationProto.LocationUpdate fix = fixes[next];
+        next = (next + 1) % FIXES;
+        return encoder.encode(fix, 12);
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        assumeTrue("Benchmarks run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+        new Runner(new OptionsBuilder().include(NmeaEncoderBenchmark.class.getName()).build()).run();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.headless;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.ClientSession;
+import dezz.gnssshare.shared.FrameChannel;
+
+/**
+ * Load generator for the headless server: opens many connections that behave like the client
+ * app on the wire, answering probes and asking for 10 Hz fixes, and reports how long fixes take
+ * from the source to the clients.
+ * <p>
+ * Latency is the receive time minus the fix time, so it is only meaningful against a server
+ * replaying a recorded log on the same machine, where fix times are moved to the moment of
+ * publishing. The first seconds are left out while connections are set up and code is compiled.
+ * <p>
+ * Usage: {@code LoadClient HOST CLIENTS SECONDS}, or the {@code loadTest} Gradle task.
+ */
+public class LoadClient {
+    private static final int PORT = 8887;
+    private static final long WARMUP = 5000;
+    private static final int REQUESTED_INTERVAL = 100;
+    private static final int READ_TIMEOUT = 2000;
+    // Per client, enough for 10 Hz over half an hour
+    private static final int MAX_SAMPLES = 20000;
+
+    private final String host;
+    private final long warmupEnd;
+    private final long end;
+
+    private final ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong fixes = new AtomicLong();
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private LoadClient(String host, long seconds) {
+        long now = System.currentTimeMillis();
+        this.host = host;
+        this.warmupEnd = now + WARMUP;
+        this.end = now + seconds * 1000;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length != 3) {
+            System.err.println("Usage: LoadClient HOST CLIENTS SECONDS");
+            System.exit(2);
+            return;
+        }
+        int clients = Integer.parseInt(args[1]);
+        LoadClient load = new LoadClient(args[0], Long.parseLong(args[2]));
+
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            threads.add(Thread.ofVirtual().name("load-" + i).start(load::runClient));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        load.report(clients);
+    }
+
+    private void runClient() {
+        long[] samples = new long[MAX_SAMPLES];
+        int count = 0;
+        try (Socket socket = new Socket(host, PORT)) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT);
+            FrameChannel channel = FrameChannel.of(socket);
+            connected.incrementAndGet();
+            channel.writePacket(ClientSession.UPDATE_INTERVAL_PACKET, REQUESTED_INTERVAL);
+
+            while (System.currentTimeMillis() < end) {
+                LocationProto.ServerResponse response = LocationProto.ServerResponse.parseFrom(channel.readFrame());
+                long now = System.currentTimeMillis();
+                frames.incrementAndGet();
+                if (response.getProbe()) {
+                    probes.incrementAndGet();
+                    channel.writePacket(ClientSession.PONG_PACKET);
+                }
+                if (response.hasLocationUpdate()) {
+                    fixes.incrementAndGet();
+                    if (now > warmupEnd && count < samples.length) {
+                        samples[count++] = now - response.getLocationUpdate().getTimestamp();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            System.err.println(Thread.currentThread().getName() + ": " + e);
+        }
+        latencies.add(Arrays.copyOf(samples, count));
+    }
+
+    private void report(int clients) {
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf(Locale.US, "clients %d, connected %d, errors %d%n", clients, connected.get(), errors.get());
+        System.out.printf(Locale.US, "frames %d, fixes %d, probes %d%n", frames.get(), fixes.get(), probes.get());
+        if (all.length > 0) {
+            System.out.printf(Locale.US, "fix latency ms: p50 %d, p99 %d, p99.9 %d, max %d%n",
+                    percentile(all, 0.5), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1]);
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.headless;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.ClientSession;
+import dezz.gnssshare.shared.FrameChannel;
+import dezz.gnssshare.shared.LivenessMonitor;
+import dezz.gnssshare.shared.Metrics;
+
+/**
+ * One client of the headless server. Packets, liveness and framing are handled by the same
+ * {@link ClientSession} as in GNSSServerService; this class only decides what to send.
+ * <p>
+ * The connection runs on two virtual threads: this one runs the session, the writer sends every
+ * new broadcast.
+ */
+class ClientConnection implements Runnable, ClientSession.Listener {
+    private static final Logger log = Logger.getLogger("ClientConnection");
+
+    // How long the writer waits for a broadcast before checking whether it was closed
+    private static final long BROADCAST_WAIT = 250;
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final int id = nextId.incrementAndGet();
+    private final HeadlessServer server;
+    private final FrameChannel channel;
+    private final ClientSession session;
+    private final String clientAddress;
+
+    private volatile boolean closed = false;
+    private volatile Thread writer;
+
+    ClientConnection(HeadlessServer server, Socket socket) {
+        this.server = server;
+        this.channel = FrameChannel.of(socket);
+        this.session = new ClientSession(channel, () -> System.nanoTime() / 1_000_000, this);
+        this.clientAddress = channel.getDescription();
+
+        log.info("New client connected: " + clientAddress + ", id " + id);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    String getClientAddress() {
+        return clientAddress;
+    }
+
+    @Override
+    public void run() {
+        try {
+            writer = Thread.ofVirtual().name("client-" + id + "-writer").start(this::writeBroadcasts);
+
+            ClientSession.End end = session.run();
+            if (end == ClientSession.End.CLOSED_BY_CLIENT) {
+                log.info("Client closed connection: " + clientAddress);
+            } else if (end == ClientSession.End.TIMED_OUT) {
+                LivenessMonitor liveness = session.getLiveness();
+                log.warning("Liveness timeout for client: " + clientAddress +
+                        " (timeout " + liveness.getTimeout() + "ms, RTT " + liveness.getSmoothedRtt() + "ms)");
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.info("Client disconnected: " + clientAddress + " - " + e.getMessage());
+            }
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Error in client handler for " + clientAddress, e);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void onPing() {
+        // Fixes are streamed on their own, the reply only has to prove the link is alive
+        sendStatus();
+    }
+
+    @Override
+    public void onPong(long smoothedRtt) {
+        log.finer("Pong received from client " + id + ", RTT " + smoothedRtt + "ms");
+    }
+
+    @Override
+    public void onUpdateInterval(int interval) {
+        // The source sets the rate, there is no receiver to reconfigure
+        log.fine("Client " + clientAddress + " requested update interval " + interval + "ms");
+    }
+
+    @Override
+    public void onRingMode() {
+        log.warning("Client " + clientAddress + " asked for the shared memory ring, not available here");
+    }
+
+    @Override
+    public void onSatelliteDetail(boolean enabled) {
+        // NMEA sources give no per-satellite data worth sending
+        log.fine("Client " + clientAddress + " asked for satellite details, not available here");
+    }
+
+    @Override
+    public void onUnknownPacket(int packet) {
+        log.warning("Unknown packet received from client: " + packet);
+    }
+
+    @Override
+    public void onIdle() {
+        sendStatus();
+    }
+
+    private void sendStatus() {
+        send(LocationProto.ServerResponse.newBuilder()
+                .setStatus(server.getLastResponse().getStatus())
+                .build()
+                .toByteArray());
+    }
+
+    private void writeBroadcasts() {
+        HeadlessServer.Broadcast last = server.getBroadcast();
+        send(server.getLastResponse().toByteArray());
+
+        try {
+            while (!closed) {
+                HeadlessServer.Broadcast broadcast = server.awaitBroadcast(last, BROADCAST_WAIT);
+                if (broadcast == null) {
+                    continue;
+                }
+                if (broadcast.sequence > last.sequence + 1) {
+                    Metrics.add("server.skipped_fixes", broadcast.sequence - last.sequence - 1);
+                }
+                last = broadcast;
+                send(broadcast.data);
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void send(byte[] data) {
+        if (closed) {
+            return;
+        }
+        try {
+            Metrics.add("server.bytes_sent", session.send(data));
+        } catch (IOException e) {
+            log.warning("Error sending location update to client " + clientAddress + " - " + e.getMessage());
+            close();
+        }
+    }
+
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Error closing client connection", e);
+        }
+        if (writer != null) {
+            writer.interrupt();
+        }
+        server.onClientDisconnected(this);
+    }
+}
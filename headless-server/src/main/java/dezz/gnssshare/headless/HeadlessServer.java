@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.headless;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.Metrics;
+import dezz.gnssshare.shared.ServerStatus;
+
+/**
+ * Standalone server for Linux boxes, serving fixes from an NMEA source to unmodified clients.
+ * <p>
+ * It speaks exactly the protocol of GNSSServerService on the same port, so clients can't tell
+ * the two apart. Every client connection is served by blocking code on virtual threads, which
+ * keeps the protocol code as simple as in the app while hundreds of clients cost only a few
+ * platform threads. Locks held while waiting or writing to a socket are {@link ReentrantLock}s,
+ * since a virtual thread blocked inside a monitor pins its carrier thread in Java 21.
+ * <p>
+ * Fixes are serialized once and handed to the clients' writers through a chain of
+ * {@link Broadcast}s: each one opens a latch when the next is published, which wakes all writers
+ * at once instead of making them take a lock one after another.
+ * <p>
+ * Usage: {@code gnss-server-headless [--port N] [--max-clients N] [--verbose] SOURCE}, where
+ * SOURCE is {@code gpsd://host[:port]}, {@code tcp://host:port} for a raw NMEA stream, a serial
+ * device or a recorded log, see {@link NmeaSource}.
+ */
+public class HeadlessServer {
+    static {
+        // One line per record like logcat: time, level letter, logger and message. Must be set
+        // before the first logger is created.
+        System.setProperty("java.util.logging.SimpleFormatter.format",
+                "%1$tF %1$tT.%1$tL %4$.1s/%3$s: %5$s%6$s%n");
+    }
+
+    private static final Logger log = Logger.getLogger("HeadlessServer");
+    private static final int PORT = 8887;
+    // Far above what a phone can serve, a Linux box is limited by bandwidth only
+    private static final int DEFAULT_MAX_CLIENTS = 1024;
+    // Without fixes for this long the source is considered lost
+    private static final long SOURCE_TIMEOUT = 10000;
+
+    /**
+     * A serialized response for all clients. Each client's writer sends the latest one it hasn't
+     * sent yet, so a slow client skips fixes instead of delaying the others.
+     */
+    static final class Broadcast {
+        final long sequence;
+        final byte[] data;
+        // Opened when the next broadcast is published
+        private final CountDownLatch superseded = new CountDownLatch(1);
+
+        Broadcast(long sequence, byte[] data) {
+            this.sequence = sequence;
+            this.data = data;
+        }
+    }
+
+    private final int port;
+    private final int maxClients;
+    private final Set<ClientConnection> clients = ConcurrentHashMap.newKeySet();
+
+    // Written by the source thread only
+    private volatile Broadcast broadcast = new Broadcast(0, null);
+
+    // Sent to new clients and in reply to pings
+    private volatile LocationProto.ServerResponse lastResponse = LocationProto.ServerResponse.newBuilder()
+            .setStatus(ServerStatus.AWAITING_LOCATION.name())
+            .build();
+    private volatile long lastFixTime = 0;
+
+    public HeadlessServer(int port, int maxClients) {
+        this.port = port;
+        this.maxClients = maxClients;
+    }
+
+    public static void main(String[] args) {
+        int port = PORT;
+        int maxClients = DEFAULT_MAX_CLIENTS;
+        String source = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--max-clients" -> maxClients = Integer.parseInt(args[++i]);
+                    case "--verbose" -> setLogLevel(Level.FINE);
+                    default -> {
+                        if (args[i].startsWith("--") || source != null) {
+                            throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                        }
+                        source = args[i];
+                    }
+                }
+            }
+            if (source == null) {
+                throw new IllegalArgumentException("No source given");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: gnss-server-headless [--port N] [--max-clients N] [--verbose] SOURCE");
+            System.err.println("SOURCE: gpsd://host[:port], tcp://host:port, serial device or NMEA/UBX log file");
+            System.exit(2);
+            return;
+        }
+
+        HeadlessServer server = new HeadlessServer(port, maxClients);
+        NmeaSource nmeaSource = new NmeaSource(source, server::publish);
+        Thread.ofPlatform().name("source").daemon(true).start(nmeaSource);
+        Thread.ofPlatform().name("watchdog").daemon(true).start(server::watchSource);
+        try {
+            server.serve();
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Server failed", e);
+            System.exit(1);
+        }
+    }
+
+    private static void setLogLevel(Level level) {
+        Logger root = Logger.getLogger("");
+        root.setLevel(level);
+        for (Handler handler : root.getHandlers()) {
+            handler.setLevel(level);
+        }
+    }
+
+    /**
+     * Accept clients until the process ends
+     */
+    public void serve() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(port), 256);
+            log.info("Server started on port " + port + ", up to " + maxClients + " clients");
+
+            while (true) {
+                Socket socket = serverSocket.accept();
+                if (clients.size() >= maxClients) {
+                    log.warning("Client limit reached, rejecting " + socket.getRemoteSocketAddress());
+                    Metrics.increment("server.admission.rejected_full");
+                    socket.close();
+                    continue;
+                }
+
+                socket.setTcpNoDelay(true);
+                ClientConnection client = new ClientConnection(this, socket);
+                clients.add(client);
+                Metrics.set("server.clients", clients.size());
+                Thread.ofVirtual().name("client-" + client.getId()).start(client);
+            }
+        }
+    }
+
+    /**
+     * Send a fix to all clients. Called on the source thread.
+     */
+    void publish(LocationProto.LocationUpdate update, int satellites) {
+        LocationProto.ServerResponse response = LocationProto.ServerResponse.newBuilder()
+                .setStatus(ServerStatus.TRANSMITTING_LOCATION.name())
+                .setSatellites(satellites)
+                .setLocationUpdate(update)
+                .build();
+        lastResponse = response;
+        lastFixTime = System.currentTimeMillis();
+        // Serialized once for all clients
+        byte[] data = response.toByteArray();
+
+        Broadcast previous = broadcast;
+        broadcast = new Broadcast(previous.sequence + 1, data);
+        previous.superseded.countDown();
+        Metrics.increment("server.fixes");
+    }
+
+    Broadcast getBroadcast() {
+        return broadcast;
+    }
+
+    /**
+     * @return the latest broadcast once there is one newer than {@code last}, or null if none came
+     * within the timeout
+     */
+    Broadcast awaitBroadcast(Broadcast last, long timeoutMillis) throws InterruptedException {
+        if (!last.superseded.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        return broadcast;
+    }
+
+    LocationProto.ServerResponse getLastResponse() {
+        return lastResponse;
+    }
+
+    void onClientDisconnected(ClientConnection client) {
+        if (clients.remove(client)) {
+            Metrics.set("server.clients", clients.size());
+            log.fine("Client removed: " + client.getClientAddress() + ". Remaining clients: " + clients.size());
+        }
+    }
+
+    /**
+     * Fall back to "awaiting location" when the source goes quiet, so clients stop showing the
+     * last fix as current
+     */
+    private void watchSource() {
+        while (true) {
+            try {
+                Thread.sleep(SOURCE_TIMEOUT / 2);
+            } catch (InterruptedException e) {
+                return;
+            }
+            LocationProto.ServerResponse response = lastResponse;
+            if (response.hasLocationUpdate() && System.currentTimeMillis() - lastFixTime > SOURCE_TIMEOUT) {
+                log.warning("No fixes from the source for " + SOURCE_TIMEOUT / 1000 + "s");
+                lastResponse = LocationProto.ServerResponse.newBuilder()
+                        .setStatus(ServerStatus.AWAITING_LOCATION.name())
+                        .build();
+            }
+        }
+    }
+}
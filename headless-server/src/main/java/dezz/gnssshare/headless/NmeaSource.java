@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.headless;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.server.GnssStreamParser;
+
+/**
+ * Reads fixes from an NMEA (or UBX) stream with the server app's {@link GnssStreamParser}.
+ * <p>
+ * Sources:
+ * <ul>
+ * <li>{@code gpsd://host[:port]} - gpsd, asked to relay the receiver's NMEA sentences</li>
+ * <li>{@code tcp://host:port} - a raw NMEA stream, e.g. ser2net or a networked receiver</li>
+ * <li>anything else is a path: a serial device, pty or FIFO is read as it is, a regular file is
+ * a recorded log, replayed in a loop at its recorded pace with fix times moved to the present</li>
+ * </ul>
+ * Broken connections are retried forever.
+ */
+class NmeaSource implements Runnable {
+    private static final Logger log = Logger.getLogger("NmeaSource");
+
+    private static final String PROVIDER = "external";
+    private static final int GPSD_DEFAULT_PORT = 2947;
+    private static final String GPSD_WATCH = "?WATCH={\"enable\":true,\"nmea\":true}\n";
+    private static final int CONNECT_TIMEOUT = 5000;
+    // A silent stream is reconnected, the receiver may have been replugged behind it
+    private static final int READ_TIMEOUT = 10000;
+    private static final long RETRY_DELAY = 2000;
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    interface Listener {
+        void onFix(LocationProto.LocationUpdate update, int satellites);
+    }
+
+    private final String source;
+    private final Listener listener;
+    private final GnssStreamParser parser = new GnssStreamParser(this::onFix);
+
+    // Replay of a recorded log: offset moving fix times to the present
+    private boolean replay = false;
+    private long replayOffset = 0;
+
+    NmeaSource(String source, Listener listener) {
+        this.source = source;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        log.info("Reading fixes from " + source);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (source.startsWith("gpsd://")) {
+                    readSocket(source.substring("gpsd://".length()), GPSD_DEFAULT_PORT, true);
+                } else if (source.startsWith("tcp://")) {
+                    readSocket(source.substring("tcp://".length()), -1, false);
+                } else {
+                    readFile();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warning("Reading " + source + " failed: " + e.getMessage());
+            }
+
+            try {
+                Thread.sleep(RETRY_DELAY);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void readSocket(String address, int defaultPort, boolean gpsd) throws IOException {
+        int colon = address.lastIndexOf(':');
+        String host = colon < 0 ? address : address.substring(0, colon);
+        int port = colon < 0 ? defaultPort : Integer.parseInt(address.substring(colon + 1));
+        if (port < 0) {
+            throw new IllegalArgumentException("No port in " + source);
+        }
+
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            socket.setSoTimeout(READ_TIMEOUT);
+            log.info("Connected to " + host + ":" + port);
+            if (gpsd) {
+                // gpsd's own JSON reports come along, the parser skips them as garbage
+                socket.getOutputStream().write(GPSD_WATCH.getBytes(StandardCharsets.US_ASCII));
+            }
+            replay = false;
+            read(socket.getInputStream());
+        }
+    }
+
+    private void readFile() throws IOException {
+        File file = new File(source);
+        replay = file.isFile();
+        do {
+            replayOffset = 0;
+            try (InputStream input = new FileInputStream(file)) {
+                read(input);
+            }
+            if (replay) {
+                log.fine("End of log, starting over");
+            }
+        } while (replay && !Thread.currentThread().isInterrupted());
+    }
+
+    private void read(InputStream input) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int count;
+        while ((count = input.read(buffer)) >= 0) {
+            parser.feed(buffer, 0, count);
+        }
+        if (!replay) {
+            throw new IOException("End of stream");
+        }
+    }
+
+    private void onFix(GnssStreamParser.Fix fix) {
+        long time = fix.time;
+        long now = System.currentTimeMillis();
+        if (replay) {
+            if (replayOffset == 0) {
+                replayOffset = now - time;
+            }
+            time += replayOffset;
+            if (time > now) {
+                try {
+                    Thread.sleep(time - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                now = time;
+            }
+        }
+
+        LocationProto.LocationUpdate.Builder builder = LocationProto.LocationUpdate.newBuilder()
+                .setTimestamp(time)
+                .setLatitude(fix.latitude)
+                .setLongitude(fix.longitude)
+                .setProvider(PROVIDER)
+                .setLocationAge(Math.max(0, now - time) / 1000.0f);
+        if (fix.hasAltitude) {
+            builder.setAltitude(fix.altitude);
+        }
+        if (fix.accuracy > 0) {
+            builder.setAccuracy(fix.accuracy);
+        }
+        if (fix.hasBearing) {
+            builder.setBearing(fix.bearing);
+        }
+        if (fix.hasSpeed) {
+            builder.setSpeed(fix.speed);
+        }
+
+        listener.onFix(builder.build(), fix.satellites);
+    }
+}
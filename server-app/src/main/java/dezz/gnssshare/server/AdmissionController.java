@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.os.SystemClock;
+
+/**
+ * Token bucket limiting how fast new connections are accepted.
+ * <p>
+ * When the hotspot comes back, every client reconnects at once and keeps retrying; the bucket
+ * lets a burst through and then spreads the rest out, so handler threads and the location
+ * request aren't churned by connections that will be dropped anyway.
+ */
+public class AdmissionController {
+    private final double tokensPerSecond;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefillTime = SystemClock.elapsedRealtime();
+
+    public AdmissionController(double tokensPerSecond, int burst) {
+        this.tokensPerSecond = tokensPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    public synchronized boolean tryAcquire() {
+        long now = SystemClock.elapsedRealtime();
+        tokens = Math.min(burst, tokens + (now - lastRefillTime) * tokensPerSecond / 1000.0);
+        lastRefillTime = now;
+
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.server;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.hardware.usb.UsbManager;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Location source reading an external GNSS receiver that outputs NMEA or UBX.
+ * <p>
+ * The receiver is either a USB CDC-ACM device (u-blox and most other receivers with a native USB
+ * port), opened through the USB host API, or a file: a serial device node or pty on rooted or
+ * custom devices, or a recorded log. A log is replayed at its recorded pace with the fix times
+ * moved to the present, which makes it usable for testing without hardware. Fixes are delivered
+ * on the main thread.
+ */
+public class ExternalReceiver {
+    private static final String TAG = "ExternalReceiver";
+
+    public static final String PROVIDER = "external";
+
+    private static final String ACTION_USB_PERMISSION = "dezz.gnssshare.server.USB_PERMISSION";
+    private static final long RETRY_DELAY = 2000;
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int USB_READ_TIMEOUT = 1000;
+    private static final int USB_CONTROL_TIMEOUT = 1000;
+    // CDC class requests
+    private static final int CDC_REQUEST_TYPE = UsbConstants.USB_TYPE_CLASS | 0x01;
+    private static final int CDC_SET_LINE_CODING = 0x20;
+    private static final int CDC_SET_CONTROL_LINE_STATE = 0x22;
+    private static final int BAUD_RATE = 115200;
+
+    public interface Listener {
+        void onLocation(Location location, int satellites);
+    }
+
+    private final Context context;
+    private final String path;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile boolean running = false;
+    private Thread thread = null;
+    private volatile InputStream input = null;
+    private volatile UsbDeviceConnection usbConnection = null;
+
+    // Replay of a recorded log: offset moving fix times to the present
+    private boolean replay = false;
+    private long replayOffset = 0;
+    private boolean permissionRequested = false;
+
+    /**
+     * @param path device node or log file to read, or empty to use a USB receiver
+     */
+    public ExternalReceiver(Context context, String path, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.path = path;
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, TAG);
+        thread.start();
+    }
+
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // Closing unblocks the reader
+        closeQuietly();
+        thread.interrupt();
+        thread = null;
+    }
+
+    private void run() {
+        Log.i(TAG, "Started, source " + (path.isEmpty() ? "USB" : path));
+        GnssStreamParser parser = new GnssStreamParser(this::onFix);
+        while (running) {
+            try {
+                boolean finished = path.isEmpty() ? readUsb(parser) : readFile(parser);
+                if (finished) {
+                    break;
+                }
+            } catch (IOException e) {
+                if (running) {
+                    Log.w(TAG, "Read failed, retrying", e);
+                }
+            } finally {
+                closeQuietly();
+            }
+
+            try {
+                Thread.sleep(RETRY_DELAY);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        Log.i(TAG, "Stopped");
+    }
+
+    /**
+     * @return true if a recorded log has been read to the end
+     */
+    private boolean readFile(GnssStreamParser parser) throws IOException {
+        File file = new File(path);
+        replay = file.isFile();
+        replayOffset = 0;
+        input = new FileInputStream(file);
+
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int count;
+        while (running && (count = input.read(buffer)) >= 0) {
+            parser.feed(buffer, 0, count);
+        }
+
+        if (replay && running) {
+            Log.i(TAG, "End of log " + path);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read the first CDC-ACM device attached. Returns when the device is gone, or right away if
+     * there is none or the user hasn't granted access to it yet.
+     */
+    private boolean readUsb(GnssStreamParser parser) {
+        replay = false;
+        UsbManager usbManager = context.getSystemService(UsbManager.class);
+        for (UsbDevice device : usbManager.getDeviceList().values()) {
+            UsbInterface dataInterface = null;
+            UsbInterface controlInterface = null;
+            UsbEndpoint endpoint = null;
+            for (int i = 0; i < device.getInterfaceCount(); i++) {
+                UsbInterface usbInterface = device.getInterface(i);
+                if (usbInterface.getInterfaceClass() == UsbConstants.USB_CLASS_COMM) {
+                    controlInterface = usbInterface;
+                } else if (usbInterface.getInterfaceClass() == UsbConstants.USB_CLASS_CDC_DATA && endpoint == null) {
+                    endpoint = findBulkInEndpoint(usbInterface);
+                    dataInterface = usbInterface;
+                }
+            }
+            if (endpoint == null) {
+                continue;
+            }
+
+            if (!usbManager.hasPermission(device)) {
+                if (!permissionRequested) {
+                    Log.i(TAG, "Requesting access to " + device.getDeviceName());
+                    permissionRequested = true;
+                    Intent intent = new Intent(ACTION_USB_PERMISSION).setPackage(context.getPackageName());
+                    usbManager.requestPermission(device, PendingIntent.getBroadcast(context, 0, intent,
+                            PendingIntent.FLAG_MUTABLE));
+                }
+                return false;
+            }
+
+            UsbDeviceConnection connection = usbManager.openDevice(device);
+            if (connection == null || !connection.claimInterface(dataInterface, true)) {
+                Log.w(TAG, "Cannot open " + device.getDeviceName());
+                if (connection != null) {
+                    connection.close();
+                }
+                return false;
+            }
+            usbConnection = connection;
+            if (controlInterface != null) {
+                configureLine(connection, controlInterface.getId());
+            }
+
+            Log.i(TAG, "Reading " + device.getProductName() + " at " + device.getDeviceName());
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            while (running) {
+                int count = connection.bulkTransfer(endpoint, buffer, buffer.length, USB_READ_TIMEOUT);
+                if (count > 0) {
+                    parser.feed(buffer, 0, count);
+                } else if (count < 0 && !usbManager.getDeviceList().containsKey(device.getDeviceName())) {
+                    // Timeouts are failures too, only a detached device ends reading
+                    Log.i(TAG, "Device detached: " + device.getDeviceName());
+                    break;
+                }
+            }
+            return false;
+        }
+        return false;
+    }
+
+    private static UsbEndpoint findBulkInEndpoint(UsbInterface usbInterface) {
+        for (int i = 0; i < usbInterface.getEndpointCount(); i++) {
+            UsbEndpoint endpoint = usbInterface.getEndpoint(i);
+            if (endpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK && endpoint.getDirection() == UsbConstants.USB_DIR_IN) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 115200 8N1 with DTR and RTS set. Receivers with native USB ignore the baud rate, but some
+     * only start sending once DTR is set.
+     */
+    private static void configureLine(UsbDeviceConnection connection, int controlInterfaceId) {
+        byte[] lineCoding = {
+                (byte) BAUD_RATE, (byte) (BAUD_RATE >> 8), (byte) (BAUD_RATE >> 16), (byte) (BAUD_RATE >> 24),
+                0, // 1 stop bit
+                0, // No parity
+                8, // Data bits
+        };
+        if (connection.controlTransfer(CDC_REQUEST_TYPE, CDC_SET_LINE_CODING, 0, controlInterfaceId,
+                lineCoding, lineCoding.length, USB_CONTROL_TIMEOUT) < 0) {
+            Log.w(TAG, "Failed to set line coding");
+        }
+        if (connection.controlTransfer(CDC_REQUEST_TYPE, CDC_SET_CONTROL_LINE_STATE, 0x03, controlInterfaceId,
+                null, 0, USB_CONTROL_TIMEOUT) < 0) {
+            Log.w(TAG, "Failed to set control line state");
+        }
+    }
+
+    private void onFix(GnssStreamParser.Fix fix) {
+        long time = fix.time;
+        if (replay) {
+            long now = System.currentTimeMillis();
+            if (replayOffset == 0) {
+                replayOffset = now - time;
+            }
+            time += replayOffset;
+            if (time > now) {
+                SystemClock.sleep(time - now);
+            }
+        }
+
+        Location location = new Location(PROVIDER);
+        location.setTime(time);
+        location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+        location.setLatitude(fix.latitude);
+        location.setLongitude(fix.longitude);
+        if (fix.hasAltitude) {
+            location.setAltitude(fix.altitude);
+        }
+        if (fix.accuracy > 0) {
+            location.setAccuracy(fix.accuracy);
+        }
+        if (fix.hasSpeed) {
+            location.setSpeed(fix.speed);
+        }
+        if (fix.hasBearing) {
+            location.setBearing(fix.bearing);
+        }
+
+        int satellites = fix.satellites;
+        mainHandler.post(() -> {
+            if (running) {
+                listener.onLocation(location, satellites);
+            }
+        });
+    }
+
+    private void closeQuietly() {
+        InputStream input = this.input;
+        this.input = null;
+        if (input != null) {
+            try {
+                input.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close " + path, e);
+            }
+        }
+
+        UsbDeviceConnection connection = usbConnection;
+        usbConnection = null;
+        if (connection != null) {
+            connection.close();
+        }
+    }
+}
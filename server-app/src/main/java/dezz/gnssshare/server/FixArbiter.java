@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import dezz.gnssshare.shared.FlightRecorder;
+import dezz.gnssshare.shared.Metrics;
+
+/**
+ * Picks the best current estimate among fixes coming from several location providers at once.
+ * <p>
+ * Every fix gets an error score: its reported accuracy, plus the distance the car could have
+ * covered since the fix was taken, plus a fixed penalty for network fixes, whose accuracy estimate
+ * tends to be optimistic. A new fix is forwarded only if it scores no worse than the previously
+ * forwarded fix aged to the current moment. Once GPS has delivered several accurate fixes in a
+ * row, the other providers are no longer needed and {@link #isGpsSettled()} turns true.
+ */
+public class FixArbiter {
+    private static final String TAG = "FixArbiter";
+
+    // How fast the error of an old fix grows, m/s
+    private static final float AGING_SPEED = 15;
+    private static final float NETWORK_PENALTY = 10;
+    private static final float ACCURATE_FIX_THRESHOLD = 20;
+    private static final int SETTLED_FIX_COUNT = 3;
+
+    private static final FlightRecorder.Event EVENT_FIX_IGNORED = FlightRecorder.define(Log.VERBOSE, TAG,
+            "Fix ignored, score %.1f, current best %.1f");
+
+    private static class ProviderStats {
+        long timeToFirstFix = -1;
+        long timeToAccurateFix = -1;
+    }
+
+    private final long startNanos = SystemClock.elapsedRealtimeNanos();
+    private final Map<String, ProviderStats> providerStats = new HashMap<>();
+
+    private Location bestFix = null;
+    private int consecutiveAccurateGpsFixes = 0;
+
+    /**
+     * @return the fix to forward to clients, or null if the current best estimate is still better
+     */
+    public synchronized Location offer(Location fix) {
+        String provider = fix.getProvider() == null ? "unknown" : fix.getProvider();
+        updateStats(provider, fix);
+
+        long nowNanos = SystemClock.elapsedRealtimeNanos();
+        if (bestFix != null) {
+            float score = score(fix, nowNanos);
+            float bestScore = score(bestFix, nowNanos);
+            if (score > bestScore) {
+                FlightRecorder.record(EVENT_FIX_IGNORED, score, bestScore);
+                return null;
+            }
+        }
+
+        bestFix = fix;
+        return fix;
+    }
+
+    public synchronized boolean isGpsSettled() {
+        return consecutiveAccurateGpsFixes >= SETTLED_FIX_COUNT;
+    }
+
+    private void updateStats(String provider, Location fix) {
+        ProviderStats stats = providerStats.get(provider);
+        if (stats == null) {
+            stats = new ProviderStats();
+            providerStats.put(provider, stats);
+        }
+
+        long elapsedMillis = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1_000_000;
+        boolean accurate = fix.hasAccuracy() && fix.getAccuracy() <= ACCURATE_FIX_THRESHOLD;
+
+        if (stats.timeToFirstFix < 0) {
+            stats.timeToFirstFix = elapsedMillis;
+            Log.i(TAG, "Time to first fix for " + provider + ": " + elapsedMillis + "ms");
+            Metrics.set("server.arbiter.ttff_ms." + provider, elapsedMillis);
+        }
+        if (accurate && stats.timeToAccurateFix < 0) {
+            stats.timeToAccurateFix = elapsedMillis;
+            Log.i(TAG, "Time to accurate fix for " + provider + ": " + elapsedMillis + "ms");
+            Metrics.set("server.arbiter.accurate_fix_ms." + provider, elapsedMillis);
+        }
+
+        if (LocationManager.GPS_PROVIDER.equals(provider)) {
+            consecutiveAccurateGpsFixes = accurate ? consecutiveAccurateGpsFixes + 1 : 0;
+        }
+    }
+
+    private static float score(Location fix, long nowNanos) {
+        float accuracy = fix.hasAccuracy() ? fix.getAccuracy() : 100;
+        float ageSeconds = Math.max(0, (nowNanos - fix.getElapsedRealtimeNanos()) / 1e9f);
+        float penalty = LocationManager.NETWORK_PROVIDER.equals(fix.getProvider()) ? NETWORK_PENALTY : 0;
+        return accuracy + ageSeconds * AGING_SPEED + penalty;
+    }
+
+    /**
+     * Human-readable per-provider TTFF summary, e.g. "gps 12.3s/15.0s, network 0.8s/-"
+     */
+    public synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, ProviderStats> entry : providerStats.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            ProviderStats stats = entry.getValue();
+            sb.append(entry.getKey()).append(' ')
+                    .append(formatMillis(stats.timeToFirstFix)).append('/')
+                    .append(formatMillis(stats.timeToAccurateFix));
+        }
+        return sb.toString();
+    }
+
+    private static String formatMillis(long millis) {
+        return millis < 0 ? "-" : (millis / 100) / 10.0 + "s";
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.location.Location;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fills in speed and bearing for providers that don't report them, such as the network provider,
+ * from the displacement since the previous fix of the same provider.
+ * <p>
+ * Values are derived only when the displacement is larger than the fixes' accuracy, otherwise
+ * the result would be noise.
+ */
+public class FixEnricher implements FixStage {
+    // Providers alternate while fixes are arbitrated, each one is compared to its own history
+    private final Map<String, Location> previousByProvider = new HashMap<>();
+
+    @Override
+    public synchronized boolean process(FixPipeline.Fix fix) {
+        Location location = fix.location;
+        if (location.getProvider() == null) {
+            return true;
+        }
+        Location previous = previousByProvider.put(location.getProvider(), location);
+
+        if ((location.hasSpeed() && location.hasBearing()) || previous == null) {
+            return true;
+        }
+
+        float seconds = (location.getElapsedRealtimeNanos() - previous.getElapsedRealtimeNanos()) / 1e9f;
+        if (seconds <= 0) {
+            return true;
+        }
+
+        float distance = previous.distanceTo(location);
+        float noise = Math.max(location.hasAccuracy() ? location.getAccuracy() : 0,
+                previous.hasAccuracy() ? previous.getAccuracy() : 0);
+        if (distance <= noise) {
+            return true;
+        }
+
+        // Don't modify the location other stages may still hold
+        Location enriched = new Location(location);
+        if (!enriched.hasSpeed()) {
+            enriched.setSpeed(distance / seconds);
+        }
+        if (!enriched.hasBearing()) {
+            enriched.setBearing(previous.bearingTo(location));
+        }
+        fix.location = enriched;
+        return true;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.location.Location;
+import android.util.Log;
+
+import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered chain of named {@link FixStage}s every fix goes through on its way to the clients.
+ * <p>
+ * The chain is built from a list of stage names, so stages can be reordered or left out without
+ * changing the code that feeds fixes in. For every stage the total time spent in it, the number of
+ * fixes it processed and the number of fixes it stopped are published as
+ * {@code server.pipeline.<stage>.nanos}, {@code .count} and {@code .stopped} metrics.
+ */
+public class FixPipeline {
+    private static final String TAG = "FixPipeline";
+
+    /**
+     * A fix travelling through the pipeline. Stages may replace the location and fill in the
+     * response once it has been encoded.
+     */
+    public static class Fix {
+        public Location location;
+        // Fixes delivered together by GNSS batching, oldest first, the last one is also location
+        public List<Location> batch = null;
+        public LocationProto.ServerResponse response = null;
+
+        Fix(Location location) {
+            this.location = location;
+        }
+    }
+
+    private final String[] names;
+    private final FixStage[] stages;
+    // Metric names are built once so the fix path doesn't concatenate strings
+    private final String[] nanosMetrics;
+    private final String[] countMetrics;
+    private final String[] stoppedMetrics;
+
+    public FixPipeline(List<String> stageNames, Map<String, FixStage> availableStages) {
+        List<String> names = new ArrayList<>();
+        List<FixStage> stages = new ArrayList<>();
+        for (String name : stageNames) {
+            FixStage stage = availableStages.get(name);
+            if (stage == null) {
+                Log.w(TAG, "Unknown stage ignored: " + name);
+                continue;
+            }
+            names.add(name);
+            stages.add(stage);
+        }
+
+        this.names = names.toArray(new String[0]);
+        this.stages = stages.toArray(new FixStage[0]);
+        this.nanosMetrics = new String[this.names.length];
+        this.countMetrics = new String[this.names.length];
+        this.stoppedMetrics = new String[this.names.length];
+        for (int i = 0; i < this.names.length; i++) {
+            String prefix = "server.pipeline." + this.names[i];
+            nanosMetrics[i] = prefix + ".nanos";
+            countMetrics[i] = prefix + ".count";
+            stoppedMetrics[i] = prefix + ".stopped";
+        }
+
+        Log.i(TAG, "Stages: " + String.join(" -> ", this.names));
+    }
+
+    public void process(Location location) {
+        run(new Fix(location), 0);
+    }
+
+    /**
+     * Feed a fix produced by the named stage itself, e.g. by a stage that re-emits fixes at its
+     * own rate. Processing continues with the stage that follows it.
+     */
+    public void processAfter(String stageName, Location location) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(stageName)) {
+                run(new Fix(location), i + 1);
+                return;
+            }
+        }
+        Log.w(TAG, "Fix from a stage that is not in the pipeline: " + stageName);
+    }
+
+    /**
+     * Feed fixes delivered together by GNSS batching. Each fix goes through the stages before
+     * {@code batchStage} on its own, the survivors continue from that stage as one fix carrying
+     * all of them in {@link Fix#batch}.
+     */
+    public void processBatch(List<Location> locations, String batchStage) {
+        int batchIndex = -1;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(batchStage)) {
+                batchIndex = i;
+                break;
+            }
+        }
+        if (batchIndex < 0) {
+            Log.w(TAG, "Batch stage is not in the pipeline, processing fixes one by one: " + batchStage);
+            for (Location location : locations) {
+                process(location);
+            }
+            return;
+        }
+
+        List<Location> survivors = new ArrayList<>(locations.size());
+        for (Location location : locations) {
+            Fix fix = new Fix(location);
+            if (run(fix, 0, batchIndex)) {
+                survivors.add(fix.location);
+            }
+        }
+        if (survivors.isEmpty()) {
+            return;
+        }
+
+        Fix fix = new Fix(survivors.get(survivors.size() - 1));
+        if (survivors.size() > 1) {
+            fix.batch = survivors;
+        }
+        run(fix, batchIndex, stages.length);
+    }
+
+    private void run(Fix fix, int firstStage) {
+        run(fix, firstStage, stages.length);
+    }
+
+    /**
+     * @return true if the fix passed all stages from {@code firstStage} up to {@code endStage}
+     */
+    private boolean run(Fix fix, int firstStage, int endStage) {
+        for (int i = firstStage; i < endStage; i++) {
+            long start = System.nanoTime();
+            boolean passed = stages[i].process(fix);
+            Metrics.add(nanosMetrics[i], System.nanoTime() - start);
+            Metrics.increment(countMetrics[i]);
+            if (!passed) {
+                Metrics.increment(stoppedMetrics[i]);
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import dezz.gnssshare.shared.FixRing;
+
+/**
+ * Hands the shared memory fix ring to consumers on the same device.
+ * <p>
+ * A consumer binds, sends {@link #MSG_GET_RING} with a reply messenger and gets the ring's
+ * SharedMemory in the reply's data under {@link #KEY_RING}, or no data if the ring isn't enabled.
+ * The memory is read-only for consumers.
+ */
+public class FixRingService extends Service {
+    private static final String TAG = "FixRingService";
+
+    public static final int MSG_GET_RING = 1;
+    public static final String KEY_RING = "ring";
+
+    private final Messenger messenger = new Messenger(new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(@NonNull Message msg) {
+            if (msg.what != MSG_GET_RING || msg.replyTo == null) {
+                super.handleMessage(msg);
+                return;
+            }
+
+            Message reply = Message.obtain(null, MSG_GET_RING);
+            FixRing ring = GNSSServerService.getFixRing();
+            if (ring != null) {
+                Bundle data = new Bundle();
+                data.putParcelable(KEY_RING, ring.getSharedMemory());
+                reply.setData(data);
+            }
+
+            try {
+                msg.replyTo.send(reply);
+                Log.d(TAG, "Ring " + (ring != null ? "sent" : "not available") + " to uid " + msg.sendingUid);
+            } catch (RemoteException e) {
+                Log.w(TAG, "Failed to reply to ring request", e);
+            }
+        }
+    });
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return messenger.getBinder();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+/**
+ * One step of the {@link FixPipeline}.
+ * <p>
+ * Stages may be called from the main thread and from the IMU fusion thread, so stateful stages
+ * must synchronize on their own.
+ */
+public interface FixStage {
+    /**
+     * @return true to pass the fix on to the next stage, false to stop processing it
+     */
+    boolean process(FixPipeline.Fix fix);
+}
@@ -24,45 +24,106 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
+import android.location.LocationRequest;
 import android.location.GnssStatus;
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.Process;
+import android.system.ErrnoException;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
 
 import dezz.gnssshare.proto.LocationProto;
+import dezz.gnssshare.shared.ClientSession;
+import dezz.gnssshare.shared.ConfigStore;
+import dezz.gnssshare.shared.FixRing;
+import dezz.gnssshare.shared.FlightRecorder;
+import dezz.gnssshare.shared.FrameChannel;
+import dezz.gnssshare.shared.LastFixStore;
+import dezz.gnssshare.shared.LatencyHistogram;
+import dezz.gnssshare.shared.LocalFrameChannel;
+import dezz.gnssshare.shared.LivenessMonitor;
+import dezz.gnssshare.shared.LogExporter;
+import dezz.gnssshare.shared.LowLatencyWifi;
+import dezz.gnssshare.shared.Metrics;
 import dezz.gnssshare.shared.ServerStatus;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class GNSSServerService extends Service {
     private static final String TAG = "GNSSServerService";
     private static final int PORT = 8887;
     private static final String CHANNEL_ID = "GNSSServerChannel";
     private static final int NOTIFICATION_ID = 1;
-    private static final String PREF_IS_SERVICE_ENABLED = "isServiceEnabled";
-
-    private int providerID;
+    // Run all available providers at once and forward the best fix until GPS settles
+    private static final int PROVIDER_ID_ARBITRATED = 3;
+    // NMEA/UBX receiver on USB or a serial port, see ExternalReceiver
+    private static final int PROVIDER_ID_EXTERNAL = 4;
+    private static final int FIX_RING_SLOTS = 8;
+    private static final int FIX_RING_SLOT_SIZE = 1024;
+    // Sent to ring mode clients after every fix written to the ring, see FixRingReader
+    private static final LocationProto.ServerResponse DOORBELL = LocationProto.ServerResponse.getDefaultInstance();
+    // Accept rate limit: sustained connections per second and burst size
+    private static final double ACCEPT_RATE = 4;
+    private static final int ACCEPT_BURST = 8;
+    private static final String LAST_FIX_FILE = "last_fix.bin";
+    private static final long LAST_FIX_SAVE_INTERVAL = 30000;
+    // Fix interval inside a hardware batch
+    private static final long BATCH_FIX_INTERVAL = 1000;
+    // Batching is used only if every client asked for updates at least this far apart
+    private static final long MIN_BATCH_DELAY = 2000;
+    // Give a new client time to send its update interval before switching modes
+    private static final long REQUEST_MODE_UPDATE_DELAY = 1000;
+    // Traffic rates are recomputed at most this often
+    private static final long STATS_INTERVAL = 1000;
+    // The source path is typed in, restart the receiver only once editing pauses
+    private static final long EXTERNAL_SOURCE_CHANGE_DELAY = 1500;
+
+    // Per-fix and per-packet events go to the flight recorder, clients are identified by id
+    private static final FlightRecorder.Event EVENT_FIX = FlightRecorder.define(Log.DEBUG, TAG,
+            "Handling location update: %.6f, %.6f ±%.1fm");
+    private static final FlightRecorder.Event EVENT_BROADCAST = FlightRecorder.define(Log.DEBUG, TAG,
+            "Broadcasting location to %d clients");
+    private static final FlightRecorder.Event EVENT_PING = FlightRecorder.define(Log.VERBOSE, TAG,
+            "Ping received from client %d");
+    private static final FlightRecorder.Event EVENT_PONG = FlightRecorder.define(Log.VERBOSE, TAG,
+            "Pong received from client %d, RTT %dms");
+    private static final FlightRecorder.Event EVENT_RESPONSE_SENT = FlightRecorder.define(Log.VERBOSE, TAG,
+            "Response sent to client %d, %d bytes");
+
+    private volatile int providerID;
 
     private static boolean running = false;
 
     private String serverStartError = null;
 
     private ServerSocket serverSocket;
+    private volatile LocalServerSocket localServerSocket = null;
     private LocationManager locationManager = null;
     private final LocationListener locationListener = new LocationListener() {
         @Override
@@ -70,6 +131,11 @@ public class GNSSServerService extends Service {
             handleLocationUpdate(location);
         }
 
+        @Override
+        public void onLocationChanged(@NonNull List<Location> locations) {
+            handleLocationBatch(locations);
+        }
+
         @Override
         public void onProviderEnabled(@NonNull String provider) {
             Log.d(TAG, "Provider enabled: " + provider);
@@ -81,47 +147,170 @@ public class GNSSServerService extends Service {
         }
     };
 
+    // Network and fused providers used only until GPS settles when PROVIDER_ID_ARBITRATED is chosen
+    private final LocationListener secondaryLocationListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(@NonNull Location location) {
+            handleLocationUpdate(location);
+        }
+    };
+
+    private FixArbiter fixArbiter = null;
+
+    private ExternalReceiver externalReceiver = null;
+    private volatile int externalSatellites = 0;
+
     private NotificationManager notificationManager;
 
     private final ArrayList<ClientHandler> connectedClients = new ArrayList<>();
+    private final AtomicInteger nextClientId = new AtomicInteger();
+    private final AdmissionController admissionController = new AdmissionController(ACCEPT_RATE, ACCEPT_BURST);
     private final ExecutorService executor = Executors.newCachedThreadPool();
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final GnssStatus.Callback gnssStatusCallback = new GnssStatus.Callback() {
         @Override
         public void onSatelliteStatusChanged(@NonNull GnssStatus status) {
             gnssStatus = status;
-            lastServerResponse.setSatellites(getSatelliteCount());
+            synchronized (lastServerResponse) {
+                lastServerResponse.setSatellites(getSatelliteCount());
+                lastResponse = lastServerResponse.build();
+            }
 
-            if (isServiceRunning() && !connectedClients.isEmpty() && !lastServerResponse.hasLocationUpdate()) {
+            LocationProto.SatelliteStatus satelliteStatus = satelliteStatusEncoder.update(status);
+            if (satelliteStatus != null) {
+                executor.execute(() -> broadcastSatelliteStatus(satelliteStatus));
+            }
+
+            if (isServiceRunning() && !connectedClients.isEmpty() && !lastResponse.hasLocationUpdate()) {
                 mainHandler.post(() -> updateNotification("GNSS status changed"));
             }
         }
     };
 
+    private final SatelliteStatusEncoder satelliteStatusEncoder = new SatelliteStatusEncoder();
+
+    // Modified only while holding its own lock, each change is published as lastResponse
     private final LocationProto.ServerResponse.Builder lastServerResponse = LocationProto.ServerResponse.newBuilder()
             .setStatus(ServerStatus.UNINITIALIZED.name());
+    // Immutable copy of lastServerResponse, read without locking by client handlers
+    private volatile LocationProto.ServerResponse lastResponse = lastServerResponse.build();
 
     // We need to use such runnable to make scheduled stopping cancelable
     private final Runnable stopLocationUpdates = this::stopLocationUpdates;
+    private final Runnable updateRequestMode = this::updateRequestMode;
+    private final Runnable restartExternalReceiver = this::restartExternalReceiver;
 
     private GnssStatus gnssStatus = null;
     private boolean isGnssActive = false;
+    private String activeProvider = null;
+    // Maximum batch delay requested from the GNSS chip, 0 for real-time updates
+    private long batchDelayMillis = 0;
+    private long fixIntervalMillis = 0;
+
+    private ThermalGovernor thermalGovernor;
+    private volatile SignificanceFilter significanceFilter = null;
+    private long lastBroadcastTime = 0;
+    private long lastLocationNotificationTime = 0;
+
+    private ImuFusion imuFusion = null;
+
+    private LastFixStore lastFixStore;
+
+    private volatile FixPipeline fixPipeline;
+
+    private volatile LowLatencyWifi lowLatencyWifi = null;
+    // Handed out to same-device consumers by FixRingService
+    private static volatile FixRing fixRing = null;
+    private volatile LatencyHistogram fixToWireHistogram;
+
+    // Settings that need no restart are applied here, the shared memory ring still needs one
+    private final ConfigStore.Listener<ServerConfig> configListener = this::onConfigChanged;
+
+    /**
+     * Clients and outgoing traffic of the interface with the given local address
+     */
+    public static final class InterfaceStats {
+        public final int clients;
+        public final long bytesPerSecond;
+
+        InterfaceStats(int clients, long bytesPerSecond) {
+            this.clients = clients;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+    }
+
+    public interface StatsListener {
+        /**
+         * @param stats per-interface stats keyed by the local address clients connected to
+         */
+        void onStatsChanged(Map<String, InterfaceStats> stats);
+    }
+
+    private static volatile StatsListener statsListener = null;
+    private static volatile Map<String, InterfaceStats> lastStats = Collections.emptyMap();
+    private final ConcurrentHashMap<String, AtomicLong> bytesSentByAddress = new ConcurrentHashMap<>();
+    // Guarded by statsLock
+    private final Object statsLock = new Object();
+    private final Map<String, Long> lastBytesSent = new HashMap<>();
+    private final Map<String, Long> byteRates = new HashMap<>();
+    private long lastStatsTime = 0;
+    // Rates are only recomputed when something is sent, an idle client would keep the last one
+    private final Runnable refreshStats = new Runnable() {
+        @Override
+        public void run() {
+            publishStats(false);
+            synchronized (connectedClients) {
+                if (connectedClients.isEmpty()) {
+                    return;
+                }
+            }
+            mainHandler.postDelayed(this, STATS_INTERVAL);
+        }
+    };
 
     @Override
     public void onCreate() {
         notificationManager = getSystemService(NotificationManager.class);
 
+        // Recorded fixes stay exportable after the service is stopped
+        LogExporter.registerSection("Recent fixes", writer -> FlightRecorder.dump(writer, EVENT_FIX));
+
+        lastFixStore = new LastFixStore(this, LAST_FIX_FILE, LAST_FIX_SAVE_INTERVAL);
+        restoreLastFix();
+
+        ServerConfig config = ServerConfig.get(this);
+        providerID = config.providerId;
+        significanceFilter = createSignificanceFilter(config);
+        fixPipeline = createPipeline();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU && config.sharedMemoryRingEnabled) {
+            try {
+                fixRing = FixRing.create("gnss-fixes", FIX_RING_SLOTS, FIX_RING_SLOT_SIZE);
+            } catch (ErrnoException e) {
+                Log.w(TAG, "Failed to create shared memory ring", e);
+            }
+        }
+
+        applyLowLatencyWifi(config.lowLatencyWifiEnabled);
+
+        thermalGovernor = new ThermalGovernor(this, tier -> {
+            updateRequestMode();
+            updateNotification("Governor tier changed");
+        });
+
         createNotificationChannel();
 
         startForeground(NOTIFICATION_ID, createNotification());
 
+        thermalGovernor.start();
+
+        ServerConfig.addListener(this, configListener);
+
         running = true;
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        providerID = intent.getIntExtra("providerId", 1);
-
         serverStartError = null;
         startServer();
 
@@ -132,9 +321,20 @@ public class GNSSServerService extends Service {
     public void onDestroy() {
         running = false;
 
+        ServerConfig.removeListener(this, configListener);
+
         stopServer();
         stopLocationUpdates();
 
+        thermalGovernor.stop();
+        lastFixStore.flush();
+
+        if (fixRing != null) {
+            // Consumers keep their own mapping, the memory goes away with the last one
+            fixRing.close();
+            fixRing = null;
+        }
+
         locationManager = null;
 
         executor.shutdown();
@@ -181,17 +381,11 @@ public class GNSSServerService extends Service {
                     Socket clientSocket = serverSocket.accept();
                     Log.d(TAG, "Client connected: " + clientSocket.getRemoteSocketAddress());
 
-                    ClientHandler clientHandler = new ClientHandler(clientSocket);
-                    synchronized (connectedClients) {
-                        connectedClients.add(clientHandler);
-                        // Start location updates when first client connects
-                        if (connectedClients.size() == 1) {
-                            mainHandler.post(this::startLocationUpdates);
-                        }
+                    if (lowLatencyWifi != null) {
+                        LowLatencyWifi.applySocketOptions(clientSocket);
                     }
-                    executor.execute(clientHandler);
 
-                    updateNotification("New client connected");
+                    admitClient(FrameChannel.of(clientSocket));
                 } catch (IOException e) {
                     if (serverSocket != null && !serverSocket.isClosed()) {
                         Log.e(TAG, "Error accepting client connection", e);
@@ -199,10 +393,118 @@ public class GNSSServerService extends Service {
                 }
             }
         });
+
+        startLocalServer();
+    }
+
+    /**
+     * Serve consumers on the same device over a local socket, with the same framing as TCP
+     */
+    private void startLocalServer() {
+        executor.execute(() -> {
+            LocalServerSocket socket;
+            try {
+                socket = new LocalServerSocket(FrameChannel.LOCAL_SOCKET_NAME);
+                localServerSocket = socket;
+                Log.d(TAG, "Local server started on " + FrameChannel.LOCAL_SOCKET_NAME);
+            } catch (IOException e) {
+                // TCP clients are still served
+                Log.w(TAG, "Error starting local server", e);
+                return;
+            }
+
+            while (localServerSocket == socket) {
+                try {
+                    LocalSocket clientSocket = socket.accept();
+                    FrameChannel channel = new LocalFrameChannel(clientSocket);
+                    // The abstract socket name is reachable by every app on the device
+                    if (!isTrustedLocalPeer(clientSocket)) {
+                        Metrics.increment("server.local.rejected");
+                        closeRejectedChannel(channel);
+                        continue;
+                    }
+                    admitClient(channel);
+                } catch (IOException e) {
+                    if (localServerSocket == socket) {
+                        Log.e(TAG, "Error accepting local client connection", e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if the peer is this app or an app signed with the same key, like the client
+     */
+    private boolean isTrustedLocalPeer(LocalSocket socket) {
+        int uid;
+        try {
+            uid = socket.getPeerCredentials().getUid();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to get local client credentials", e);
+            return false;
+        }
+        if (uid == Process.myUid() ||
+                getPackageManager().checkSignatures(Process.myUid(), uid) == PackageManager.SIGNATURE_MATCH) {
+            return true;
+        }
+        Log.w(TAG, "Rejected local client with uid " + uid + ", not signed with our key");
+        return false;
+    }
+
+    private void admitClient(FrameChannel channel) {
+        if (!admissionController.tryAcquire()) {
+            Log.w(TAG, "Too many connection attempts, rejecting " + channel.getDescription());
+            Metrics.increment("server.admission.rate_limited");
+            closeRejectedChannel(channel);
+            return;
+        }
+
+        ClientHandler clientHandler = new ClientHandler(channel);
+        // A reconnecting client replaces its previous session, which is most likely dead
+        ArrayList<ClientHandler> staleClients = new ArrayList<>();
+        synchronized (connectedClients) {
+            InetAddress remoteAddress = channel.getRemoteAddress();
+            if (remoteAddress != null) {
+                for (ClientHandler client : connectedClients) {
+                    if (remoteAddress.equals(client.getRemoteAddress())) {
+                        staleClients.add(client);
+                    }
+                }
+            }
+            if (connectedClients.size() - staleClients.size() >= getMaxClients(this)) {
+                Log.w(TAG, "Client limit reached, rejecting " + clientHandler.getClientAddress());
+                Metrics.increment("server.admission.rejected_full");
+                closeRejectedChannel(channel);
+                return;
+            }
+            // The new session is added first so the client list never becomes empty
+            // and location updates keep running
+            connectedClients.add(clientHandler);
+            // Start location updates when first client connects
+            if (connectedClients.size() == 1) {
+                mainHandler.post(this::startLocationUpdates);
+            } else {
+                scheduleRequestModeUpdate();
+            }
+        }
+        executor.execute(clientHandler);
+
+        for (ClientHandler staleClient : staleClients) {
+            Log.i(TAG, "Evicting previous session of the same client: " + staleClient.getClientAddress());
+            Metrics.increment("server.admission.evicted");
+            staleClient.disconnect();
+        }
+
+        publishStats(true);
+        mainHandler.removeCallbacks(refreshStats);
+        mainHandler.postDelayed(refreshStats, STATS_INTERVAL);
+        updateNotification("New client connected");
     }
 
     private void stopServer() {
         Log.d(TAG, "Stopping server");
+        mainHandler.removeCallbacks(refreshStats);
         try {
             if (serverSocket != null) {
                 if (!serverSocket.isClosed()) {
@@ -211,6 +513,12 @@ public class GNSSServerService extends Service {
                 serverSocket = null;
             }
 
+            if (localServerSocket != null) {
+                LocalServerSocket socket = localServerSocket;
+                localServerSocket = null;
+                socket.close();
+            }
+
             // Copy clients list to avoid concurrent modification
             ArrayList<ClientHandler> clients;
             synchronized (connectedClients) {
@@ -230,42 +538,28 @@ public class GNSSServerService extends Service {
 
         initializeLocationManager();
 
+        if (lowLatencyWifi != null) {
+            lowLatencyWifi.acquire();
+        }
+
         try {
             Log.d(TAG, "Starting location updates...");
 
-            lastServerResponse.setStatus(ServerStatus.AWAITING_LOCATION.name());
+            setLastResponseStatus(ServerStatus.AWAITING_LOCATION);
 
-            String provider;
+            activeProvider = getProviderName(providerID);
+            batchDelayMillis = computeBatchDelay();
+            fixIntervalMillis = thermalGovernor.getTier().fixInterval;
+            requestPrimaryUpdates();
 
-            switch (providerID) {
-                case (0):
-                    provider = LocationManager.GPS_PROVIDER;
-                    break;
-                case (2):
-                    provider = LocationManager.FUSED_PROVIDER;
-                    break;
-                case (1):
-                default:
-                    provider = LocationManager.NETWORK_PROVIDER;
-                    break;
+            if (providerID == PROVIDER_ID_ARBITRATED) {
+                startSecondaryProviders();
             }
 
-            // String provider = LocationManager.GPS_PROVIDER;
-
-
-            // if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-            //     provider = LocationManager.FUSED_PROVIDER;
-            // }
-
-            locationManager.requestLocationUpdates(
-                    provider,
-                    100,
-                    0,
-                    locationListener
-            );
-
             Log.d(TAG, "Location updates started");
 
+            startImuFusion();
+
             isGnssActive = true;
 
             updateNotification("Started location updates");
@@ -276,6 +570,254 @@ public class GNSSServerService extends Service {
         }
     }
 
+    private static String getProviderName(int providerId) {
+        switch (providerId) {
+            case (0):
+            case (PROVIDER_ID_ARBITRATED):
+                return LocationManager.GPS_PROVIDER;
+            case (2):
+                return LocationManager.FUSED_PROVIDER;
+            case (PROVIDER_ID_EXTERNAL):
+                return ExternalReceiver.PROVIDER;
+            case (1):
+            default:
+                return LocationManager.NETWORK_PROVIDER;
+        }
+    }
+
+    private void startImuFusion() {
+        if (imuFusion == null && ServerConfig.get(this).imuFusionEnabled) {
+            imuFusion = new ImuFusion(this, ServerConfig.get(this).imuFusionRate,
+                    location -> fixPipeline.processAfter("fusion", location));
+            imuFusion.start();
+        }
+    }
+
+    private void stopImuFusion() {
+        if (imuFusion != null) {
+            imuFusion.stop();
+            imuFusion = null;
+        }
+    }
+
+    private void requestPrimaryUpdates() {
+        if (providerID == PROVIDER_ID_EXTERNAL) {
+            startExternalReceiver();
+            return;
+        }
+
+        if (batchDelayMillis > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            LocationRequest request = new LocationRequest.Builder(Math.max(BATCH_FIX_INTERVAL, fixIntervalMillis))
+                    .setMaxUpdateDelayMillis(batchDelayMillis)
+                    .setQuality(LocationRequest.QUALITY_HIGH_ACCURACY)
+                    .build();
+            locationManager.requestLocationUpdates(activeProvider, request, getMainExecutor(), locationListener);
+            Log.d(TAG, "Batched location updates requested, max delay " + batchDelayMillis + "ms");
+        } else {
+            long interval = batchDelayMillis > 0 ? Math.max(BATCH_FIX_INTERVAL, fixIntervalMillis) : fixIntervalMillis;
+            locationManager.requestLocationUpdates(activeProvider, interval, 0, locationListener);
+            Log.d(TAG, "Location updates requested, interval " + interval + "ms");
+        }
+    }
+
+    /**
+     * @return the batch delay all connected clients can tolerate, or 0 if someone needs real-time
+     */
+    private long computeBatchDelay() {
+        if (providerID == PROVIDER_ID_ARBITRATED || providerID == PROVIDER_ID_EXTERNAL
+                || ServerConfig.get(this).imuFusionEnabled) {
+            return 0;
+        }
+
+        long minInterval = Long.MAX_VALUE;
+        synchronized (connectedClients) {
+            if (connectedClients.isEmpty()) {
+                return 0;
+            }
+            for (ClientHandler client : connectedClients) {
+                minInterval = Math.min(minInterval, client.getRequestedInterval());
+            }
+        }
+
+        return minInterval >= MIN_BATCH_DELAY ? minInterval : 0;
+    }
+
+    private void scheduleRequestModeUpdate() {
+        mainHandler.removeCallbacks(updateRequestMode);
+        mainHandler.postDelayed(updateRequestMode, REQUEST_MODE_UPDATE_DELAY);
+    }
+
+    private void updateRequestMode() {
+        if (locationManager == null || !isGnssActive) {
+            return;
+        }
+
+        long newBatchDelay = computeBatchDelay();
+        long newFixInterval = thermalGovernor.getTier().fixInterval;
+        if (newBatchDelay == batchDelayMillis && newFixInterval == fixIntervalMillis) {
+            return;
+        }
+
+        Log.i(TAG, "Switching to " + (newBatchDelay > 0 ? "batched" : "real-time") +
+                " location updates, fix interval " + newFixInterval + "ms");
+
+        batchDelayMillis = newBatchDelay;
+        fixIntervalMillis = newFixInterval;
+        try {
+            locationManager.removeUpdates(locationListener);
+            requestPrimaryUpdates();
+        } catch (SecurityException e) {
+            Log.e(TAG, "Location permission not granted", e);
+        }
+    }
+
+    private void startSecondaryProviders() {
+        fixArbiter = new FixArbiter();
+
+        List<String> availableProviders = locationManager.getAllProviders();
+        for (String provider : new String[]{LocationManager.NETWORK_PROVIDER, LocationManager.FUSED_PROVIDER}) {
+            if (availableProviders.contains(provider)) {
+                locationManager.requestLocationUpdates(provider, 100, 0, secondaryLocationListener);
+                Log.d(TAG, "Secondary provider started: " + provider);
+            }
+        }
+    }
+
+    private void startExternalReceiver() {
+        if (externalReceiver != null) {
+            return;
+        }
+        externalReceiver = new ExternalReceiver(this, ServerConfig.get(this).externalSourcePath,
+                this::handleExternalLocation);
+        externalReceiver.start();
+    }
+
+    private void stopExternalReceiver() {
+        mainHandler.removeCallbacks(restartExternalReceiver);
+        if (externalReceiver != null) {
+            externalReceiver.stop();
+            externalReceiver = null;
+        }
+    }
+
+    private void restartExternalReceiver() {
+        if (externalReceiver != null) {
+            Log.i(TAG, "External receiver source changed");
+            stopExternalReceiver();
+            startExternalReceiver();
+        }
+    }
+
+    private void handleExternalLocation(Location location, int satellites) {
+        externalSatellites = satellites;
+        synchronized (lastServerResponse) {
+            lastServerResponse.setSatellites(satellites);
+            lastResponse = lastServerResponse.build();
+        }
+        handleLocationUpdate(location);
+    }
+
+    private void stopSecondaryProviders() {
+        if (fixArbiter == null) {
+            return;
+        }
+
+        if (locationManager != null) {
+            locationManager.removeUpdates(secondaryLocationListener);
+        }
+
+        Log.i(TAG, "Secondary providers stopped, time to first/accurate fix: " + fixArbiter.getSummary());
+    }
+
+    private void onConfigChanged(ServerConfig oldConfig, ServerConfig newConfig) {
+        if (newConfig.isSignificanceFilterChanged(oldConfig)) {
+            Log.i(TAG, "Significance filter settings changed");
+            significanceFilter = createSignificanceFilter(newConfig);
+        }
+
+        if (!newConfig.pipelineStages.equals(oldConfig.pipelineStages)) {
+            fixPipeline = createPipeline();
+        }
+
+        if (newConfig.lowLatencyWifiEnabled != oldConfig.lowLatencyWifiEnabled) {
+            applyLowLatencyWifi(newConfig.lowLatencyWifiEnabled);
+        }
+
+        if (newConfig.providerId != oldConfig.providerId) {
+            switchProvider(newConfig.providerId);
+        } else if (!newConfig.externalSourcePath.equals(oldConfig.externalSourcePath)) {
+            mainHandler.removeCallbacks(restartExternalReceiver);
+            mainHandler.postDelayed(restartExternalReceiver, EXTERNAL_SOURCE_CHANGE_DELAY);
+        }
+
+        if (newConfig.imuFusionEnabled != oldConfig.imuFusionEnabled
+                || newConfig.imuFusionRate != oldConfig.imuFusionRate) {
+            stopImuFusion();
+            if (isGnssActive) {
+                startImuFusion();
+                // Fusion needs real-time updates, batching may be possible without it
+                scheduleRequestModeUpdate();
+            }
+        }
+    }
+
+    private static SignificanceFilter createSignificanceFilter(ServerConfig config) {
+        if (!config.significanceFilterEnabled) {
+            return null;
+        }
+        return new SignificanceFilter(config.significanceMinDistance, config.significanceMinBearingChange,
+                config.significanceMinAccuracyChange, config.significanceKeepAliveInterval);
+    }
+
+    private void applyLowLatencyWifi(boolean enabled) {
+        LowLatencyWifi current = lowLatencyWifi;
+        if (enabled && current == null) {
+            LowLatencyWifi wifi = new LowLatencyWifi(this, TAG);
+            if (isGnssActive) {
+                wifi.acquire();
+            }
+            lowLatencyWifi = wifi;
+        } else if (!enabled && current != null) {
+            lowLatencyWifi = null;
+            if (isGnssActive) {
+                current.release();
+            }
+        }
+        // Separate histograms let the two modes be compared from the metrics
+        fixToWireHistogram = new LatencyHistogram(enabled ? "server.fix_to_wire.low_latency" : "server.fix_to_wire.default");
+    }
+
+    /**
+     * Move running location updates to another provider without dropping clients
+     */
+    private void switchProvider(int providerId) {
+        int oldProviderId = providerID;
+        providerID = providerId;
+        if (locationManager == null || !isGnssActive) {
+            return;
+        }
+
+        Log.i(TAG, "Switching location provider " + oldProviderId + " -> " + providerId);
+        try {
+            locationManager.removeUpdates(locationListener);
+            stopExternalReceiver();
+            stopSecondaryProviders();
+            fixArbiter = null;
+
+            activeProvider = getProviderName(providerId);
+            batchDelayMillis = computeBatchDelay();
+            requestPrimaryUpdates();
+
+            if (providerId == PROVIDER_ID_ARBITRATED) {
+                startSecondaryProviders();
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "Location permission not granted", e);
+        }
+
+        updateNotification("Location provider changed");
+    }
+
     private void stopLocationUpdates() {
         if (running && !connectedClients.isEmpty()) {
             Log.w(TAG, "Location updates not stopped: still have clients connected");
@@ -284,23 +826,197 @@ public class GNSSServerService extends Service {
 
         Log.d(TAG, "Stopping location updates...");
 
+        if (lowLatencyWifi != null) {
+            lowLatencyWifi.release();
+        }
+
+        stopSecondaryProviders();
+        fixArbiter = null;
+        stopExternalReceiver();
+
         if (locationManager != null) {
             locationManager.removeUpdates(locationListener);
             locationManager.unregisterGnssStatusCallback(gnssStatusCallback);
             locationManager = null;
         }
 
+        stopImuFusion();
+
         Log.d(TAG, "Location updates stopped");
 
         isGnssActive = false;
-        lastServerResponse.setStatus(ServerStatus.LOCATION_STOPPED.name());
+        setLastResponseStatus(ServerStatus.LOCATION_STOPPED);
 
         updateNotification("Stopped location updates");
     }
 
+    private void setLastResponseStatus(ServerStatus status) {
+        synchronized (lastServerResponse) {
+            lastServerResponse.setStatus(status.name());
+            lastResponse = lastServerResponse.build();
+        }
+    }
+
     private void handleLocationUpdate(Location location) {
-        Log.d(TAG, String.format("Handling location update: %s", location));
+        FlightRecorder.record(EVENT_FIX, location.getLatitude(), location.getLongitude(), location.getAccuracy());
+
+        fixPipeline.process(location);
+
+        long now = System.currentTimeMillis();
+        if (now - lastLocationNotificationTime >= thermalGovernor.getTier().notificationInterval) {
+            lastLocationNotificationTime = now;
+            updateNotification("Received location update");
+        }
+    }
+
+    private void handleLocationBatch(List<Location> locations) {
+        if (locations.size() == 1) {
+            handleLocationUpdate(locations.get(0));
+            return;
+        }
+
+        Log.d(TAG, "Handling batch of " + locations.size() + " locations");
+
+        for (Location location : locations) {
+            FlightRecorder.record(EVENT_FIX, location.getLatitude(), location.getLongitude(), location.getAccuracy());
+        }
+        // Every fix is validated on its own, the survivors are encoded and sent as one batch
+        fixPipeline.processBatch(locations, "encoding");
+
+        updateNotification("Received location batch");
+    }
+
+    /**
+     * Build the fix pipeline from the configured stage names. Stages of features that are turned
+     * off pass fixes through unchanged.
+     */
+    private FixPipeline createPipeline() {
+        Map<String, FixStage> stages = new HashMap<>();
+
+        stages.put("validation", new OutlierFilter());
+
+        stages.put("arbitration", fix -> {
+            if (fixArbiter == null) {
+                return true;
+            }
+            if (fixArbiter.offer(fix.location) == null) {
+                return false;
+            }
+            if (fixArbiter.isGpsSettled()) {
+                // GPS is good on its own now, keep only the arbiter's statistics
+                stopSecondaryProviders();
+                fixArbiter = null;
+            }
+            return true;
+        });
+
+        // Fused fixes re-enter the pipeline after this stage at the fusion rate
+        stages.put("fusion", fix -> {
+            ImuFusion fusion = imuFusion;
+            if (fusion == null) {
+                return true;
+            }
+            fusion.onLocation(fix.location);
+            return false;
+        });
+
+        stages.put("enrichment", new FixEnricher());
+
+        stages.put("encoding", fix -> {
+            synchronized (lastServerResponse) {
+                if (fix.batch != null) {
+                    for (Location location : fix.batch) {
+                        lastServerResponse.addBatch(toLocationUpdate(location));
+                    }
+                }
+                lastServerResponse.setStatus(ServerStatus.TRANSMITTING_LOCATION.name())
+                        .setLocationUpdate(toLocationUpdate(fix.location));
+                fix.response = lastServerResponse.build();
+                if (fix.batch != null) {
+                    // Ping responses must carry only the latest fix
+                    lastServerResponse.clearBatch();
+                    lastResponse = lastServerResponse.build();
+                } else {
+                    lastResponse = fix.response;
+                }
+            }
+            saveLastFix(fix.response);
+            return true;
+        });
+
+        stages.put("significance", fix -> {
+            SignificanceFilter filter = significanceFilter;
+            if (filter == null || filter.isSignificant(fix.location)) {
+                return true;
+            }
+            int clientCount;
+            synchronized (connectedClients) {
+                clientCount = connectedClients.size();
+            }
+            Metrics.increment("server.significance.suppressed");
+            if (fix.response != null) {
+                // Length prefix plus payload per client
+                Metrics.add("server.significance.bytes_saved", (4L + fix.response.getSerializedSize()) * clientCount);
+            }
+            return false;
+        });
+
+        // Clients still get the latest fix with ping responses while throttled
+        stages.put("governor", fix -> {
+            synchronized (lastServerResponse) {
+                long now = System.currentTimeMillis();
+                if (now - lastBroadcastTime < thermalGovernor.getTier().broadcastInterval) {
+                    Metrics.increment("server.broadcasts_throttled");
+                    return false;
+                }
+                lastBroadcastTime = now;
+            }
+            return true;
+        });
 
+        stages.put("fanout", fix -> {
+            LocationProto.ServerResponse serverResponse = fix.response;
+            if (serverResponse == null) {
+                Log.w(TAG, "Fix reached fan-out without being encoded");
+                return false;
+            }
+            FixRing ring = fixRing;
+            if (ring != null) {
+                synchronized (ring) {
+                    ring.write(serverResponse.toByteArray());
+                }
+            }
+
+            // Later fixes are compared to this one, it's what the clients have now
+            SignificanceFilter filter = significanceFilter;
+            if (filter != null) {
+                filter.onSent(fix.location);
+            }
+
+            long fixTimeNanos = fix.location.getElapsedRealtimeNanos();
+            FlightRecorder.record(EVENT_BROADCAST, connectedClients.size());
+            executor.execute(() -> {
+                broadcastLocationUpdate(serverResponse);
+                // From the moment the fix was taken to the last client write
+                long fixToWireNanos = SystemClock.elapsedRealtimeNanos() - fixTimeNanos;
+                Metrics.add("server.pipeline.fix_to_wire.nanos", fixToWireNanos);
+                Metrics.increment("server.pipeline.fix_to_wire.count");
+                fixToWireHistogram.record(fixToWireNanos / 1_000_000);
+            });
+            return true;
+        });
+
+        String configured = getPipelineStages(this);
+        List<String> names = new ArrayList<>();
+        for (String name : configured.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return new FixPipeline(names, stages);
+    }
+
+    private static LocationProto.LocationUpdate toLocationUpdate(Location location) {
         // Create protobuf message
         LocationProto.LocationUpdate.Builder builder = LocationProto.LocationUpdate.newBuilder()
                 .setTimestamp(location.getTime())
@@ -322,14 +1038,54 @@ public class GNSSServerService extends Service {
             builder.setSpeed(location.getSpeed());
         }
 
-        lastServerResponse.setStatus(ServerStatus.TRANSMITTING_LOCATION.name())
-                .setLocationUpdate(builder.build());
+        return builder.build();
+    }
+
+    private void saveLastFix(LocationProto.ServerResponse serverResponse) {
+        lastFixStore.save(LocationProto.ServerResponse.newBuilder()
+                .setSatellites(serverResponse.getSatellites())
+                .setLocationUpdate(serverResponse.getLocationUpdate())
+                .build()
+                .toByteArray());
+    }
+
+    /**
+     * Serve the fix saved before the last shutdown to new clients until a live fix arrives
+     */
+    private void restoreLastFix() {
+        byte[] data = lastFixStore.load();
+        if (data == null) {
+            return;
+        }
+
+        try {
+            LocationProto.ServerResponse saved = LocationProto.ServerResponse.parseFrom(data);
+            if (!saved.hasLocationUpdate()) {
+                return;
+            }
 
-        updateNotification("Received location update");
+            LocationProto.LocationUpdate locationUpdate = saved.getLocationUpdate().toBuilder()
+                    .setStale(true)
+                    .setLocationAge((System.currentTimeMillis() - saved.getLocationUpdate().getTimestamp()) / 1000.0f)
+                    .build();
+            synchronized (lastServerResponse) {
+                lastServerResponse.setSatellites(saved.getSatellites())
+                        .setLocationUpdate(locationUpdate);
+                lastResponse = lastServerResponse.build();
+            }
 
-        // Broadcast to all connected clients
-        Log.d(TAG, "Broadcasting location to " + connectedClients.size() + " clients: " + location);
-        executor.execute(() -> broadcastLocationUpdate(lastServerResponse.build()));
+            Log.i(TAG, "Restored last known fix, " + locationUpdate.getLocationAge() + "s old");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to parse saved last fix", e);
+        }
+    }
+
+    private static void closeRejectedChannel(FrameChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing rejected connection", e);
+        }
     }
 
     private void broadcastLocationUpdate(LocationProto.ServerResponse serverResponse) {
@@ -339,10 +1095,36 @@ public class GNSSServerService extends Service {
             clients = new ArrayList<>(connectedClients);
         }
         for (ClientHandler client : clients) {
-            client.sendResponse(serverResponse);
+            // Ring mode clients read the fix from the ring, the empty frame only wakes them up
+            client.sendResponse(client.isRingMode() ? DOORBELL : serverResponse);
+        }
+    }
+
+    /**
+     * Send satellite changes to the clients that asked for satellite details
+     */
+    private void broadcastSatelliteStatus(LocationProto.SatelliteStatus satelliteStatus) {
+        LocationProto.ServerResponse response = createSatelliteResponse(satelliteStatus);
+        ArrayList<ClientHandler> clients;
+        synchronized (connectedClients) {
+            clients = new ArrayList<>(connectedClients);
+        }
+        for (ClientHandler client : clients) {
+            // Ring clients too, the ring carries fixes only
+            if (client.isSatelliteDetail()) {
+                client.sendResponse(response);
+            }
         }
     }
 
+    private LocationProto.ServerResponse createSatelliteResponse(LocationProto.SatelliteStatus satelliteStatus) {
+        return LocationProto.ServerResponse.newBuilder()
+                .setStatus(lastResponse.getStatus())
+                .setSatellites(getSatelliteCount())
+                .setSatelliteStatus(satelliteStatus)
+                .build();
+    }
+
     private void onClientDisconnected(ClientHandler client) {
         synchronized (connectedClients) {
             boolean wasRemoved = connectedClients.remove(client);
@@ -350,6 +1132,10 @@ public class GNSSServerService extends Service {
                 Log.d(TAG, "Client removed: " + client.getClientAddress() +
                         ". Remaining clients: " + connectedClients.size());
 
+                if (!connectedClients.isEmpty()) {
+                    scheduleRequestModeUpdate();
+                }
+
                 // Stop location updates when no clients connected
                 if (running && connectedClients.isEmpty()) {
                     Log.d(TAG, "No clients remaining, scheduling stopping of location updates in 15 seconds");
@@ -361,24 +1147,163 @@ public class GNSSServerService extends Service {
             }
         }
 
+        publishStats(true);
+
         mainHandler.post(() -> updateNotification("Client disconnected"));
     }
 
+    /**
+     * Report client counts and traffic to the listener, at most once per {@link #STATS_INTERVAL}
+     * unless forced because the set of clients has changed
+     */
+    private void publishStats(boolean force) {
+        if (!force && statsListener == null) {
+            return;
+        }
+
+        Map<String, InterfaceStats> stats;
+        synchronized (statsLock) {
+            long now = SystemClock.elapsedRealtime();
+            long elapsed = now - lastStatsTime;
+            if (!force && elapsed < STATS_INTERVAL) {
+                return;
+            }
+
+            // A forced update between two regular ones keeps the previous rates
+            if (elapsed >= STATS_INTERVAL) {
+                for (Map.Entry<String, AtomicLong> entry : bytesSentByAddress.entrySet()) {
+                    long total = entry.getValue().get();
+                    Long previous = lastBytesSent.put(entry.getKey(), total);
+                    byteRates.put(entry.getKey(), previous == null ? 0 : (total - previous) * 1000 / elapsed);
+                }
+                lastStatsTime = now;
+            }
+
+            HashMap<String, Integer> clientCounts = new HashMap<>();
+            synchronized (connectedClients) {
+                for (ClientHandler client : connectedClients) {
+                    if (client.getLocalAddress() != null) {
+                        clientCounts.merge(client.getLocalAddress(), 1, Integer::sum);
+                    }
+                }
+            }
+
+            stats = new HashMap<>();
+            for (Map.Entry<String, Integer> entry : clientCounts.entrySet()) {
+                Long rate = byteRates.get(entry.getKey());
+                stats.put(entry.getKey(), new InterfaceStats(entry.getValue(), rate == null ? 0 : rate));
+            }
+            stats = Collections.unmodifiableMap(stats);
+            lastStats = stats;
+        }
+
+        StatsListener listener = statsListener;
+        if (listener != null) {
+            Map<String, InterfaceStats> result = stats;
+            mainHandler.post(() -> listener.onStatsChanged(result));
+        }
+    }
+
+    /**
+     * Receive per-interface stats on the main thread whenever they change, starting with the
+     * current ones. Pass null to stop.
+     */
+    public static void setStatsListener(StatsListener listener) {
+        statsListener = listener;
+        if (listener != null) {
+            listener.onStatsChanged(lastStats);
+        }
+    }
+
     public static boolean isServiceRunning() {
         return running;
     }
 
     // Public methods for checking service state
     public static boolean isServiceEnabled(Context context) {
-        return getPrefs(context).getBoolean(PREF_IS_SERVICE_ENABLED, false);
+        return ServerConfig.get(context).serviceEnabled;
     }
 
     public static void setServiceEnabled(Context context, boolean enabled) {
-        getPrefs(context).edit().putBoolean(PREF_IS_SERVICE_ENABLED, enabled).apply();
+        ServerConfig.edit(context).putBoolean(ServerConfig.PREF_IS_SERVICE_ENABLED, enabled).apply();
+    }
+
+    public static int getProviderId(Context context) {
+        return ServerConfig.get(context).providerId;
+    }
+
+    /**
+     * A running service switches to the new provider immediately
+     */
+    public static void setProviderId(Context context, int providerId) {
+        ServerConfig.edit(context).putInt(ServerConfig.PREF_PROVIDER_ID, providerId).apply();
+    }
+
+    public static boolean isImuFusionEnabled(Context context) {
+        return ServerConfig.get(context).imuFusionEnabled;
+    }
+
+    public static void setImuFusionEnabled(Context context, boolean enabled) {
+        ServerConfig.edit(context).putBoolean(ServerConfig.PREF_IS_IMU_FUSION_ENABLED, enabled).apply();
+    }
+
+    public static int getImuFusionRate(Context context) {
+        return ServerConfig.get(context).imuFusionRate;
+    }
+
+    public static boolean isSignificanceFilterEnabled(Context context) {
+        return ServerConfig.get(context).significanceFilterEnabled;
+    }
+
+    public static void setSignificanceFilterEnabled(Context context, boolean enabled) {
+        ServerConfig.edit(context).putBoolean(ServerConfig.PREF_IS_SIGNIFICANCE_FILTER_ENABLED, enabled).apply();
+    }
+
+    /**
+     * @return the shared memory ring with the latest fixes, or null if it is not enabled
+     */
+    public static FixRing getFixRing() {
+        return fixRing;
+    }
+
+    public static boolean isSharedMemoryRingEnabled(Context context) {
+        return ServerConfig.get(context).sharedMemoryRingEnabled;
+    }
+
+    public static void setSharedMemoryRingEnabled(Context context, boolean enabled) {
+        ServerConfig.edit(context).putBoolean(ServerConfig.PREF_IS_SHARED_MEMORY_RING_ENABLED, enabled).apply();
+    }
+
+    public static int getMaxClients(Context context) {
+        return ServerConfig.get(context).maxClients;
+    }
+
+    public static void setMaxClients(Context context, int maxClients) {
+        ServerConfig.edit(context).putInt(ServerConfig.PREF_MAX_CLIENTS, maxClients).apply();
+    }
+
+    public static String getExternalSourcePath(Context context) {
+        return ServerConfig.get(context).externalSourcePath;
+    }
+
+    public static void setExternalSourcePath(Context context, String path) {
+        ServerConfig.edit(context).putString(ServerConfig.PREF_EXTERNAL_SOURCE_PATH, path).apply();
+    }
+
+    public static boolean isLowLatencyWifiEnabled(Context context) {
+        return ServerConfig.get(context).lowLatencyWifiEnabled;
+    }
+
+    public static void setLowLatencyWifiEnabled(Context context, boolean enabled) {
+        ServerConfig.edit(context).putBoolean(ServerConfig.PREF_IS_LOW_LATENCY_WIFI_ENABLED, enabled).apply();
+    }
+
+    public static String getPipelineStages(Context context) {
+        return ServerConfig.get(context).pipelineStages;
     }
 
-    private static SharedPreferences getPrefs(Context context) {
-        return context.getSharedPreferences(context.getPackageName() + "_preferences", MODE_PRIVATE);
+    public static void setPipelineStages(Context context, String stages) {
+        ServerConfig.edit(context).putString(ServerConfig.PREF_PIPELINE_STAGES, stages).apply();
     }
 
     // Notifications
@@ -422,15 +1347,24 @@ public class GNSSServerService extends Service {
                 );
 
 
-                if (lastServerResponse.hasLocationUpdate()) {
+                LocationProto.ServerResponse response = lastResponse;
+                if (response.hasLocationUpdate()) {
                     content += getString(R.string.notification_divider) + String.format(
                             getString(R.string.notification_age),
-                            (System.currentTimeMillis() - lastServerResponse.getLocationUpdate().getTimestamp()) / 1000.0
+                            (System.currentTimeMillis() - response.getLocationUpdate().getTimestamp()) / 1000.0
                     );
                 }
             } else {
                 content += getString(R.string.notification_gnss_inactive);
             }
+
+            ThermalGovernor.Tier tier = thermalGovernor.getTier();
+            if (tier != ThermalGovernor.Tier.NORMAL) {
+                content += getString(R.string.notification_divider) + String.format(
+                        getString(R.string.notification_governor_tier),
+                        tier.name().toLowerCase(Locale.ROOT)
+                );
+            }
         } else {
             content = serverStartError;
         }
@@ -453,86 +1387,82 @@ public class GNSSServerService extends Service {
     }
 
     public int getSatelliteCount() {
+        if (providerID == PROVIDER_ID_EXTERNAL) {
+            return externalSatellites;
+        }
         if (gnssStatus == null) {
             return 0;
         }
         return gnssStatus.getSatelliteCount();
     }
 
-    private class ClientHandler implements Runnable {
-        private static final long HEARTBEAT_TIMEOUT = 3000;
-        private static final byte HEARTBEAT_PACKET = 0x01; // Expected heartbeat packet
-        private static final long RESPONSE_TIMING_REQUIREMENT = 1000;
-
-        private final Socket socket;
+    private class ClientHandler implements Runnable, ClientSession.Listener {
+        private final int id = nextClientId.incrementAndGet();
+        private final FrameChannel channel;
+        private final ClientSession session;
+        private final InetAddress remoteAddress;
         private final String clientAddress;
-        private long lastHeartbeatTime;
-        private long lastResponseTime = 0;
-
-        public ClientHandler(Socket socket) {
-            this.socket = socket;
-            this.clientAddress = socket.getRemoteSocketAddress().toString();
-            this.lastHeartbeatTime = System.currentTimeMillis();
-
-            Log.i(TAG, "New client connected: " + clientAddress);
+        // Null for local clients, which are not tied to a network interface
+        private final String localAddress;
+        private final AtomicLong bytesSent;
+        // Update interval the client is happy with, 0 means as fast as possible
+        private volatile long requestedInterval = 0;
+        // Fixes are not streamed to clients reading them from the shared memory ring
+        private volatile boolean ringMode = false;
+        // Client receives satellite details, see SatelliteStatusEncoder
+        private volatile boolean satelliteDetail = false;
+
+        public ClientHandler(FrameChannel channel) {
+            this.channel = channel;
+            this.session = new ClientSession(channel, SystemClock::elapsedRealtime, this);
+            this.remoteAddress = channel.getRemoteAddress();
+            this.clientAddress = channel.getDescription();
+            InetAddress local = channel.getLocalAddress();
+            this.localAddress = local == null ? null : local.getHostAddress();
+            this.bytesSent = localAddress == null ? null :
+                    bytesSentByAddress.computeIfAbsent(localAddress, k -> new AtomicLong());
+
+            Log.i(TAG, "New client connected: " + clientAddress + ", id " + id);
         }
 
         public String getClientAddress() {
             return clientAddress;
         }
 
+        public InetAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        public String getLocalAddress() {
+            return localAddress;
+        }
+
+        public long getRequestedInterval() {
+            return requestedInterval;
+        }
+
+        public boolean isRingMode() {
+            return ringMode;
+        }
+
+        public boolean isSatelliteDetail() {
+            return satelliteDetail;
+        }
+
         @Override
         public void run() {
             try {
-                // Set socket timeout for heartbeat detection
-                socket.setSoTimeout(1000); // timeout for reads
-                sendResponse(lastServerResponse.build());
-
-                // Keep connection alive and handle request packets
-                byte[] buffer = new byte[1];
-                while (!socket.isClosed()) {
-                    try {
-                        // Try to read request packet
-                        int result = socket.getInputStream().read(buffer);
-                        if (socket.isClosed()) {
-                            Log.i(TAG, "Client closed connection: " + clientAddress);
-                            break;
-                        }
-                        if (result > 0) {
-                            // Received data from client
-                            if (buffer[0] == HEARTBEAT_PACKET) {
-                                // Valid heartbeat packet received
-                                lastHeartbeatTime = System.currentTimeMillis();
-                                Log.v(TAG, "Heartbeat received from: " + clientAddress);
-
-                                // Send response if last response was sent more than RESPONSE_TIMING_REQUIREMENT ago
-                                // so the client will be sure that the server is still alive
-                                if (lastResponseTime < lastHeartbeatTime - RESPONSE_TIMING_REQUIREMENT ||
-                                        !lastServerResponse.hasLocationUpdate()) {
-                                    sendResponse(lastServerResponse.build());
-                                }
-                                continue;
-                            } else {
-                                Log.w(TAG, "Unknown packet received from client: " + buffer[0]);
-                            }
-                        }
-                    } catch (java.net.SocketTimeoutException e) {
-                        // Heartbeat timeout will be processed after this block
-                    } catch (IOException e) {
-                        Log.i(TAG, "Client disconnected: " + clientAddress + " - " + e.getMessage());
-                        break;
-                    }
-
-                    // Check if heartbeat timeout exceeded
-                    // This will be processed after the timeout exception as well as after receiving
-                    // an unknown packet
-                    long timeSinceLastHeartbeat = System.currentTimeMillis() - lastHeartbeatTime;
-                    if (timeSinceLastHeartbeat > HEARTBEAT_TIMEOUT) {
-                        Log.w(TAG, "Heartbeat timeout for client: " + clientAddress +
-                                " (last heartbeat " + timeSinceLastHeartbeat + "ms ago)");
-                        break;
-                    }
+                sendResponse(lastResponse);
+                ClientSession.End end = session.run();
+                if (end == ClientSession.End.CLOSED_BY_CLIENT) {
+                    Log.i(TAG, "Client closed connection: " + clientAddress);
+                } else if (end == ClientSession.End.TIMED_OUT) {
+                    LivenessMonitor liveness = session.getLiveness();
+                    Log.w(TAG, "Liveness timeout for client: " + clientAddress +
+                            " (timeout " + liveness.getTimeout() + "ms, RTT " + liveness.getSmoothedRtt() + "ms)");
                 }
+            } catch (IOException e) {
+                Log.i(TAG, "Client disconnected: " + clientAddress + " - " + e.getMessage());
             } catch (Exception e) {
                 Log.e(TAG, "Error in client handler for " + clientAddress, e);
             } finally {
@@ -540,44 +1470,85 @@ public class GNSSServerService extends Service {
             }
         }
 
+        @Override
+        public void onPing() {
+            FlightRecorder.record(EVENT_PING, id);
+            // Fixes are streamed on their own, the reply only has to prove the link is alive
+            sendStatus();
+        }
+
+        @Override
+        public void onPong(long smoothedRtt) {
+            FlightRecorder.record(EVENT_PONG, id, smoothedRtt);
+        }
+
+        @Override
+        public void onUpdateInterval(int interval) {
+            requestedInterval = interval;
+            Log.d(TAG, "Client " + clientAddress + " requested update interval " + interval + "ms");
+            scheduleRequestModeUpdate();
+        }
+
+        @Override
+        public void onRingMode() {
+            Log.d(TAG, "Client " + clientAddress + " switched to the shared memory ring");
+            ringMode = true;
+        }
+
+        @Override
+        public void onSatelliteDetail(boolean enabled) {
+            satelliteDetail = enabled;
+            Log.d(TAG, "Client " + clientAddress + (enabled ? " requested" : " stopped") + " satellite details");
+            if (enabled) {
+                // Also sent again after the client missed changes
+                sendResponse(createSatelliteResponse(satelliteStatusEncoder.snapshot()));
+            }
+        }
+
+        @Override
+        public void onUnknownPacket(int packet) {
+            Log.w(TAG, "Unknown packet received from client: " + packet);
+        }
+
+        @Override
+        public void onIdle() {
+            sendStatus();
+        }
+
+        private void sendStatus() {
+            sendResponse(LocationProto.ServerResponse.newBuilder()
+                    .setStatus(lastResponse.getStatus())
+                    .build());
+        }
+
         private void sendResponse(LocationProto.ServerResponse response) {
-            if (socket.isClosed()) {
+            if (channel.isClosed()) {
                 return;
             }
             try {
                 byte[] data = response.toByteArray();
-                // Send length first (4 bytes) then data
-                OutputStream output = socket.getOutputStream();
-                output.write(intToBytes(data.length));
-                output.write(data);
-                output.flush();
-
-                Log.v(TAG, "Response sent to: " + clientAddress);
+                int written = session.send(data);
+                if (bytesSent != null) {
+                    bytesSent.addAndGet(written);
+                }
 
-                lastResponseTime = System.currentTimeMillis();
+                FlightRecorder.record(EVENT_RESPONSE_SENT, id, data.length);
             } catch (IOException e) {
                 Log.w(TAG, "Error sending location update to client", e);
                 disconnect();
+                return;
             }
+            publishStats(false);
         }
 
         public void disconnect() {
             try {
-                socket.close();
+                channel.close();
             } catch (IOException e) {
-                Log.e(TAG, "Error closing client socket", e);
+                Log.e(TAG, "Error closing client connection", e);
             }
 
             onClientDisconnected(this);
         }
-
-        private byte[] intToBytes(int value) {
-            return new byte[]{
-                    (byte) (value >>> 24),
-                    (byte) (value >>> 16),
-                    (byte) (value >>> 8),
-                    (byte) value
-            };
-        }
     }
 }
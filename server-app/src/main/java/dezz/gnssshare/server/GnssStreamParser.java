@@ -0,0 +1,582 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.server;
+
+import dezz.gnssshare.shared.Metrics;
+
+/**
+ * Streaming parser for the output of an external GNSS receiver: NMEA 0183 sentences and u-blox
+ * UBX binary messages, mixed in one byte stream the way receivers send them.
+ * <p>
+ * Messages are decoded in place in the caller's buffer; only a message split between two reads is
+ * copied into a carry buffer. Every message is checked against its checksum before it is used, a
+ * failed check resynchronizes on the next byte. GGA and RMC sentences of one epoch are merged into
+ * one fix, a UBX NAV-PVT message is a complete fix by itself and takes precedence over NMEA when
+ * the receiver sends both. Fixes are reported through a single reused {@link Fix} instance, so
+ * parsing allocates nothing.
+ */
+public class GnssStreamParser {
+    public interface Listener {
+        /**
+         * The fix is reused, it is only valid during the call
+         */
+        void onFix(Fix fix);
+    }
+
+    public static final class Fix {
+        // UTC, milliseconds since the epoch
+        public long time;
+        public double latitude;
+        public double longitude;
+        public boolean hasAltitude;
+        // Above the WGS84 ellipsoid, like Android locations
+        public double altitude;
+        // Horizontal, meters
+        public float accuracy;
+        public boolean hasSpeed;
+        // m/s
+        public float speed;
+        public boolean hasBearing;
+        public float bearing;
+        public int satellites;
+
+        void clear() {
+            time = 0;
+            latitude = longitude = altitude = 0;
+            hasAltitude = hasSpeed = hasBearing = false;
+            accuracy = speed = bearing = 0;
+            satellites = 0;
+        }
+    }
+
+    // The standard says 82, some receivers go over it
+    private static final int MAX_NMEA_LENGTH = 128;
+    private static final int MAX_NMEA_FIELDS = 32;
+    // Longer messages are taken for a false sync, the large ones receivers send fit
+    private static final int MAX_UBX_PAYLOAD = 4096;
+    private static final int UBX_OVERHEAD = 8;
+    private static final byte UBX_SYNC_1 = (byte) 0xB5;
+    private static final byte UBX_SYNC_2 = 0x62;
+    private static final int UBX_CLASS_NAV = 0x01;
+    private static final int UBX_ID_NAV_PVT = 0x07;
+    private static final int NAV_PVT_LENGTH = 92;
+    // NMEA fixes are ignored for this long after a NAV-PVT fix
+    private static final long UBX_PRECEDENCE = 2000;
+    // HDOP to accuracy, meters, see NmeaEncoder on the client
+    private static final float USER_RANGE_ERROR = 5;
+    private static final double MPS_PER_KNOT = 0.514444;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final Listener listener;
+
+    private final byte[] carry = new byte[UBX_OVERHEAD + MAX_UBX_PAYLOAD];
+    private int carryLength = 0;
+
+    private final int[] fieldStart = new int[MAX_NMEA_FIELDS];
+    private final int[] fieldEnd = new int[MAX_NMEA_FIELDS];
+    private int fieldCount = 0;
+
+    private final Fix fix = new Fix();
+
+    // NMEA epoch being assembled from GGA and RMC, identified by the time of day
+    private final Fix epoch = new Fix();
+    private long epochTimeOfDay = -1;
+    private boolean epochHasGga = false;
+    private boolean epochHasRmc = false;
+    private boolean epochValid = true;
+    private boolean epochReported = false;
+    // Days since the epoch from the last RMC, GGA carries no date
+    private long lastDate = -1;
+
+    private long lastUbxFixTime = Long.MIN_VALUE;
+
+    public GnssStreamParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Parse the next chunk of the stream
+     */
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int pos = offset;
+        if (carryLength > 0) {
+            pos = completeCarry(data, pos, end);
+            if (carryLength > 0) {
+                return;
+            }
+        }
+
+        while (pos < end) {
+            byte b = data[pos];
+            if (b == '$') {
+                int lineEnd = findLineEnd(data, pos, end);
+                if (lineEnd == -1) {
+                    // Incomplete, the rest comes with the next chunk
+                    startCarry(data, pos, end);
+                    return;
+                }
+                if (lineEnd >= 0 && parseNmea(data, pos, lineEnd)) {
+                    pos = lineEnd + 1;
+                } else {
+                    pos++;
+                }
+            } else if (b == UBX_SYNC_1) {
+                int available = end - pos;
+                if (available < 6) {
+                    if (available >= 2 && data[pos + 1] != UBX_SYNC_2) {
+                        pos++;
+                    } else {
+                        startCarry(data, pos, end);
+                        return;
+                    }
+                    continue;
+                }
+                int payloadLength = readU2(data, pos + 4);
+                if (data[pos + 1] != UBX_SYNC_2 || payloadLength > MAX_UBX_PAYLOAD) {
+                    pos++;
+                    continue;
+                }
+                int total = payloadLength + UBX_OVERHEAD;
+                if (available < total) {
+                    startCarry(data, pos, end);
+                    return;
+                }
+                pos += parseUbx(data, pos, total) ? total : 1;
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    private void startCarry(byte[] data, int pos, int end) {
+        carryLength = end - pos;
+        System.arraycopy(data, pos, carry, 0, carryLength);
+    }
+
+    /**
+     * Append the bytes that complete the carried message and parse it. A broken message is
+     * dropped as a whole, scanning goes on after the bytes it took from this chunk; a '$' in a
+     * carried sentence starts a new one, as it would when the whole stream is in one chunk.
+     *
+     * @return position of the first byte not taken
+     */
+    private int completeCarry(byte[] data, int pos, int end) {
+        if (carry[0] == '$') {
+            while (pos < end) {
+                byte b = data[pos];
+                if (b != '\r' && b != '\n' && (b < 0x20 || b > 0x7E)) {
+                    // Not text, the sentence was garbage; the byte may start a UBX message
+                    carryLength = 0;
+                    return pos;
+                }
+                if (b == '$') {
+                    // The carried sentence was cut short, the next one starts here
+                    carryLength = 0;
+                }
+                carry[carryLength++] = b;
+                pos++;
+                if (b == '\n') {
+                    parseNmea(carry, 0, carryLength - 1);
+                    carryLength = 0;
+                    return pos;
+                }
+                if (carryLength >= MAX_NMEA_LENGTH) {
+                    carryLength = 0;
+                    return pos;
+                }
+            }
+            return pos;
+        }
+
+        int start = pos;
+        while (carryLength < 6 && pos < end) {
+            carry[carryLength++] = data[pos++];
+        }
+        if (carryLength < 6) {
+            if (carryLength >= 2 && carry[1] != UBX_SYNC_2) {
+                carryLength = 0;
+                return start;
+            }
+            return pos;
+        }
+        int payloadLength = readU2(carry, 4);
+        if (carry[1] != UBX_SYNC_2 || payloadLength > MAX_UBX_PAYLOAD) {
+            carryLength = 0;
+            return start;
+        }
+
+        int total = payloadLength + UBX_OVERHEAD;
+        int count = Math.min(total - carryLength, end - pos);
+        System.arraycopy(data, pos, carry, carryLength, count);
+        carryLength += count;
+        pos += count;
+        if (carryLength == total) {
+            parseUbx(carry, 0, total);
+            carryLength = 0;
+        }
+        return pos;
+    }
+
+    /**
+     * @return index of the '\n' ending the sentence, -1 if the chunk ends first, or -2 if the
+     * sentence is not valid text or another one starts before it ends
+     */
+    private static int findLineEnd(byte[] data, int pos, int end) {
+        int limit = Math.min(end, pos + MAX_NMEA_LENGTH);
+        for (int i = pos + 1; i < limit; i++) {
+            byte b = data[i];
+            if (b == '\n') {
+                return i;
+            }
+            if (b == '$' || b != '\r' && (b < 0x20 || b > 0x7E)) {
+                return -2;
+            }
+        }
+        return limit < end || limit - pos >= MAX_NMEA_LENGTH ? -2 : -1;
+    }
+
+    // NMEA
+
+    /**
+     * @param lineEnd index of the terminating '\n'
+     * @return true if the checksum is valid
+     */
+    private boolean parseNmea(byte[] data, int start, int lineEnd) {
+        int end = lineEnd;
+        if (end > start && data[end - 1] == '\r') {
+            end--;
+        }
+        // "$" + "*hh" at least
+        if (end - start < 4 || data[end - 3] != '*') {
+            Metrics.increment("server.external.nmea_errors");
+            return false;
+        }
+        int checksum = 0;
+        for (int i = start + 1; i < end - 3; i++) {
+            checksum ^= data[i];
+        }
+        if (checksum != (hexValue(data[end - 2]) << 4 | hexValue(data[end - 1]))) {
+            Metrics.increment("server.external.nmea_errors");
+            return false;
+        }
+        Metrics.increment("server.external.nmea_sentences");
+
+        splitFields(data, start + 1, end - 3);
+        // Address field is talker + type, e.g. "GPGGA" or "GNRMC"; proprietary sentences are skipped
+        if (fieldEnd[0] - fieldStart[0] != 5 || data[start + 1] == 'P') {
+            return true;
+        }
+        int type = fieldStart[0] + 2;
+        if (data[type] == 'G' && data[type + 1] == 'G' && data[type + 2] == 'A') {
+            parseGga(data);
+        } else if (data[type] == 'R' && data[type + 1] == 'M' && data[type + 2] == 'C') {
+            parseRmc(data);
+        }
+        return true;
+    }
+
+    private void splitFields(byte[] data, int start, int end) {
+        fieldCount = 0;
+        fieldStart[0] = start;
+        for (int i = start; i < end && fieldCount < MAX_NMEA_FIELDS - 1; i++) {
+            if (data[i] == ',') {
+                fieldEnd[fieldCount++] = i;
+                fieldStart[fieldCount] = i + 1;
+            }
+        }
+        fieldEnd[fieldCount++] = end;
+    }
+
+    private void parseGga(byte[] data) {
+        if (fieldCount < 12 || !startEpoch(data, 1)) {
+            return;
+        }
+        epochHasGga = true;
+        // Quality 0 is no fix
+        if (fieldEmpty(6) || data[fieldStart[6]] == '0' || !readPosition(data, 2)) {
+            epochValid = false;
+            return;
+        }
+        epoch.satellites = (int) readNumber(data, 7, 0);
+        double hdop = readNumber(data, 8, Double.NaN);
+        epoch.accuracy = Double.isNaN(hdop) ? 0 : (float) (hdop * USER_RANGE_ERROR);
+        double altitude = readNumber(data, 9, Double.NaN);
+        if (!Double.isNaN(altitude)) {
+            epoch.hasAltitude = true;
+            // Mean sea level plus geoid separation gives the ellipsoid height
+            epoch.altitude = altitude + readNumber(data, 11, 0);
+        }
+        reportEpoch();
+    }
+
+    private void parseRmc(byte[] data) {
+        if (fieldCount < 10 || !startEpoch(data, 1)) {
+            return;
+        }
+        epochHasRmc = true;
+        if (fieldEmpty(2) || data[fieldStart[2]] != 'A' || !readPosition(data, 3)) {
+            epochValid = false;
+            return;
+        }
+        double speed = readNumber(data, 7, Double.NaN);
+        if (!Double.isNaN(speed)) {
+            epoch.hasSpeed = true;
+            epoch.speed = (float) (speed * MPS_PER_KNOT);
+        }
+        double bearing = readNumber(data, 8, Double.NaN);
+        if (!Double.isNaN(bearing)) {
+            epoch.hasBearing = true;
+            epoch.bearing = (float) bearing;
+        }
+        if (fieldEnd[9] - fieldStart[9] == 6) {
+            int date = fieldStart[9];
+            int day = digits(data, date, 2);
+            int month = digits(data, date + 2, 2);
+            int year = digits(data, date + 4, 2);
+            // Two-digit year, GPS time starts in 1980
+            year += year < 80 ? 2000 : 1900;
+            lastDate = daysFromCivil(year, month, day);
+        }
+        reportEpoch();
+    }
+
+    /**
+     * Switch to the epoch of the sentence, reporting the previous one if it was left incomplete
+     *
+     * @return false if the sentence has no valid time
+     */
+    private boolean startEpoch(byte[] data, int timeField) {
+        if (fieldEnd[timeField] - fieldStart[timeField] < 6) {
+            return false;
+        }
+        int time = fieldStart[timeField];
+        long timeOfDay = digits(data, time, 2) * 3_600_000L + digits(data, time + 2, 2) * 60_000L +
+                Math.round(readNumber(data, timeField, 0) % 100 * 1000);
+        if (timeOfDay == epochTimeOfDay) {
+            return true;
+        }
+
+        // A receiver sending only one of the two sentences still gets its fixes through, an
+        // epoch late
+        if ((epochHasGga || epochHasRmc) && !epochReported && epochValid) {
+            report(epoch);
+        }
+        epochTimeOfDay = timeOfDay;
+        epochHasGga = epochHasRmc = false;
+        epochValid = true;
+        epochReported = false;
+        epoch.clear();
+        return true;
+    }
+
+    private boolean readPosition(byte[] data, int field) {
+        if (fieldEmpty(field) || fieldEmpty(field + 1) || fieldEmpty(field + 2) || fieldEmpty(field + 3)) {
+            return false;
+        }
+        // ddmm.mmmm and dddmm.mmmm
+        double latitude = readNumber(data, field, 0);
+        double longitude = readNumber(data, field + 2, 0);
+        latitude = Math.floor(latitude / 100) + latitude % 100 / 60;
+        longitude = Math.floor(longitude / 100) + longitude % 100 / 60;
+        epoch.latitude = data[fieldStart[field + 1]] == 'S' ? -latitude : latitude;
+        epoch.longitude = data[fieldStart[field + 3]] == 'W' ? -longitude : longitude;
+        return true;
+    }
+
+    private void reportEpoch() {
+        if (epochHasGga && epochHasRmc && epochValid && !epochReported) {
+            report(epoch);
+        }
+    }
+
+    private void report(Fix source) {
+        epochReported = true;
+        long date = lastDate >= 0 ? lastDate : Math.floorDiv(System.currentTimeMillis(), MILLIS_PER_DAY);
+        long time = date * MILLIS_PER_DAY + epochTimeOfDay;
+        if (time <= lastUbxFixTime + UBX_PRECEDENCE) {
+            return;
+        }
+        copy(source, fix);
+        fix.time = time;
+        listener.onFix(fix);
+    }
+
+    private boolean fieldEmpty(int field) {
+        return field >= fieldCount || fieldStart[field] == fieldEnd[field];
+    }
+
+    /**
+     * Decimal number of a field, without creating a string
+     */
+    private double readNumber(byte[] data, int field, double defaultValue) {
+        if (fieldEmpty(field)) {
+            return defaultValue;
+        }
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = data[i] == '-';
+        if (negative || data[i] == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean any = false;
+        for (; i < end; i++) {
+            byte b = data[i];
+            if (b == '.' && !fraction) {
+                fraction = true;
+            } else if (b >= '0' && b <= '9') {
+                // Digits past 17 are noise for a double anyway
+                if (mantissa < 100_000_000_000_000_000L) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (fraction) {
+                        scale++;
+                    }
+                }
+                any = true;
+            } else {
+                return defaultValue;
+            }
+        }
+        if (!any) {
+            return defaultValue;
+        }
+        double value = mantissa / POWERS_OF_TEN[Math.min(scale, POWERS_OF_TEN.length - 1)];
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17
+    };
+
+    private static int digits(byte[] data, int pos, int count) {
+        int value = 0;
+        for (int i = pos; i < pos + count; i++) {
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        return -1;
+    }
+
+    // UBX
+
+    /**
+     * @return true if the checksum is valid
+     */
+    private boolean parseUbx(byte[] data, int start, int total) {
+        int ckA = 0;
+        int ckB = 0;
+        // Class, id, length and payload
+        for (int i = start + 2; i < start + total - 2; i++) {
+            ckA = (ckA + (data[i] & 0xFF)) & 0xFF;
+            ckB = (ckB + ckA) & 0xFF;
+        }
+        if (ckA != (data[start + total - 2] & 0xFF) || ckB != (data[start + total - 1] & 0xFF)) {
+            Metrics.increment("server.external.ubx_errors");
+            return false;
+        }
+        Metrics.increment("server.external.ubx_messages");
+
+        int messageClass = data[start + 2] & 0xFF;
+        int messageId = data[start + 3] & 0xFF;
+        if (messageClass == UBX_CLASS_NAV && messageId == UBX_ID_NAV_PVT && total - UBX_OVERHEAD >= NAV_PVT_LENGTH) {
+            parseNavPvt(data, start + 6);
+        }
+        return true;
+    }
+
+    private void parseNavPvt(byte[] data, int p) {
+        int valid = data[p + 11] & 0xFF;
+        int fixType = data[p + 20] & 0xFF;
+        int flags = data[p + 21] & 0xFF;
+        // Date and time valid, 2D or 3D fix (or with dead reckoning), gnssFixOK
+        if ((valid & 0x03) != 0x03 || fixType < 2 || fixType > 4 || (flags & 0x01) == 0) {
+            return;
+        }
+
+        long days = daysFromCivil(readU2(data, p + 4), data[p + 6], data[p + 7]);
+        long time = days * MILLIS_PER_DAY + data[p + 8] * 3_600_000L + data[p + 9] * 60_000L + data[p + 10] * 1000L +
+                Math.floorDiv(readI4(data, p + 16), 1_000_000);
+
+        fix.clear();
+        fix.time = time;
+        fix.longitude = readI4(data, p + 24) * 1e-7;
+        fix.latitude = readI4(data, p + 28) * 1e-7;
+        fix.hasAltitude = fixType != 2;
+        fix.altitude = readI4(data, p + 32) / 1000.0;
+        fix.accuracy = readI4(data, p + 40) / 1000f;
+        fix.hasSpeed = true;
+        fix.speed = readI4(data, p + 60) / 1000f;
+        // Heading of motion is meaningless while standing
+        fix.hasBearing = fix.speed > 0.5f;
+        fix.bearing = readI4(data, p + 64) * 1e-5f;
+        fix.satellites = data[p + 23] & 0xFF;
+
+        lastUbxFixTime = time;
+        listener.onFix(fix);
+    }
+
+    private static int readU2(byte[] data, int pos) {
+        return (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8;
+    }
+
+    private static int readI4(byte[] data, int pos) {
+        return (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8 | (data[pos + 2] & 0xFF) << 16 | data[pos + 3] << 24;
+    }
+
+    private static void copy(Fix from, Fix to) {
+        to.time = from.time;
+        to.latitude = from.latitude;
+        to.longitude = from.longitude;
+        to.hasAltitude = from.hasAltitude;
+        to.altitude = from.altitude;
+        to.accuracy = from.accuracy;
+        to.hasSpeed = from.hasSpeed;
+        to.speed = from.speed;
+        to.hasBearing = from.hasBearing;
+        to.bearing = from.bearing;
+        to.satellites = from.satellites;
+    }
+
+    /**
+     * Days since 1970-01-01, see Howard Hinnant's "chrono-Compatible Low-Level Date Algorithms"
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
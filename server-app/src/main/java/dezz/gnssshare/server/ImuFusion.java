@@ -0,0 +1,232 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Fuses GNSS fixes with the phone's motion sensors and emits interpolated fixes at a higher rate.
+ * <p>
+ * Linear acceleration (accelerometer with gravity removed using the gyroscope) is rotated into the
+ * east/north/up frame with the rotation vector and drives the prediction step of
+ * {@link PositionKalmanFilter}; GNSS fixes correct it. All filter work happens on a dedicated
+ * handler thread.
+ */
+public class ImuFusion implements SensorEventListener {
+    private static final String TAG = "ImuFusion";
+
+    private static final double ACCELERATION_NOISE = 1.5; // m/s^2
+    private static final double MAX_ACCELERATION = 8.0; // m/s^2, anything above is a bump, not driving
+    private static final double DEFAULT_SPEED_ACCURACY = 0.5; // m/s
+    // Stop extrapolating if GNSS has been silent for this long
+    private static final long FIX_TIMEOUT_NANOS = 2_000_000_000L;
+    private static final String PROVIDER_SUFFIX = "+imu";
+
+    public interface Listener {
+        void onFusedLocation(Location location);
+    }
+
+    private final SensorManager sensorManager;
+    private final Listener listener;
+    private final long outputIntervalMillis;
+
+    private final PositionKalmanFilter filter = new PositionKalmanFilter(ACCELERATION_NOISE);
+    private final float[] rotationMatrix = new float[9];
+    private final double[] worldAccel = new double[2];
+    private boolean hasRotation = false;
+    private double accelEast = 0;
+    private double accelNorth = 0;
+
+    private Location lastFix = null;
+    private long lastFixNanos = 0;
+
+    private HandlerThread fusionThread;
+    private Handler fusionHandler;
+
+    private final Runnable outputRunnable = new Runnable() {
+        @Override
+        public void run() {
+            emitFusedLocation();
+            fusionHandler.postDelayed(this, outputIntervalMillis);
+        }
+    };
+
+    public ImuFusion(Context context, int outputRateHz, Listener listener) {
+        this.sensorManager = context.getSystemService(SensorManager.class);
+        this.listener = listener;
+        this.outputIntervalMillis = outputIntervalMillis(outputRateHz);
+    }
+
+    static long outputIntervalMillis(int outputRateHz) {
+        return Math.max(1, 1000 / Math.max(1, outputRateHz));
+    }
+
+    public void start() {
+        if (fusionThread != null) {
+            return;
+        }
+
+        fusionThread = new HandlerThread("ImuFusion");
+        fusionThread.start();
+        fusionHandler = new Handler(fusionThread.getLooper());
+
+        Sensor linearAcceleration = sensorManager.getDefaultSensor(Sensor.TYPE_LINEAR_ACCELERATION);
+        Sensor rotationVector = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        if (linearAcceleration == null || rotationVector == null) {
+            Log.w(TAG, "Motion sensors not available, fixes will only be interpolated at constant velocity");
+        } else {
+            sensorManager.registerListener(this, linearAcceleration, SensorManager.SENSOR_DELAY_GAME, fusionHandler);
+            sensorManager.registerListener(this, rotationVector, SensorManager.SENSOR_DELAY_GAME, fusionHandler);
+        }
+
+        fusionHandler.postDelayed(outputRunnable, outputIntervalMillis);
+
+        Log.d(TAG, "IMU fusion started, output interval " + outputIntervalMillis + "ms");
+    }
+
+    public void stop() {
+        if (fusionThread == null) {
+            return;
+        }
+
+        sensorManager.unregisterListener(this);
+        fusionHandler.removeCallbacksAndMessages(null);
+        fusionThread.quitSafely();
+        fusionThread = null;
+        fusionHandler = null;
+
+        filter.reset();
+        lastFix = null;
+        hasRotation = false;
+        accelEast = 0;
+        accelNorth = 0;
+
+        Log.d(TAG, "IMU fusion stopped");
+    }
+
+    public void onLocation(Location location) {
+        Handler handler = fusionHandler;
+        if (handler == null) {
+            return;
+        }
+        handler.post(() -> applyFix(new Location(location)));
+    }
+
+    private void applyFix(Location location) {
+        long fixNanos = location.getElapsedRealtimeNanos();
+
+        // No-op when IMU samples have already moved the filter past the fix, the filter then
+        // compensates the delivery latency itself
+        filter.predict(fixNanos, accelEast, accelNorth);
+        filter.updatePosition(fixNanos, location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : 10);
+
+        if (location.hasSpeed() && location.hasBearing()) {
+            filter.updateVelocity(location.getSpeed(), location.getBearing(),
+                    location.hasSpeedAccuracy() ? location.getSpeedAccuracyMetersPerSecond() : DEFAULT_SPEED_ACCURACY);
+        } else if (location.hasSpeed() && location.getSpeed() < DEFAULT_SPEED_ACCURACY) {
+            // Standing still, bearing is meaningless but the velocity is known to be zero
+            filter.updateVelocity(0, 0, DEFAULT_SPEED_ACCURACY);
+        }
+
+        lastFix = location;
+        lastFixNanos = fixNanos;
+    }
+
+    private void emitFusedLocation() {
+        if (!filter.isInitialized() || lastFix == null) {
+            return;
+        }
+
+        long nowNanos = SystemClock.elapsedRealtimeNanos();
+        if (nowNanos - lastFixNanos > FIX_TIMEOUT_NANOS) {
+            return;
+        }
+
+        Location fused = new Location(lastFix.getProvider() + PROVIDER_SUFFIX);
+        fused.setLatitude(filter.getLatitude(nowNanos, accelNorth));
+        fused.setLongitude(filter.getLongitude(nowNanos, accelEast));
+        fused.setTime(lastFix.getTime() + (nowNanos - lastFixNanos) / 1_000_000);
+        fused.setElapsedRealtimeNanos(nowNanos);
+        fused.setAccuracy((float) filter.getHorizontalAccuracy());
+        fused.setSpeed((float) filter.getSpeed());
+        if (filter.getSpeed() >= DEFAULT_SPEED_ACCURACY) {
+            fused.setBearing((float) filter.getBearing());
+        } else if (lastFix.hasBearing()) {
+            fused.setBearing(lastFix.getBearing());
+        }
+        if (lastFix.hasAltitude()) {
+            fused.setAltitude(lastFix.getAltitude());
+        }
+
+        listener.onFusedLocation(fused);
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        switch (event.sensor.getType()) {
+            case Sensor.TYPE_ROTATION_VECTOR -> {
+                SensorManager.getRotationMatrixFromVector(rotationMatrix, event.values);
+                hasRotation = true;
+            }
+            case Sensor.TYPE_LINEAR_ACCELERATION -> {
+                if (!hasRotation) {
+                    return;
+                }
+
+                filter.predict(event.timestamp, accelEast, accelNorth);
+                toWorldFrame(rotationMatrix, event.values, worldAccel);
+                accelEast = worldAccel[0];
+                accelNorth = worldAccel[1];
+            }
+        }
+    }
+
+    /**
+     * Rotates a device frame linear acceleration into {east, north} and clamps bumps
+     */
+    static void toWorldFrame(float[] rotationMatrix, float[] values, double[] out) {
+        // Device frame to world frame (X east, Y north, Z up)
+        float x = values[0];
+        float y = values[1];
+        float z = values[2];
+        double east = rotationMatrix[0] * x + rotationMatrix[1] * y + rotationMatrix[2] * z;
+        double north = rotationMatrix[3] * x + rotationMatrix[4] * y + rotationMatrix[5] * z;
+
+        double magnitude = Math.hypot(east, north);
+        if (magnitude > MAX_ACCELERATION) {
+            east *= MAX_ACCELERATION / magnitude;
+            north *= MAX_ACCELERATION / magnitude;
+        }
+        out[0] = east;
+        out[1] = north;
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+}
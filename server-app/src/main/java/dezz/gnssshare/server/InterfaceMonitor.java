@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Tracks the Wi-Fi interfaces clients can connect to and their IPv4 addresses.
+ * <p>
+ * Interfaces are re-enumerated on a background thread only when connectivity reports a change:
+ * Wi-Fi link properties for the client mode interface, the tethering broadcast for the hotspot,
+ * which is not a {@link Network} of its own. The listener is called on the main thread and only
+ * when the snapshot actually differs from the previous one.
+ */
+public class InterfaceMonitor {
+    private static final String TAG = "InterfaceMonitor";
+
+    // Hidden ConnectivityManager.ACTION_TETHER_STATE_CHANGED
+    private static final String ACTION_TETHER_STATE_CHANGED = "android.net.conn.TETHER_STATE_CHANGED";
+    // Callbacks usually come in bursts, enumerate once they settle
+    private static final long REFRESH_DELAY = 200;
+
+    public static final class Interface {
+        public final String name;
+        public final List<String> addresses;
+
+        Interface(String name, List<String> addresses) {
+            this.name = name;
+            this.addresses = Collections.unmodifiableList(addresses);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Interface other)) {
+                return false;
+            }
+            return name.equals(other.name) && addresses.equals(other.addresses);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, addresses);
+        }
+    }
+
+    public interface Listener {
+        void onInterfacesChanged(List<Interface> interfaces);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final ConnectivityManager connectivityManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private HandlerThread thread = null;
+    private volatile Handler handler = null;
+    // Accessed on the monitor thread only
+    private List<Interface> snapshot = null;
+
+    private final Runnable refreshRunnable = this::refresh;
+
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(@NonNull Network network) {
+            scheduleRefresh();
+        }
+
+        @Override
+        public void onLinkPropertiesChanged(@NonNull Network network, @NonNull LinkProperties linkProperties) {
+            scheduleRefresh();
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            scheduleRefresh();
+        }
+    };
+
+    private final BroadcastReceiver tetherReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            scheduleRefresh();
+        }
+    };
+
+    public InterfaceMonitor(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        this.connectivityManager = context.getSystemService(ConnectivityManager.class);
+    }
+
+    public void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+
+        // A car Wi-Fi network usually has no internet access, but clients are still there
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
+                .removeCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        connectivityManager.registerNetworkCallback(request, networkCallback, handler);
+        context.registerReceiver(tetherReceiver, new IntentFilter(ACTION_TETHER_STATE_CHANGED), null, handler);
+
+        // The listener gets the current state even if nothing changes later
+        snapshot = null;
+        handler.post(refreshRunnable);
+    }
+
+    public void stop() {
+        if (thread == null) {
+            return;
+        }
+        connectivityManager.unregisterNetworkCallback(networkCallback);
+        context.unregisterReceiver(tetherReceiver);
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+        // Own handler, only snapshots not yet delivered are dropped
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private void scheduleRefresh() {
+        // A callback may still arrive after stop()
+        Handler handler = this.handler;
+        if (handler == null) {
+            return;
+        }
+        handler.removeCallbacks(refreshRunnable);
+        handler.postDelayed(refreshRunnable, REFRESH_DELAY);
+    }
+
+    private void refresh() {
+        List<Interface> interfaces = enumerate();
+        if (interfaces.equals(snapshot)) {
+            return;
+        }
+        snapshot = interfaces;
+        Log.d(TAG, "Interfaces changed: " + interfaces.size() + " with IPv4 addresses");
+
+        List<Interface> result = Collections.unmodifiableList(interfaces);
+        mainHandler.post(() -> listener.onInterfacesChanged(result));
+    }
+
+    private static List<Interface> enumerate() {
+        List<Interface> result = new ArrayList<>();
+        try {
+            for (NetworkInterface intf : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                String name = intf.getDisplayName();
+                if (!name.startsWith("wlan")) {
+                    continue;
+                }
+
+                List<String> addresses = new ArrayList<>();
+                for (InetAddress addr : Collections.list(intf.getInetAddresses())) {
+                    if (addr.isLoopbackAddress()) {
+                        continue;
+                    }
+                    String sAddr = addr.getHostAddress();
+                    if (sAddr == null || sAddr.contains(":")) {
+                        continue;
+                    }
+                    addresses.add(sAddr);
+                }
+                if (!addresses.isEmpty()) {
+                    Collections.sort(addresses);
+                    result.add(new Interface(name, addresses));
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to enumerate network interfaces", e);
+        }
+        result.sort((a, b) -> a.name.compareTo(b.name));
+        return result;
+    }
+}
@@ -23,12 +23,14 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.provider.Settings;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.RadioGroup;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -41,12 +43,11 @@ import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
 
 import java.io.File;
-import java.io.IOException;
-import java.net.InetAddress;
-import java.net.NetworkInterface;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import dezz.gnssshare.shared.LogExporter;
 import dezz.gnssshare.shared.VersionGetter;
@@ -75,16 +76,42 @@ public class MainActivity extends AppCompatActivity {
     private RadioGroup locationSourceSwitch;
 
     private int getLocationSourceSwitchState() {
-        return locationSourceSwitch.getCheckedRadioButtonId() % 3;
+        int checkedId = locationSourceSwitch.getCheckedRadioButtonId();
+        if (checkedId == R.id.radioButton1) {
+            return 0;
+        } else if (checkedId == R.id.radioButton3) {
+            return 2;
+        } else if (checkedId == R.id.radioButton4) {
+            return 3;
+        } else if (checkedId == R.id.radioButton5) {
+            return 4;
+        }
+        return 1;
     }
 
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
-    private final Runnable fillInterfaceListRunnable = new Runnable() {
-        @Override
-        public void run() {
-            fillInterfaceList();
-            mainHandler.postDelayed(this, 1000);
-        }
+    private int getLocationSourceButtonId(int providerId) {
+        return switch (providerId) {
+            case 0 -> R.id.radioButton1;
+            case 2 -> R.id.radioButton3;
+            case 3 -> R.id.radioButton4;
+            case 4 -> R.id.radioButton5;
+            default -> R.id.radioButton2;
+        };
+    }
+
+    private InterfaceMonitor interfaceMonitor;
+    // Latest state pushed by the monitor and the service, the text is rebuilt when either changes
+    private List<InterfaceMonitor.Interface> interfaces = Collections.emptyList();
+    private Map<String, GNSSServerService.InterfaceStats> interfaceStats = Collections.emptyMap();
+
+    private final InterfaceMonitor.Listener interfaceListener = interfaces -> {
+        this.interfaces = interfaces;
+        fillInterfaceList();
+    };
+
+    private final GNSSServerService.StatsListener statsListener = stats -> {
+        this.interfaceStats = stats;
+        fillInterfaceList();
     };
 
     private String appVersion = "<unknown>";
@@ -98,6 +125,7 @@ public class MainActivity extends AppCompatActivity {
         appVersion = VersionGetter.getAppVersionName(this);
 
         initializeViews();
+        interfaceMonitor = new InterfaceMonitor(this, interfaceListener);
 
         if (GNSSServerService.isServiceEnabled(this) && !GNSSServerService.isServiceRunning()) {
             startGNSSService();
@@ -111,14 +139,17 @@ public class MainActivity extends AppCompatActivity {
         updateUIState(GNSSServerService.isServiceEnabled(this));
         updatePermissionsStatus();
 
-        mainHandler.post(this.fillInterfaceListRunnable);
+        fillInterfaceList();
+        interfaceMonitor.start();
+        GNSSServerService.setStatsListener(statsListener);
     }
 
     @Override
     protected void onStop() {
         super.onStop();
 
-        mainHandler.removeCallbacks(this.fillInterfaceListRunnable);
+        GNSSServerService.setStatsListener(null);
+        interfaceMonitor.stop();
     }
 
     private void initializeViews() {
@@ -138,72 +169,86 @@ public class MainActivity extends AppCompatActivity {
         stopServiceButton.setOnClickListener(v -> stopGNSSService());
         findViewById(R.id.exportLogsButton).setOnClickListener(v -> exportLogs("gnss-server"));
 
-        locationSourceSwitch.setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener() {
-        @Override
-        public void onCheckedChanged(RadioGroup group, int checkedId) {
-            // This method is called when the checked RadioButton in the RadioGroup changes.
-            // 'group' is the RadioGroup itself.
-            // 'checkedId' is the resource ID of the newly checked RadioButton.
-
-            // You can find the selected RadioButton using its ID:
-            // RadioButton selectedRadioButton = findViewById(checkedId);
-
-            // if (selectedRadioButton != null) {
-                // Perform actions based on the selected RadioButton
-                // String selectedText = selectedRadioButton.getText().toString();
-                // Example: Display a Toast message
-                // Toast.makeText(MainActivity.this, "Selected: " + selectedText, Toast.LENGTH_SHORT).show();
-
-                // You can also use a switch statement to handle specific RadioButtons
-                
-            // }
-        if (GNSSServerService.isServiceRunning()) {
-            stopGNSSService();
-            startGNSSService();
-        }
-        }
-    });
+        CheckBox imuFusionCheckBox = findViewById(R.id.imuFusionCheckBox);
+        imuFusionCheckBox.setChecked(GNSSServerService.isImuFusionEnabled(this));
+        imuFusionCheckBox.setOnCheckedChangeListener((v, isChecked) -> {
+            // Applied by the running service
+            GNSSServerService.setImuFusionEnabled(this, isChecked);
+        });
+
+        CheckBox significanceFilterCheckBox = findViewById(R.id.significanceFilterCheckBox);
+        significanceFilterCheckBox.setChecked(GNSSServerService.isSignificanceFilterEnabled(this));
+        significanceFilterCheckBox.setOnCheckedChangeListener((v, isChecked) -> {
+            // Applied by the running service
+            GNSSServerService.setSignificanceFilterEnabled(this, isChecked);
+        });
+
+        CheckBox lowLatencyWifiCheckBox = findViewById(R.id.lowLatencyWifiCheckBox);
+        lowLatencyWifiCheckBox.setChecked(GNSSServerService.isLowLatencyWifiEnabled(this));
+        lowLatencyWifiCheckBox.setOnCheckedChangeListener((v, isChecked) -> {
+            // Applied by the running service
+            GNSSServerService.setLowLatencyWifiEnabled(this, isChecked);
+        });
+
+        CheckBox sharedMemoryRingCheckBox = findViewById(R.id.sharedMemoryRingCheckBox);
+        sharedMemoryRingCheckBox.setChecked(GNSSServerService.isSharedMemoryRingEnabled(this));
+        sharedMemoryRingCheckBox.setOnCheckedChangeListener((v, isChecked) -> {
+            GNSSServerService.setSharedMemoryRingEnabled(this, isChecked);
+            if (GNSSServerService.isServiceRunning()) {
+                stopGNSSService();
+                startGNSSService();
+            }
+        });
+
+        locationSourceSwitch.check(getLocationSourceButtonId(GNSSServerService.getProviderId(this)));
+        // The running service switches providers without dropping clients
+        locationSourceSwitch.setOnCheckedChangeListener((group, checkedId) ->
+                GNSSServerService.setProviderId(this, getLocationSourceSwitchState()));
+
+        EditText externalSourceEdit = findViewById(R.id.externalSourceEdit);
+        externalSourceEdit.setText(GNSSServerService.getExternalSourcePath(this));
+        externalSourceEdit.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                GNSSServerService.setExternalSourcePath(MainActivity.this, s.toString());
+            }
+
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+        });
     }
 
     private void fillInterfaceList() {
         StringBuilder sb = new StringBuilder();
-        try {
-            List<NetworkInterface> interfaces = Collections.list(NetworkInterface.getNetworkInterfaces());
-            for (NetworkInterface intf : interfaces) {
-                String name = intf.getDisplayName();
-                if (!name.startsWith("wlan")) {
-                    continue;
-                }
-
-                boolean nameWasShown = false;
-                for (InetAddress addr : Collections.list(intf.getInetAddresses())) {
-                    if (addr.isLoopbackAddress()) {
-                        continue;
-                    }
-                    String sAddr = addr.getHostAddress();
-                    if (sAddr == null || sAddr.contains(":")) {
-                        continue;
-                    }
-                    if (!nameWasShown) {
-                        String displayName = switch (name) {
-                            case "wlan0" ->
-                                    String.format("%s (%s)", name, getString(R.string.interface_wifi));
-                            case "wlan1" ->
-                                    String.format("%s (%s)", name, getString(R.string.interface_hotspot));
-                            default -> name;
-                        };
-                        sb.append("  • ");
-                        sb.append(displayName);
-                        sb.append(":\n");
-                        nameWasShown = true;
-                    }
-                    sb.append("    - ");
-                    sb.append(sAddr);
-                    sb.append("\n");
+        for (InterfaceMonitor.Interface intf : interfaces) {
+            String displayName = switch (intf.name) {
+                case "wlan0" ->
+                        String.format("%s (%s)", intf.name, getString(R.string.interface_wifi));
+                case "wlan1" ->
+                        String.format("%s (%s)", intf.name, getString(R.string.interface_hotspot));
+                default -> intf.name;
+            };
+            sb.append("  • ");
+            sb.append(displayName);
+            sb.append(":\n");
+
+            for (String address : intf.addresses) {
+                sb.append("    - ");
+                sb.append(address);
+                GNSSServerService.InterfaceStats stats = interfaceStats.get(address);
+                if (stats != null) {
+                    sb.append(" (");
+                    sb.append(String.format(getString(R.string.interface_stats),
+                            stats.clients, formatRate(stats.bytesPerSecond)));
+                    sb.append(")");
                 }
+                sb.append("\n");
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to fill interface list", e);
         }
 
         if (sb.length() == 0) {
@@ -215,13 +260,18 @@ public class MainActivity extends AppCompatActivity {
         technicalDetailsText.setText(String.format(getString(R.string.technical_details), sb));
     }
 
+    private static String formatRate(long bytesPerSecond) {
+        if (bytesPerSecond < 1024) {
+            return bytesPerSecond + " B/s";
+        }
+        return String.format(Locale.US, "%.1f KB/s", bytesPerSecond / 1024.0);
+    }
+
     private void startGNSSService() {
         // Mark service as permanently enabled
         GNSSServerService.setServiceEnabled(this, true);
 
         Intent serviceIntent = new Intent(this, GNSSServerService.class);
-        //serviceIntent.putExtra("value", getLocationSourceSwitchState());
-        serviceIntent.putExtra("providerId", getLocationSourceSwitchState());
         startForegroundService(serviceIntent);
 
         // isServiceRunning = true;
@@ -362,38 +412,42 @@ public class MainActivity extends AppCompatActivity {
      * Export logs to a file and share it
      */
     private void exportLogs(String appName) {
+        Button exportLogsButton = findViewById(R.id.exportLogsButton);
+        exportLogsButton.setEnabled(false);
+
         // Show progress
         Toast.makeText(this, dezz.gnssshare.logexporter.R.string.export_logs_in_progress, Toast.LENGTH_SHORT).show();
 
-        // Run in background to avoid blocking UI
-        new Thread(() -> {
-            try {
-                // Export logs to a file
-                File logFile = LogExporter.exportLogs(this, appName);
-
-                // Clean up old logs
-                LogExporter.cleanupOldLogs(this, appName);
-
-                // Update UI on main thread
-                runOnUiThread(() -> {
-                    if (logFile != null) {
-                        // Share the log file
-                        shareLogFile(logFile);
-                        Toast.makeText(this, dezz.gnssshare.logexporter.R.string.export_logs_success, Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(this, dezz.gnssshare.logexporter.R.string.export_logs_no_logs, Toast.LENGTH_SHORT).show();
-                    }
-                });
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error exporting logs", e);
-                runOnUiThread(() ->
-                        Toast.makeText(this,
-                                String.format(getString(dezz.gnssshare.logexporter.R.string.export_logs_error), e.getMessage()),
-                                Toast.LENGTH_LONG).show()
-                );
+        // Runs in background, callbacks come on the main thread
+        LogExporter.exportLogsAsync(this, appName, new LogExporter.Callback() {
+            @Override
+            public void onProgress(long bytesWritten) {
+                exportLogsButton.setText(String.format(
+                        getString(dezz.gnssshare.logexporter.R.string.export_logs_progress),
+                        bytesWritten / (1024 * 1024.0)));
+            }
+
+            @Override
+            public void onComplete(File logFile) {
+                exportLogsButton.setText(dezz.gnssshare.logexporter.R.string.export_logs);
+                exportLogsButton.setEnabled(true);
+                if (isDestroyed()) {
+                    return;
+                }
+                // Share the log file
+                shareLogFile(logFile);
+                Toast.makeText(MainActivity.this, dezz.gnssshare.logexporter.R.string.export_logs_success, Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                exportLogsButton.setText(dezz.gnssshare.logexporter.R.string.export_logs);
+                exportLogsButton.setEnabled(true);
+                Toast.makeText(MainActivity.this,
+                        String.format(getString(dezz.gnssshare.logexporter.R.string.export_logs_error), e.getMessage()),
+                        Toast.LENGTH_LONG).show();
             }
-        }).start();
+        });
     }
 
     /**
@@ -410,7 +464,7 @@ public class MainActivity extends AppCompatActivity {
 
             // Create share intent
             Intent shareIntent = new Intent(Intent.ACTION_SEND);
-            shareIntent.setType("text/plain");
+            shareIntent.setType("application/gzip");
             shareIntent.putExtra(Intent.EXTRA_STREAM, fileUri);
             shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 
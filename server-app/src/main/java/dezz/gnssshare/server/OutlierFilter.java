@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.location.Location;
+import android.util.Log;
+
+/**
+ * Rejects fixes that are malformed or physically implausible.
+ * <p>
+ * Besides range checks, a fix is an outlier when reaching it from the last accepted fix would
+ * take a speed no car can do, after both fixes' accuracy has been allowed for. Such jumps happen
+ * when a provider briefly snaps to a wrong position, e.g. a Wi-Fi based network fix.
+ */
+public class OutlierFilter implements FixStage {
+    private static final String TAG = "OutlierFilter";
+
+    private static final float MAX_ACCURACY = 1000;
+    private static final float MAX_SPEED = 100; // m/s
+    // After this many rejections in a row the last accepted fix is assumed to be the wrong one
+    private static final int MAX_CONSECUTIVE_REJECTS = 5;
+
+    private Location lastAccepted = null;
+    private int consecutiveRejects = 0;
+
+    @Override
+    public synchronized boolean process(FixPipeline.Fix fix) {
+        Location location = fix.location;
+
+        if (!isValid(location)) {
+            Log.w(TAG, "Invalid fix rejected: " + location);
+            return false;
+        }
+
+        if (lastAccepted != null && isJump(location) && consecutiveRejects < MAX_CONSECUTIVE_REJECTS) {
+            consecutiveRejects++;
+            Log.w(TAG, "Outlier rejected, " + location.distanceTo(lastAccepted) + "m from the last fix");
+            return false;
+        }
+
+        lastAccepted = location;
+        consecutiveRejects = 0;
+        return true;
+    }
+
+    private static boolean isValid(Location location) {
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        if (Double.isNaN(latitude) || Double.isNaN(longitude) ||
+                Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            return false;
+        }
+        if (latitude == 0 && longitude == 0) {
+            return false;
+        }
+        return !location.hasAccuracy() || location.getAccuracy() <= MAX_ACCURACY;
+    }
+
+    private boolean isJump(Location location) {
+        float seconds = Math.abs(location.getElapsedRealtimeNanos() - lastAccepted.getElapsedRealtimeNanos()) / 1e9f;
+        float slack = (location.hasAccuracy() ? location.getAccuracy() : 0) +
+                (lastAccepted.hasAccuracy() ? lastAccepted.getAccuracy() : 0);
+        return location.distanceTo(lastAccepted) - slack > MAX_SPEED * Math.max(seconds, 1);
+    }
+}
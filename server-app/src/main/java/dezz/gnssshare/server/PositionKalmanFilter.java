@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+/**
+ * Constant-acceleration-input Kalman filter over a local east/north plane.
+ * <p>
+ * Each axis has a {position, velocity} state that is propagated with world-frame linear
+ * acceleration from the IMU and corrected with GNSS position and velocity measurements. The two
+ * axes are independent, so the covariance of each one is just a symmetric 2x2 matrix. The class
+ * has no Android dependencies so it can be driven from recorded traces.
+ */
+class PositionKalmanFilter {
+    private static final double EARTH_RADIUS = 6371008.8;
+    // Re-anchor the local plane when the position drifts this far from its origin
+    private static final double MAX_ORIGIN_DISTANCE = 5000;
+
+    private static final int EAST = 0;
+    private static final int NORTH = 1;
+
+    private final double accelerationVariance;
+
+    private final double[] position = new double[2];
+    private final double[] velocity = new double[2];
+    // Covariance per axis: [pp, pv, vv]
+    private final double[][] covariance = new double[2][3];
+
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerDegreeLatitude;
+    private double metersPerDegreeLongitude;
+
+    private long timeNanos;
+    private boolean initialized = false;
+
+    /**
+     * @param accelerationNoise Standard deviation of the acceleration input, m/s^2
+     */
+    PositionKalmanFilter(double accelerationNoise) {
+        this.accelerationVariance = accelerationNoise * accelerationNoise;
+    }
+
+    boolean isInitialized() {
+        return initialized;
+    }
+
+    long getTimeNanos() {
+        return timeNanos;
+    }
+
+    void reset() {
+        initialized = false;
+    }
+
+    /**
+     * Propagate the state to {@code timeNanos} assuming {@code accelEast}/{@code accelNorth} were
+     * constant since the previous step.
+     */
+    void predict(long timeNanos, double accelEast, double accelNorth) {
+        if (!initialized || timeNanos <= this.timeNanos) {
+            return;
+        }
+
+        double dt = (timeNanos - this.timeNanos) / 1e9;
+        predictAxis(EAST, dt, accelEast);
+        predictAxis(NORTH, dt, accelNorth);
+        this.timeNanos = timeNanos;
+    }
+
+    private void predictAxis(int axis, double dt, double accel) {
+        position[axis] += velocity[axis] * dt + 0.5 * accel * dt * dt;
+        velocity[axis] += accel * dt;
+
+        double[] p = covariance[axis];
+        double dt2 = dt * dt;
+        double q = accelerationVariance;
+        double pp = p[0] + 2 * dt * p[1] + dt2 * p[2] + q * dt2 * dt2 / 4;
+        double pv = p[1] + dt * p[2] + q * dt2 * dt / 2;
+        double vv = p[2] + q * dt2;
+        p[0] = pp;
+        p[1] = pv;
+        p[2] = vv;
+    }
+
+    /**
+     * Correct the state with a position measured at {@code timeNanos}. IMU samples usually move the
+     * filter past the fix before it is delivered, then the measurement is carried forward to the
+     * filter time along the current velocity, with the velocity uncertainty added to its variance.
+     */
+    void updatePosition(long timeNanos, double latitude, double longitude, double accuracy) {
+        double variance = Math.max(accuracy * accuracy, 1.0);
+
+        if (!initialized) {
+            setOrigin(latitude, longitude);
+            for (int axis = EAST; axis <= NORTH; axis++) {
+                position[axis] = 0;
+                velocity[axis] = 0;
+                covariance[axis][0] = variance;
+                covariance[axis][1] = 0;
+                covariance[axis][2] = 100;
+            }
+            this.timeNanos = timeNanos;
+            initialized = true;
+            return;
+        }
+
+        double lag = Math.max(0, (this.timeNanos - timeNanos) / 1e9);
+        double east = (longitude - originLongitude) * metersPerDegreeLongitude + velocity[EAST] * lag;
+        double north = (latitude - originLatitude) * metersPerDegreeLatitude + velocity[NORTH] * lag;
+        updatePositionAxis(EAST, east, variance + covariance[EAST][2] * lag * lag);
+        updatePositionAxis(NORTH, north, variance + covariance[NORTH][2] * lag * lag);
+
+        if (Math.hypot(position[EAST], position[NORTH]) > MAX_ORIGIN_DISTANCE) {
+            double currentLatitude = getLatitude();
+            double currentLongitude = getLongitude();
+            setOrigin(currentLatitude, currentLongitude);
+            position[EAST] = 0;
+            position[NORTH] = 0;
+        }
+    }
+
+    private void updatePositionAxis(int axis, double measurement, double variance) {
+        double[] p = covariance[axis];
+        double innovation = measurement - position[axis];
+        double s = p[0] + variance;
+        double kp = p[0] / s;
+        double kv = p[1] / s;
+
+        position[axis] += kp * innovation;
+        velocity[axis] += kv * innovation;
+
+        double pp = (1 - kp) * p[0];
+        double pv = (1 - kp) * p[1];
+        double vv = p[2] - kv * p[1];
+        p[0] = pp;
+        p[1] = pv;
+        p[2] = vv;
+    }
+
+    void updateVelocity(double speed, double bearingDegrees, double accuracy) {
+        if (!initialized) {
+            return;
+        }
+
+        double variance = Math.max(accuracy * accuracy, 0.01);
+        double bearing = Math.toRadians(bearingDegrees);
+        updateVelocityAxis(EAST, speed * Math.sin(bearing), variance);
+        updateVelocityAxis(NORTH, speed * Math.cos(bearing), variance);
+    }
+
+    private void updateVelocityAxis(int axis, double measurement, double variance) {
+        double[] p = covariance[axis];
+        double innovation = measurement - velocity[axis];
+        double s = p[2] + variance;
+        double kp = p[1] / s;
+        double kv = p[2] / s;
+
+        position[axis] += kp * innovation;
+        velocity[axis] += kv * innovation;
+
+        double pp = p[0] - kp * p[1];
+        double pv = p[1] - kp * p[2];
+        double vv = (1 - kv) * p[2];
+        p[0] = pp;
+        p[1] = pv;
+        p[2] = vv;
+    }
+
+    private void setOrigin(double latitude, double longitude) {
+        originLatitude = latitude;
+        originLongitude = longitude;
+        metersPerDegreeLatitude = Math.toRadians(1) * EARTH_RADIUS;
+        metersPerDegreeLongitude = metersPerDegreeLatitude * Math.cos(Math.toRadians(latitude));
+    }
+
+    double getLatitude() {
+        return originLatitude + position[NORTH] / metersPerDegreeLatitude;
+    }
+
+    double getLongitude() {
+        return originLongitude + position[EAST] / metersPerDegreeLongitude;
+    }
+
+    /**
+     * Latitude extrapolated to {@code timeNanos} without changing the filter state.
+     */
+    double getLatitude(long timeNanos, double accelNorth) {
+        return originLatitude + extrapolate(NORTH, timeNanos, accelNorth) / metersPerDegreeLatitude;
+    }
+
+    /**
+     * Longitude extrapolated to {@code timeNanos} without changing the filter state.
+     */
+    double getLongitude(long timeNanos, double accelEast) {
+        return originLongitude + extrapolate(EAST, timeNanos, accelEast) / metersPerDegreeLongitude;
+    }
+
+    private double extrapolate(int axis, long timeNanos, double accel) {
+        double dt = Math.max(0, (timeNanos - this.timeNanos) / 1e9);
+        return position[axis] + velocity[axis] * dt + 0.5 * accel * dt * dt;
+    }
+
+    double getSpeed() {
+        return Math.hypot(velocity[EAST], velocity[NORTH]);
+    }
+
+    double getBearing() {
+        double bearing = Math.toDegrees(Math.atan2(velocity[EAST], velocity[NORTH]));
+        return bearing < 0 ? bearing + 360 : bearing;
+    }
+
+    double getHorizontalAccuracy() {
+        return Math.sqrt(Math.max(covariance[EAST][0], covariance[NORTH][0]));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.server;
+
+import android.location.GnssStatus;
+
+import java.util.Arrays;
+
+import dezz.gnssshare.proto.LocationProto;
+
+/**
+ * Turns GNSS status callbacks into compact {@link LocationProto.SatelliteStatus} messages.
+ * <p>
+ * Values are rounded to what the client shows, and C/N0, which flickers by a dB or two from one
+ * callback to the next, changes only when it has moved by {@link #CN0_DEADBAND}. A callback
+ * produces a message only for the signals whose values changed, and each listed value is a small
+ * difference to the previous one. A typical 1 Hz update is a few dozen bytes instead of several hundred for the
+ * full constellation. See location.proto for the format.
+ */
+public class SatelliteStatusEncoder {
+    public static final int FLAG_USED_IN_FIX = 1;
+
+    // Signals below this frequency (L5, E5a, B2a...) get the lower band bit in their key
+    private static final float LOWER_BAND_LIMIT_HZ = 1.3e9f;
+    // dB-Hz
+    private static final int CN0_DEADBAND = 2;
+
+    // Current snapshot, sorted by key
+    private int[] keys = new int[0];
+    private int[] cn0 = new int[0];
+    private int[] elevation = new int[0];
+    private int[] azimuth = new int[0];
+    private int[] flags = new int[0];
+    private int count = 0;
+    private int sequence = 0;
+
+    /**
+     * @return changes since the previous call, or null if nothing changed
+     */
+    public synchronized LocationProto.SatelliteStatus update(GnssStatus status) {
+        int n = status.getSatelliteCount();
+        // Key in the high half, index in the low half: sorting orders the signals by key
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (long) key(status, i) << 32 | i;
+        }
+        Arrays.sort(order);
+
+        int[] newKeys = new int[n];
+        int[] newCn0 = new int[n];
+        int[] newElevation = new int[n];
+        int[] newAzimuth = new int[n];
+        int[] newFlags = new int[n];
+        int newCount = 0;
+        for (int i = 0; i < n; i++) {
+            int key = (int) (order[i] >>> 32);
+            if (newCount > 0 && newKeys[newCount - 1] == key) {
+                // Same signal listed twice, e.g. tracked with two codes
+                continue;
+            }
+            int index = (int) order[i];
+            newKeys[newCount] = key;
+            newCn0[newCount] = Math.round(status.getCn0DbHz(index));
+            newElevation[newCount] = Math.round(status.getElevationDegrees(index));
+            newAzimuth[newCount] = Math.floorMod(Math.round(status.getAzimuthDegrees(index)), 360);
+            newFlags[newCount] = status.usedInFix(index) ? FLAG_USED_IN_FIX : 0;
+            newCount++;
+        }
+
+        LocationProto.SatelliteStatus.Builder builder = LocationProto.SatelliteStatus.newBuilder();
+        int oldIndex = 0;
+        int newIndex = 0;
+        int lastKey = 0;
+        int lastRemovedKey = 0;
+        while (oldIndex < count || newIndex < newCount) {
+            int oldKey = oldIndex < count ? keys[oldIndex] : Integer.MAX_VALUE;
+            int newKey = newIndex < newCount ? newKeys[newIndex] : Integer.MAX_VALUE;
+            if (oldKey < newKey) {
+                builder.addRemovedKeys(oldKey - lastRemovedKey);
+                lastRemovedKey = oldKey;
+                oldIndex++;
+                continue;
+            }
+
+            // New signals are differences to zero
+            boolean known = oldKey == newKey;
+            int baseCn0 = known ? cn0[oldIndex] : 0;
+            if (known && Math.abs(newCn0[newIndex] - baseCn0) < CN0_DEADBAND) {
+                newCn0[newIndex] = baseCn0;
+            }
+            int baseElevation = known ? elevation[oldIndex] : 0;
+            int baseAzimuth = known ? azimuth[oldIndex] : 0;
+            if (!known || newCn0[newIndex] != baseCn0 || newElevation[newIndex] != baseElevation
+                    || newAzimuth[newIndex] != baseAzimuth || newFlags[newIndex] != flags[oldIndex]) {
+                builder.addKeys(newKey - lastKey)
+                        .addCn0(newCn0[newIndex] - baseCn0)
+                        .addElevation(newElevation[newIndex] - baseElevation)
+                        .addAzimuth(Math.floorMod(newAzimuth[newIndex] - baseAzimuth + 180, 360) - 180)
+                        .addFlags(newFlags[newIndex]);
+                lastKey = newKey;
+            }
+            if (known) {
+                oldIndex++;
+            }
+            newIndex++;
+        }
+
+        if (builder.getKeysCount() == 0 && builder.getRemovedKeysCount() == 0) {
+            return null;
+        }
+
+        int baseSequence = sequence;
+        // 0 marks full snapshots
+        sequence = sequence == -1 ? 1 : sequence + 1;
+        keys = newKeys;
+        cn0 = newCn0;
+        elevation = newElevation;
+        azimuth = newAzimuth;
+        flags = newFlags;
+        count = newCount;
+        return builder.setSequence(sequence).setBaseSequence(baseSequence).build();
+    }
+
+    /**
+     * @return the current state as a full snapshot, for a client that has no base to apply
+     * changes to
+     */
+    public synchronized LocationProto.SatelliteStatus snapshot() {
+        LocationProto.SatelliteStatus.Builder builder = LocationProto.SatelliteStatus.newBuilder()
+                .setSequence(sequence);
+        int lastKey = 0;
+        for (int i = 0; i < count; i++) {
+            builder.addKeys(keys[i] - lastKey)
+                    .addCn0(cn0[i])
+                    .addElevation(elevation[i])
+                    .addAzimuth(azimuth[i] > 180 ? azimuth[i] - 360 : azimuth[i])
+                    .addFlags(flags[i]);
+            lastKey = keys[i];
+        }
+        return builder.build();
+    }
+
+    private static int key(GnssStatus status, int index) {
+        boolean lowerBand = status.hasCarrierFrequencyHz(index)
+                && status.getCarrierFrequencyHz(index) < LOWER_BAND_LIMIT_HZ;
+        return (status.getConstellationType(index) << 8 | (status.getSvid(index) & 0xFF)) << 1 | (lowerBand ? 1 : 0);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.server;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import dezz.gnssshare.shared.ConfigStore;
+
+/**
+ * Immutable snapshot of all server settings, see {@link #get(Context)}.
+ * <p>
+ * The service reads settings from the snapshot only and applies changes from its listener, so the
+ * fix path never touches the preferences.
+ */
+public final class ServerConfig {
+    static final String PREF_IS_SERVICE_ENABLED = "isServiceEnabled";
+    static final String PREF_PROVIDER_ID = "providerId";
+    static final String PREF_IS_IMU_FUSION_ENABLED = "isImuFusionEnabled";
+    static final String PREF_IMU_FUSION_RATE = "imuFusionRate";
+    static final String PREF_IS_SIGNIFICANCE_FILTER_ENABLED = "isSignificanceFilterEnabled";
+    static final String PREF_SIGNIFICANCE_MIN_DISTANCE = "significanceMinDistance";
+    static final String PREF_SIGNIFICANCE_MIN_BEARING_CHANGE = "significanceMinBearingChange";
+    static final String PREF_SIGNIFICANCE_MIN_ACCURACY_CHANGE = "significanceMinAccuracyChange";
+    static final String PREF_SIGNIFICANCE_KEEP_ALIVE_INTERVAL = "significanceKeepAliveInterval";
+    static final String PREF_IS_SHARED_MEMORY_RING_ENABLED = "isSharedMemoryRingEnabled";
+    static final String PREF_MAX_CLIENTS = "maxClients";
+    static final String PREF_IS_LOW_LATENCY_WIFI_ENABLED = "isLowLatencyWifiEnabled";
+    // Comma separated stage names, see GNSSServerService.createPipeline()
+    static final String PREF_PIPELINE_STAGES = "pipelineStages";
+    // Device node or log file for the external receiver, empty for USB
+    static final String PREF_EXTERNAL_SOURCE_PATH = "externalSourcePath";
+
+    static final int DEFAULT_IMU_FUSION_RATE = 25; // Hz
+    static final int DEFAULT_MAX_CLIENTS = 16;
+    static final String DEFAULT_PIPELINE_STAGES =
+            "validation,arbitration,fusion,enrichment,encoding,significance,governor,fanout";
+
+    public final boolean serviceEnabled;
+    public final int providerId;
+    public final boolean imuFusionEnabled;
+    public final int imuFusionRate;
+    public final boolean significanceFilterEnabled;
+    public final float significanceMinDistance;
+    public final float significanceMinBearingChange;
+    public final float significanceMinAccuracyChange;
+    public final long significanceKeepAliveInterval;
+    public final boolean sharedMemoryRingEnabled;
+    public final int maxClients;
+    public final boolean lowLatencyWifiEnabled;
+    public final String pipelineStages;
+    public final String externalSourcePath;
+
+    private ServerConfig(SharedPreferences prefs) {
+        serviceEnabled = prefs.getBoolean(PREF_IS_SERVICE_ENABLED, false);
+        providerId = prefs.getInt(PREF_PROVIDER_ID, 0);
+        imuFusionEnabled = prefs.getBoolean(PREF_IS_IMU_FUSION_ENABLED, false);
+        imuFusionRate = prefs.getInt(PREF_IMU_FUSION_RATE, DEFAULT_IMU_FUSION_RATE);
+        significanceFilterEnabled = prefs.getBoolean(PREF_IS_SIGNIFICANCE_FILTER_ENABLED, false);
+        significanceMinDistance = prefs.getFloat(PREF_SIGNIFICANCE_MIN_DISTANCE, 2.0f);
+        significanceMinBearingChange = prefs.getFloat(PREF_SIGNIFICANCE_MIN_BEARING_CHANGE, 10.0f);
+        significanceMinAccuracyChange = prefs.getFloat(PREF_SIGNIFICANCE_MIN_ACCURACY_CHANGE, 2.0f);
+        significanceKeepAliveInterval = prefs.getLong(PREF_SIGNIFICANCE_KEEP_ALIVE_INTERVAL, 1000);
+        sharedMemoryRingEnabled = prefs.getBoolean(PREF_IS_SHARED_MEMORY_RING_ENABLED, false);
+        maxClients = prefs.getInt(PREF_MAX_CLIENTS, DEFAULT_MAX_CLIENTS);
+        lowLatencyWifiEnabled = prefs.getBoolean(PREF_IS_LOW_LATENCY_WIFI_ENABLED, true);
+        pipelineStages = prefs.getString(PREF_PIPELINE_STAGES, DEFAULT_PIPELINE_STAGES);
+        externalSourcePath = prefs.getString(PREF_EXTERNAL_SOURCE_PATH, "").trim();
+    }
+
+    boolean isSignificanceFilterChanged(ServerConfig other) {
+        return significanceFilterEnabled != other.significanceFilterEnabled
+                || significanceMinDistance != other.significanceMinDistance
+                || significanceMinBearingChange != other.significanceMinBearingChange
+                || significanceMinAccuracyChange != other.significanceMinAccuracyChange
+                || significanceKeepAliveInterval != other.significanceKeepAliveInterval;
+    }
+
+    private static volatile ConfigStore<ServerConfig> store = null;
+
+    public static ServerConfig get(Context context) {
+        return getStore(context).get();
+    }
+
+    /**
+     * Listeners are called on the main thread after any setting has changed
+     */
+    public static void addListener(Context context, ConfigStore.Listener<ServerConfig> listener) {
+        getStore(context).addListener(listener);
+    }
+
+    public static void removeListener(Context context, ConfigStore.Listener<ServerConfig> listener) {
+        getStore(context).removeListener(listener);
+    }
+
+    static SharedPreferences.Editor edit(Context context) {
+        return getStore(context).edit();
+    }
+
+    private static ConfigStore<ServerConfig> getStore(Context context) {
+        ConfigStore<ServerConfig> store = ServerConfig.store;
+        if (store == null) {
+            synchronized (ServerConfig.class) {
+                store = ServerConfig.store;
+                if (store == null) {
+                    SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(
+                            context.getPackageName() + "_preferences", Context.MODE_PRIVATE);
+                    store = new ConfigStore<>(prefs, ServerConfig::new);
+                    ServerConfig.store = store;
+                }
+            }
+        }
+        return store;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.location.Location;
+
+/**
+ * Decides whether a fix carries enough new information to be broadcast.
+ * <p>
+ * A fix is significant when the car is moving, when it has moved, turned or changed accuracy
+ * enough since the last broadcast fix, or when the keep-alive interval has passed, so clients
+ * never go longer than that without a fresh fix. Fixes are compared to the last fix that actually
+ * went out, reported with {@link #onSent(Location)}, not to the last one that passed the filter.
+ */
+public class SignificanceFilter {
+    // Above this speed every fix is significant, the filter only targets a standing car
+    private static final float MOVING_SPEED = 1.0f;
+
+    private final float minDistance;
+    private final float minBearingChange;
+    private final float minAccuracyChange;
+    private final long keepAliveInterval;
+
+    private Location lastSent = null;
+    private long lastSentTime = 0;
+
+    public SignificanceFilter(float minDistance, float minBearingChange, float minAccuracyChange, long keepAliveInterval) {
+        this.minDistance = minDistance;
+        this.minBearingChange = minBearingChange;
+        this.minAccuracyChange = minAccuracyChange;
+        this.keepAliveInterval = keepAliveInterval;
+    }
+
+    public synchronized boolean isSignificant(Location fix) {
+        return lastSent == null || isChanged(fix) || System.currentTimeMillis() - lastSentTime >= keepAliveInterval;
+    }
+
+    /**
+     * Remember the fix as the last one clients received
+     */
+    public synchronized void onSent(Location fix) {
+        lastSent = fix;
+        lastSentTime = System.currentTimeMillis();
+    }
+
+    private boolean isChanged(Location fix) {
+        if (fix.hasSpeed() && fix.getSpeed() >= MOVING_SPEED) {
+            return true;
+        }
+
+        if (fix.distanceTo(lastSent) >= minDistance) {
+            return true;
+        }
+
+        if (fix.hasBearing() && lastSent.hasBearing()) {
+            float change = Math.abs(fix.getBearing() - lastSent.getBearing()) % 360;
+            if (Math.min(change, 360 - change) >= minBearingChange) {
+                return true;
+            }
+        }
+
+        if (fix.hasAccuracy() != lastSent.hasAccuracy()) {
+            return true;
+        }
+        return fix.hasAccuracy() && Math.abs(fix.getAccuracy() - lastSent.getAccuracy()) >= minAccuracyChange;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.server;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.util.Log;
+
+import dezz.gnssshare.shared.Metrics;
+
+/**
+ * Steps the server down through rate tiers when the phone is hot or its battery is low.
+ * <p>
+ * The tier follows the worse of the thermal status and the battery state. Getting worse takes
+ * effect immediately; getting better is applied one tier at a time and only after conditions have
+ * stayed better for {@link #RESTORE_DELAY}, so a phone hovering around a threshold doesn't flap.
+ */
+public class ThermalGovernor {
+    private static final String TAG = "ThermalGovernor";
+
+    private static final long RESTORE_DELAY = 60000;
+    private static final int LOW_BATTERY_LEVEL = 30;
+    private static final int CRITICAL_BATTERY_LEVEL = 15;
+
+    public enum Tier {
+        NORMAL(100, 0, 1000),
+        WARM(200, 200, 2000),
+        HOT(500, 500, 5000),
+        CRITICAL(1000, 1000, 10000);
+
+        // GNSS request interval
+        public final long fixInterval;
+        // Minimum time between broadcasts to clients
+        public final long broadcastInterval;
+        // Minimum time between notification updates caused by fixes
+        public final long notificationInterval;
+
+        Tier(long fixInterval, long broadcastInterval, long notificationInterval) {
+            this.fixInterval = fixInterval;
+            this.broadcastInterval = broadcastInterval;
+            this.notificationInterval = notificationInterval;
+        }
+    }
+
+    public interface Listener {
+        void onTierChanged(Tier tier);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final PowerManager powerManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private Tier currentTier = Tier.NORMAL;
+    private int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+    private int batteryLevel = 100;
+    private boolean isCharging = true;
+    private boolean started = false;
+
+    private final PowerManager.OnThermalStatusChangedListener thermalListener = status -> {
+        Log.d(TAG, "Thermal status changed: " + status);
+        thermalStatus = status;
+        evaluate();
+    };
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onBatteryChanged(intent);
+            evaluate();
+        }
+    };
+
+    private final Runnable restoreRunnable = this::restoreOneTier;
+
+    public ThermalGovernor(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        this.powerManager = context.getSystemService(PowerManager.class);
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        thermalStatus = powerManager.getCurrentThermalStatus();
+        powerManager.addThermalStatusListener(thermalListener);
+
+        Intent batteryStatus = context.registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (batteryStatus != null) {
+            onBatteryChanged(batteryStatus);
+        }
+
+        evaluate();
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+
+        powerManager.removeThermalStatusListener(thermalListener);
+        context.unregisterReceiver(batteryReceiver);
+        mainHandler.removeCallbacks(restoreRunnable);
+    }
+
+    public Tier getTier() {
+        return currentTier;
+    }
+
+    private void onBatteryChanged(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level >= 0 && scale > 0) {
+            batteryLevel = level * 100 / scale;
+        }
+        isCharging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private Tier targetTier() {
+        Tier thermalTier = switch (thermalStatus) {
+            case PowerManager.THERMAL_STATUS_NONE, PowerManager.THERMAL_STATUS_LIGHT -> Tier.NORMAL;
+            case PowerManager.THERMAL_STATUS_MODERATE -> Tier.WARM;
+            case PowerManager.THERMAL_STATUS_SEVERE -> Tier.HOT;
+            default -> Tier.CRITICAL;
+        };
+
+        Tier batteryTier;
+        if (isCharging || batteryLevel > LOW_BATTERY_LEVEL) {
+            batteryTier = Tier.NORMAL;
+        } else if (batteryLevel > CRITICAL_BATTERY_LEVEL) {
+            batteryTier = Tier.WARM;
+        } else {
+            batteryTier = Tier.HOT;
+        }
+
+        return thermalTier.ordinal() >= batteryTier.ordinal() ? thermalTier : batteryTier;
+    }
+
+    private void evaluate() {
+        Tier target = targetTier();
+        if (target.ordinal() > currentTier.ordinal()) {
+            mainHandler.removeCallbacks(restoreRunnable);
+            setTier(target);
+        } else if (target.ordinal() < currentTier.ordinal()) {
+            if (!mainHandler.hasCallbacks(restoreRunnable)) {
+                mainHandler.postDelayed(restoreRunnable, RESTORE_DELAY);
+            }
+        } else {
+            mainHandler.removeCallbacks(restoreRunnable);
+        }
+    }
+
+    private void restoreOneTier() {
+        Tier target = targetTier();
+        if (target.ordinal() < currentTier.ordinal()) {
+            setTier(Tier.values()[currentTier.ordinal() - 1]);
+            if (target.ordinal() < currentTier.ordinal()) {
+                mainHandler.postDelayed(restoreRunnable, RESTORE_DELAY);
+            }
+        }
+    }
+
+    private void setTier(Tier tier) {
+        Log.i(TAG, "Tier " + currentTier + " -> " + tier + " (thermal status " + thermalStatus +
+                ", battery " + batteryLevel + "%" + (isCharging ? ", charging" : "") + ")");
+        currentTier = tier;
+        Metrics.set("server.governor.tier", tier.ordinal());
+        listener.onTierChanged(tier);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.location.Location;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dezz.gnssshare.shared.Metrics;
+
+public class FixPipelineTest {
+    private final List<String> calls = new ArrayList<>();
+    private final Map<String, FixStage> stages = new HashMap<>();
+
+    /**
+     * Stage that records its name and stops the fixes listed in {@code stopped}. Locations are
+     * compared by identity, Location.equals() is not available in unit tests.
+     */
+    private void addStage(String name, Location... stopped) {
+        stages.put(name, fix -> {
+            calls.add(name);
+            for (Location location : stopped) {
+                if (location == fix.location) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    @Test
+    public void stagesRunInConfiguredOrder() {
+        addStage("order.a");
+        addStage("order.b");
+        addStage("order.c");
+        FixPipeline pipeline = new FixPipeline(Arrays.asList("order.c", "order.a", "unknown", "order.b"), stages);
+
+        pipeline.process(new Location("gps"));
+
+        assertEquals(Arrays.asList("order.c", "order.a", "order.b"), calls);
+    }
+
+    @Test
+    public void stoppedFixSkipsLaterStages() {
+        Location fix = new Location("gps");
+        addStage("stop.a");
+        addStage("stop.b", fix);
+        addStage("stop.c");
+        FixPipeline pipeline = new FixPipeline(Arrays.asList("stop.a", "stop.b", "stop.c"), stages);
+
+        pipeline.process(fix);
+        pipeline.process(new Location("gps"));
+
+        assertEquals(Arrays.asList("stop.a", "stop.b", "stop.a", "stop.b", "stop.c"), calls);
+        assertEquals(2, Metrics.value("server.pipeline.stop.b.count"));
+        assertEquals(1, Metrics.value("server.pipeline.stop.b.stopped"));
+        assertEquals(1, Metrics.value("server.pipeline.stop.c.count"));
+        assertEquals(0, Metrics.value("server.pipeline.stop.c.stopped"));
+    }
+
+    @Test
+    public void replacedLocationReachesLaterStages() {
+        Location original = new Location("gps");
+        Location replaced = new Location("gps");
+        List<Location> seen = new ArrayList<>();
+        stages.put("replace.a", fix -> {
+            fix.location = replaced;
+            return true;
+        });
+        stages.put("replace.b", fix -> seen.add(fix.location));
+        FixPipeline pipeline = new FixPipeline(Arrays.asList("replace.a", "replace.b"), stages);
+
+        pipeline.process(original);
+
+        assertEquals(1, seen.size());
+        assertSame(replaced, seen.get(0));
+    }
+
+    @Test
+    public void processAfterContinuesWithTheNextStage() {
+        addStage("after.a");
+        addStage("after.b");
+        addStage("after.c");
+        FixPipeline pipeline = new FixPipeline(Arrays.asList("after.a", "after.b", "after.c"), stages);
+
+        pipeline.processAfter("after.a", new Location("gps"));
+        pipeline.processAfter("after.c", new Location("gps"));
+        pipeline.processAfter("unknown", new Location("gps"));
+
+        assertEquals(Arrays.asList("after.b", "after.c"), calls);
+    }
+
+    @Test
+    public void batchSurvivorsContinueAsOneFix() {
+        Location first = new Location("gps");
+        Location dropped = new Location("gps");
+        Location last = new Location("gps");
+        addStage("batch.validation", dropped);
+        List<FixPipeline.Fix> encoded = new ArrayList<>();
+        stages.put("batch.encoding", encoded::add);
+        addStage("batch.fanout");
+        FixPipeline pipeline = new FixPipeline(Arrays.asList("batch.validation", "batch.encoding", "batch.fanout"), stages);
+
+        pipeline.processBatch(Arrays.asList(first, dropped, last), "batch.encoding");
+
+        assertEquals(Arrays.asList("batch.validation", "batch.validation", "batch.validation", "batch.fanout"), calls);
+        assertEquals(1, encoded.size());
+        assertSame(last, encoded.get(0).location);
+        assertEquals(2, encoded.get(0).batch.size());
+        assertSame(first, encoded.get(0).batch.get(0));
+        assertSame(last, encoded.get(0).batch.get(1));
+    }
+
+    @Test
+    public void singleBatchSurvivorIsAPlainFix() {
+        Location dropped = new Location("gps");
+        Location kept = new Location("gps");
+        addStage("single.validation", dropped);
+        List<FixPipeline.Fix> encoded = new ArrayList<>();
+        stages.put("single.encoding", encoded::add);
+        FixPipeline pipeline = new FixPipeline(Arrays.asList("single.validation", "single.encoding"), stages);
+
+        pipeline.processBatch(Arrays.asList(dropped, kept), "single.encoding");
+
+        assertEquals(1, encoded.size());
+        assertSame(kept, encoded.get(0).location);
+        assertNull(encoded.get(0).batch);
+    }
+
+    @Test
+    public void batchWithoutBatchStageIsProcessedFixByFix() {
+        addStage("nobatch.a");
+        List<FixPipeline.Fix> seen = new ArrayList<>();
+        stages.put("nobatch.b", seen::add);
+        FixPipeline pipeline = new FixPipeline(Arrays.asList("nobatch.a", "nobatch.b"), stages);
+
+        pipeline.processBatch(Arrays.asList(new Location("gps"), new Location("gps")), "encoding");
+
+        assertEquals(2, seen.size());
+        assertNull(seen.get(0).batch);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.server;
+
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receiver epochs parsed per second. An epoch is what a u-blox receiver sends every second with
+ * both outputs on: GGA, RMC, GSA, three GSV and VTG sentences and a NAV-PVT message, about 520
+ * bytes, fed in 64-byte reads. Runs only with
+ * {@code ./gradlew :server-app:testDebugUnitTest -Pbenchmark}, the regular unit tests skip it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GnssStreamParserBenchmark {
+    private static final int EPOCHS = 100;
+    private static final int CHUNK_SIZE = 64;
+
+    private byte[] stream;
+    private GnssStreamParser parser;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        GnssStreamSamples samples = new GnssStreamSamples();
+        for (int i = 0; i < EPOCHS; i++) {
+            int second = i % 60;
+            String time = String.format(Locale.US, "12%02d%02d.00", i / 60, second);
+            samples.epoch(time, String.format(Locale.US, "5545.%04d", i), String.format(Locale.US, "03737.%04d", i))
+                    .nmea("GPGSA,A,3,02,05,12,15,18,24,25,29,,,,,1.6,0.9,1.3")
+                    .nmea("GPGSV,3,1,10,02,45,123,38,05,67,045,41,12,23,301,35,15,12,210,30")
+                    .nmea("GPGSV,3,2,10,18,55,089,40,24,34,150,37,25,18,270,33,29,71,010,42")
+                    .nmea("GPGSV,3,3,10,31,05,330,22,32,08,190,25")
+                    .nmea("GPVTG,87.3,T,,M,12.5,N,23.2,K,A")
+                    .navPvt(12, i / 60, second, 557_512_430 + i, 376_184_233 + i);
+        }
+        stream = samples.toByteArray();
+        parser = new GnssStreamParser(blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EPOCHS)
+    public void parse() {
+        for (int pos = 0; pos < stream.length; pos += CHUNK_SIZE) {
+            parser.feed(stream, pos, Math.min(CHUNK_SIZE, stream.length - pos));
+        }
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        assumeTrue("Benchmarks run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+        new Runner(new OptionsBuilder().include(GnssStreamParserBenchmark.class.getName()).build()).run();
+    }
+}
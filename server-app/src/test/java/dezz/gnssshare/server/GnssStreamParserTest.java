@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.server;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class GnssStreamParserTest {
+    /**
+     * Feed the stream to a new parser in chunks of the given size, the way a serial port hands it
+     * over
+     */
+    private static List<String> parse(byte[] stream, int chunkSize) {
+        List<String> fixes = new ArrayList<>();
+        GnssStreamParser parser = new GnssStreamParser(fix -> fixes.add(String.format(Locale.US,
+                "%d %.6f %.6f %d", fix.time, fix.latitude, fix.longitude, fix.satellites)));
+        for (int pos = 0; pos < stream.length; pos += chunkSize) {
+            parser.feed(stream, pos, Math.min(chunkSize, stream.length - pos));
+        }
+        return fixes;
+    }
+
+    /**
+     * Three NMEA epochs and a NAV-PVT fix, with broken sentences, binary noise and a false UBX
+     * sync in between
+     */
+    private static byte[] mixedStream() {
+        return new GnssStreamSamples()
+                .text("$GPX")
+                .epoch("120000.00", "5545.0746", "03737.1054")
+                .raw((byte) 0x00, (byte) 0xB5, (byte) 0x01, (byte) 0xFF)
+                .text("$GPRMC,120001.00,A,5545.0750,N,03737.1060,E,12.5,87.3,010625,,,A*00\r\n")
+                .epoch("120001.00", "5545.0750", "03737.1060")
+                .text("$GPGGA,12")
+                .epoch("120002.00", "5545.0754", "03737.1066")
+                .text("garbage")
+                .navPvt(12, 0, 10, 557_512_576, 376_184_433)
+                .toByteArray();
+    }
+
+    @Test
+    public void wholeStreamReportsEveryFix() {
+        List<String> result = parse(mixedStream(), Integer.MAX_VALUE);
+
+        assertEquals(4, result.size());
+        assertEquals("1748779200000 55.751243 37.618423 9", result.get(0));
+        assertEquals("1748779210000 55.751258 37.618443 14", result.get(3));
+    }
+
+    @Test
+    public void everyChunkSizeReportsTheSameFixes() {
+        byte[] stream = mixedStream();
+        List<String> expected = parse(stream, stream.length);
+        for (int chunkSize = 1; chunkSize <= 128; chunkSize++) {
+            assertEquals("Chunks of " + chunkSize + " bytes", expected, parse(stream, chunkSize));
+        }
+    }
+
+    @Test
+    public void sentenceCutShortByAnotherResyncs() {
+        byte[] stream = new GnssStreamSamples()
+                .text("$GPX")
+                .epoch("120000.00", "5545.0746", "03737.1054")
+                .toByteArray();
+        for (int chunkSize : new int[]{1, 3, 7, stream.length}) {
+            assertEquals("Chunks of " + chunkSize + " bytes", 1, parse(stream, chunkSize).size());
+        }
+    }
+
+    @Test
+    public void overlongSentenceIsDroppedAndTheNextOneParsed() {
+        StringBuilder noise = new StringBuilder("$GPGGA,");
+        while (noise.length() < 200) {
+            noise.append("0,");
+        }
+        byte[] stream = new GnssStreamSamples()
+                .text(noise.toString())
+                .epoch("120000.00", "5545.0746", "03737.1054")
+                .toByteArray();
+        for (int chunkSize : new int[]{1, 3, 7, stream.length}) {
+            assertEquals("Chunks of " + chunkSize + " bytes", 1, parse(stream, chunkSize).size());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Receiver output for the parser tests and benchmark: NMEA sentences with valid checksums and
+ * UBX NAV-PVT messages
+ */
+final class GnssStreamSamples {
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+    byte[] toByteArray() {
+        return stream.toByteArray();
+    }
+
+    GnssStreamSamples raw(byte... bytes) {
+        stream.write(bytes, 0, bytes.length);
+        return this;
+    }
+
+    GnssStreamSamples text(String text) {
+        return raw(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Sentence with the checksum and line end added
+     */
+    GnssStreamSamples nmea(String body) {
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            checksum ^= body.charAt(i);
+        }
+        return text(String.format(Locale.US, "$%s*%02X\r\n", body, checksum));
+    }
+
+    /**
+     * GGA and RMC of one epoch on 2025-06-01
+     *
+     * @param time hhmmss.ss
+     */
+    GnssStreamSamples epoch(String time, String latitude, String longitude) {
+        nmea("GPGGA," + time + "," + latitude + ",N," + longitude + ",E,1,09,0.9,150.2,M,14.8,M,,");
+        return nmea("GPRMC," + time + ",A," + latitude + ",N," + longitude + ",E,12.5,87.3,010625,,,A");
+    }
+
+    /**
+     * 3D fix on 2025-06-01
+     *
+     * @param latitude degrees * 1e7
+     * @param longitude degrees * 1e7
+     */
+    GnssStreamSamples navPvt(int hour, int minute, int second, int latitude, int longitude) {
+        byte[] message = new byte[8 + 92];
+        message[0] = (byte) 0xB5;
+        message[1] = 0x62;
+        message[2] = 0x01;
+        message[3] = 0x07;
+        message[4] = 92;
+        int p = 6;
+        putU2(message, p + 4, 2025);
+        message[p + 6] = 6;
+        message[p + 7] = 1;
+        message[p + 8] = (byte) hour;
+        message[p + 9] = (byte) minute;
+        message[p + 10] = (byte) second;
+        // Valid date and time
+        message[p + 11] = 0x03;
+        // 3D fix, gnssFixOK, 14 satellites
+        message[p + 20] = 3;
+        message[p + 21] = 0x01;
+        message[p + 23] = 14;
+        putI4(message, p + 24, longitude);
+        putI4(message, p + 28, latitude);
+        putI4(message, p + 32, 165_000);
+        putI4(message, p + 40, 1_800);
+        putI4(message, p + 60, 6_430);
+        putI4(message, p + 64, 8_730_000);
+
+        int ckA = 0;
+        int ckB = 0;
+        for (int i = 2; i < message.length - 2; i++) {
+            ckA = (ckA + (message[i] & 0xFF)) & 0xFF;
+            ckB = (ckB + ckA) & 0xFF;
+        }
+        message[message.length - 2] = (byte) ckA;
+        message[message.length - 1] = (byte) ckB;
+        return raw(message);
+    }
+
+    private static void putU2(byte[] data, int pos, int value) {
+        data[pos] = (byte) value;
+        data[pos + 1] = (byte) (value >> 8);
+    }
+
+    private static void putI4(byte[] data, int pos, int value) {
+        for (int i = 0; i < 4; i++) {
+            data[pos + i] = (byte) (value >> (8 * i));
+        }
+    }
+}
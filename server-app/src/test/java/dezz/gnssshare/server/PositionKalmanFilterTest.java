@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Replays synthetic drives through the filter the way ImuFusion does: IMU samples at 100 Hz in the
+ * frame of a mounted phone go through ImuFusion.toWorldFrame and move the filter forward, GNSS
+ * fixes at 1 Hz arrive some time after they were measured. The traces are generated, there is no
+ * recorded capture in the tree, and the rotation matrix is given directly instead of coming from
+ * SensorManager, which the unit test stubs do not implement.
+ */
+public class PositionKalmanFilterTest {
+    private static final double LATITUDE = 55.75;
+    private static final double LONGITUDE = 37.62;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6371008.8;
+
+    private static final long IMU_INTERVAL_NANOS = 10_000_000L;
+    private static final long FIX_INTERVAL_NANOS = 1_000_000_000L;
+
+    // Row-major device to world rotations, rows are east, north, up
+    private static final float[] FLAT = {
+            1, 0, 0,
+            0, 1, 0,
+            0, 0, 1,
+    };
+    // Upright in a dashboard mount facing the driver, screen towards the back of the car
+    // heading east: device Y is up, device Z points west
+    private static final float[] DASHBOARD_EAST = {
+            0, 0, -1,
+            -1, 0, 0,
+            0, 1, 0,
+    };
+
+    /**
+     * Eastward drive: acceleration in m/s^2 at a given second
+     */
+    private interface Profile {
+        double acceleration(double seconds);
+    }
+
+    private static final class Result {
+        double meanError;
+        double maxError;
+        double meanAlongTrackError;
+    }
+
+    private static Result replay(Profile profile, double initialSpeed, long latencyNanos, long durationNanos) {
+        return replay(FLAT, profile, initialSpeed, latencyNanos, durationNanos);
+    }
+
+    private static Result replay(float[] mount, Profile profile, double initialSpeed, long latencyNanos,
+                                 long durationNanos) {
+        Random random = new Random(42);
+        PositionKalmanFilter filter = new PositionKalmanFilter(1.5);
+
+        double position = 0;
+        double speed = initialSpeed;
+        // Fixes measured but not delivered yet: {time, position, speed}
+        ArrayDeque<double[]> pending = new ArrayDeque<>();
+        double accelEast = 0;
+        double accelNorth = 0;
+        float[] sample = new float[3];
+        double[] world = new double[2];
+
+        Result result = new Result();
+        int samples = 0;
+        for (long now = 0; now <= durationNanos; now += IMU_INTERVAL_NANOS) {
+            double seconds = now / 1e9;
+            if (now > 0) {
+                double accel = profile.acceleration(seconds - IMU_INTERVAL_NANOS / 1e9);
+                double dt = IMU_INTERVAL_NANOS / 1e9;
+                position += speed * dt + 0.5 * accel * dt * dt;
+                speed += accel * dt;
+            }
+
+            if (now % FIX_INTERVAL_NANOS == 0) {
+                pending.add(new double[]{now, position + random.nextGaussian() * 2, speed});
+            }
+            while (!pending.isEmpty() && pending.peek()[0] + latencyNanos <= now) {
+                double[] fix = pending.poll();
+                long fixNanos = (long) fix[0];
+                filter.predict(fixNanos, accelEast, accelNorth);
+                filter.updatePosition(fixNanos, LATITUDE, LONGITUDE + fix[1] / metersPerDegreeLongitude(), 3);
+                filter.updateVelocity(fix[2], 90, 0.5);
+            }
+
+            // Sensor event: the filter moves to the sample time with the previous acceleration
+            filter.predict(now, accelEast, accelNorth);
+            toDeviceFrame(mount, profile.acceleration(seconds) + random.nextGaussian() * 0.3,
+                    random.nextGaussian() * 0.3, random.nextGaussian() * 0.3, sample);
+            ImuFusion.toWorldFrame(mount, sample, world);
+            accelEast = world[0];
+            accelNorth = world[1];
+
+            if (filter.isInitialized() && seconds >= 5) {
+                double east = (filter.getLongitude(now, accelEast) - LONGITUDE) * metersPerDegreeLongitude();
+                double north = (filter.getLatitude(now, accelNorth) - LATITUDE) * METERS_PER_DEGREE;
+                double error = Math.hypot(east - position, north);
+                result.meanError += error;
+                result.meanAlongTrackError += east - position;
+                result.maxError = Math.max(result.maxError, error);
+                samples++;
+            }
+        }
+        result.meanError /= samples;
+        result.meanAlongTrackError /= samples;
+        return result;
+    }
+
+    /**
+     * What the linear acceleration sensor reports for a world frame acceleration, the transposed rotation
+     */
+    private static void toDeviceFrame(float[] mount, double east, double north, double up, float[] out) {
+        for (int i = 0; i < 3; i++) {
+            out[i] = (float) (mount[i] * east + mount[3 + i] * north + mount[6 + i] * up);
+        }
+    }
+
+    private static double metersPerDegreeLongitude() {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE));
+    }
+
+    @Test
+    public void cruiseWithLateFixesIsNotBehind() {
+        // 20 m/s with fixes delivered 300 ms late, 6 m of lag if the latency is ignored
+        Result result = replay(seconds -> 0, 20, 300_000_000L, 60_000_000_000L);
+        assertEquals(0, result.meanAlongTrackError, 0.5);
+        assertTrue("mean error " + result.meanError, result.meanError < 1.5);
+    }
+
+    @Test
+    public void accelerateCruiseBrake() {
+        Profile profile = seconds -> seconds < 10 ? 2.5 : seconds < 40 ? 0 : seconds < 48 ? -3 : 0;
+        Result result = replay(profile, 0, 300_000_000L, 60_000_000_000L);
+        assertEquals(0, result.meanAlongTrackError, 0.5);
+        assertTrue("mean error " + result.meanError, result.meanError < 2.5);
+        assertTrue("max error " + result.maxError, result.maxError < 6);
+    }
+
+    @Test
+    public void timelyFixesMatchLateOnes() {
+        Result timely = replay(seconds -> 0, 20, 0, 30_000_000_000L);
+        Result late = replay(seconds -> 0, 20, 500_000_000L, 30_000_000_000L);
+        assertEquals(timely.meanError, late.meanError, 1.0);
+    }
+
+    @Test
+    public void standingStillStaysPut() {
+        Result result = replay(seconds -> 0, 0, 300_000_000L, 30_000_000_000L);
+        assertTrue("mean error " + result.meanError, result.meanError < 1.5);
+    }
+
+    @Test
+    public void dashboardMountMatchesFlat() {
+        Profile profile = seconds -> seconds < 10 ? 2.5 : seconds < 40 ? 0 : seconds < 48 ? -3 : 0;
+        Result flat = replay(FLAT, profile, 0, 300_000_000L, 60_000_000_000L);
+        Result mounted = replay(DASHBOARD_EAST, profile, 0, 300_000_000L, 60_000_000_000L);
+        assertEquals(flat.meanError, mounted.meanError, 0.1);
+        assertEquals(0, mounted.meanAlongTrackError, 0.5);
+    }
+
+    @Test
+    public void bumpsAreClamped() {
+        float[] sample = new float[3];
+        double[] world = new double[2];
+        // Pothole: 30 m/s^2 mostly east, the direction survives, the magnitude does not
+        toDeviceFrame(DASHBOARD_EAST, 24, 18, 5, sample);
+        ImuFusion.toWorldFrame(DASHBOARD_EAST, sample, world);
+        assertEquals(8, Math.hypot(world[0], world[1]), 1e-4);
+        assertEquals(0.8, world[0] / 8, 1e-4);
+        assertEquals(0.6, world[1] / 8, 1e-4);
+
+        // Vertical acceleration never leaks into the horizontal plane
+        toDeviceFrame(DASHBOARD_EAST, 0, 0, 9, sample);
+        ImuFusion.toWorldFrame(DASHBOARD_EAST, sample, world);
+        assertEquals(0, world[0], 1e-6);
+        assertEquals(0, world[1], 1e-6);
+    }
+
+    @Test
+    public void outputPacing() {
+        assertEquals(100, ImuFusion.outputIntervalMillis(10));
+        assertEquals(1000, ImuFusion.outputIntervalMillis(0));
+        assertEquals(1, ImuFusion.outputIntervalMillis(5000));
+    }
+}
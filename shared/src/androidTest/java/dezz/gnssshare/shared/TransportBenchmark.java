@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.shared;
+
+import static org.junit.Assert.assertTrue;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SdkSuppress;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One-way latency of a fix-sized frame from the writer to a reader thread over loopback TCP, the
+ * local socket and the shared memory ring with its doorbell, the same three paths the server
+ * offers to consumers on the same device.
+ * <p>
+ * Run on a device with {@code ./gradlew :shared:connectedAndroidTest}, results are logged under
+ * the TransportBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransportBenchmark {
+    private static final String TAG = "TransportBenchmark";
+
+    private static final int FRAME_SIZE = 96; // About a serialized ServerResponse with a fix
+    private static final int WARMUP_FRAMES = 500;
+    private static final int FRAMES = 5000;
+    // Fixes are sent one at a time, not in bursts
+    private static final long FRAME_INTERVAL_NANOS = 1_000_000;
+    // An empty ServerResponse, what the server sends to ring mode clients after each fix
+    private static final byte[] DOORBELL = new byte[0];
+
+    /**
+     * Reader side of a transport, returns the payload of the next frame
+     */
+    private interface Receiver {
+        byte[] receive() throws Exception;
+    }
+
+    /**
+     * Writer side of a transport
+     */
+    private interface Sender {
+        void send(byte[] frame) throws Exception;
+    }
+
+    @Test
+    public void loopbackTcp() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+            client.setTcpNoDelay(true);
+            accepted.setTcpNoDelay(true);
+            FrameChannel writer = FrameChannel.of(accepted);
+            FrameChannel reader = FrameChannel.of(client);
+            report("loopback TCP", measure(writer::writeFrame, reader::readFrame));
+        }
+    }
+
+    @Test
+    public void localSocket() throws Exception {
+        String name = FrameChannel.LOCAL_SOCKET_NAME + ".benchmark";
+        try (LocalServerSocket server = new LocalServerSocket(name);
+             LocalSocket client = new LocalSocket()) {
+            client.connect(new LocalSocketAddress(name));
+            try (LocalSocket accepted = server.accept()) {
+                FrameChannel writer = new LocalFrameChannel(accepted);
+                FrameChannel reader = new LocalFrameChannel(client);
+                report("local socket", measure(writer::writeFrame, reader::readFrame));
+            }
+        }
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = 33)
+    public void sharedMemoryRing() throws Exception {
+        String name = FrameChannel.LOCAL_SOCKET_NAME + ".benchmark.ring";
+        FixRing writer = FixRing.create("benchmark", 16, 256);
+        FixRing reader = FixRing.open(writer.getSharedMemory());
+        try (LocalServerSocket server = new LocalServerSocket(name);
+             LocalSocket client = new LocalSocket()) {
+            client.connect(new LocalSocketAddress(name));
+            try (LocalSocket accepted = server.accept()) {
+                FrameChannel doorbellWriter = new LocalFrameChannel(accepted);
+                FrameChannel doorbellReader = new LocalFrameChannel(client);
+                byte[] buffer = new byte[reader.getMaxPayloadSize()];
+                // As the server and FixRingReader do it: write the fix, ring the doorbell, the
+                // reader blocked on the connection then reads the ring
+                report("shared memory ring", measure(frame -> {
+                    writer.write(frame);
+                    doorbellWriter.writeFrame(DOORBELL);
+                }, () -> {
+                    int length;
+                    do {
+                        doorbellReader.readFrame();
+                        length = reader.readNew(buffer);
+                    } while (length <= 0);
+                    return Arrays.copyOf(buffer, length);
+                }));
+            }
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    /**
+     * @return one-way latencies of {@link #FRAMES} frames in nanoseconds, sorted
+     */
+    private static long[] measure(Sender sender, Receiver receiver) throws Exception {
+        int total = WARMUP_FRAMES + FRAMES;
+        long[] latencies = new long[FRAMES];
+        Exception[] failure = {null};
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread readerThread = new Thread(() -> {
+            try {
+                for (int i = 0; i < total; i++) {
+                    byte[] frame = receiver.receive();
+                    long latency = System.nanoTime() - ByteBuffer.wrap(frame).getLong();
+                    if (i >= WARMUP_FRAMES) {
+                        latencies[i - WARMUP_FRAMES] = latency;
+                    }
+                }
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+            done.countDown();
+        }, TAG);
+        readerThread.start();
+
+        byte[] frame = new byte[FRAME_SIZE];
+        for (int i = 0; i < total; i++) {
+            long start = System.nanoTime();
+            ByteBuffer.wrap(frame).putLong(start);
+            sender.send(frame);
+            while (System.nanoTime() - start < FRAME_INTERVAL_NANOS) {
+                Thread.onSpinWait();
+            }
+        }
+
+        assertTrue("Reader didn't finish", done.await(30, TimeUnit.SECONDS));
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static void report(String transport, long[] sorted) {
+        Log.i(TAG, String.format("%s: p50 %.1fus, p90 %.1fus, p99 %.1fus, max %.1fus", transport,
+                sorted[sorted.length / 2] / 1000.0,
+                sorted[sorted.length * 9 / 10] / 1000.0,
+                sorted[sorted.length * 99 / 100] / 1000.0,
+                sorted[sorted.length - 1] / 1000.0));
+    }
+}
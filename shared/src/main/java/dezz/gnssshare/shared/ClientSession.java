@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.shared;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Server side of one client connection: reads the client's packets, watches its liveness and
+ * frames the responses sent to it. Shared by GNSSServerService and the headless server, so it
+ * has no Android dependency; what a packet means to the server is up to its {@link Listener}.
+ * <p>
+ * Responses are sent already serialized. When the client has been silent for the probe gap,
+ * the next response is marked as a probe by appending the serialized {@code probe} field, which
+ * the client answers with a pong. If nothing is sent for that long, the listener is asked to send
+ * something to carry the probe.
+ */
+public class ClientSession {
+    public static final byte PING_PACKET = 0x01; // Client is idle, reply with the current status
+    public static final byte UPDATE_INTERVAL_PACKET = 0x02; // Followed by 4-byte interval in ms
+    public static final byte PONG_PACKET = 0x03; // Answer to a probe
+    public static final byte RING_MODE_PACKET = 0x04; // Client reads fixes from the shared memory ring
+    public static final byte SATELLITE_DETAIL_PACKET = 0x05; // Followed by 4-byte flag, 1 to receive satellite details
+
+    // A dead client is detected within this time at the latest
+    private static final long HEARTBEAT_TIMEOUT = 3000;
+    // Probe the client after it has been silent for this long
+    private static final long PROBE_IDLE_GAP = 1500;
+    // How often the liveness state is checked
+    private static final int LIVENESS_CHECK_INTERVAL = 250;
+    // ServerResponse.probe = true (field 5, varint), appended to an already serialized response
+    private static final byte[] PROBE_FIELD = {0x28, 0x01};
+    private static final int FRAME_HEADER_SIZE = 4;
+
+    /**
+     * Called on the thread running {@link #run()}
+     */
+    public interface Listener {
+        /**
+         * The client has heard nothing from us for a while, reply with the current state
+         */
+        void onPing() throws IOException;
+
+        void onPong(long smoothedRtt);
+
+        /**
+         * @param interval update interval the client is happy with in ms, 0 for as fast as possible
+         */
+        void onUpdateInterval(int interval);
+
+        void onRingMode();
+
+        void onSatelliteDetail(boolean enabled) throws IOException;
+
+        void onUnknownPacket(int packet);
+
+        /**
+         * Nothing was sent for the probe gap, send the current status so that it carries a probe
+         */
+        void onIdle() throws IOException;
+    }
+
+    /**
+     * Why {@link #run()} returned
+     */
+    public enum End {
+        CLOSED_BY_CLIENT,
+        TIMED_OUT,
+        // The channel was closed on our side, e.g. by a failed send
+        CLOSED
+    }
+
+    private final FrameChannel channel;
+    private final Listener listener;
+    private final LivenessMonitor liveness;
+
+    /**
+     * @param clock monotonic milliseconds
+     */
+    public ClientSession(FrameChannel channel, LongSupplier clock, Listener listener) {
+        this.channel = channel;
+        this.listener = listener;
+        this.liveness = new LivenessMonitor(PROBE_IDLE_GAP, HEARTBEAT_TIMEOUT, clock);
+    }
+
+    public LivenessMonitor getLiveness() {
+        return liveness;
+    }
+
+    /**
+     * Handle the client's packets until it goes away
+     *
+     * @throws IOException if reading from the client or a reply to it fails
+     */
+    public End run() throws IOException {
+        channel.setReadTimeout(LIVENESS_CHECK_INTERVAL);
+        DataInputStream input = new DataInputStream(channel.getInputStream());
+        while (!channel.isClosed()) {
+            try {
+                int packet = input.read();
+                if (packet == -1) {
+                    return End.CLOSED_BY_CLIENT;
+                }
+                // Anything from the client proves it's alive
+                liveness.onFrameReceived();
+
+                switch (packet) {
+                    case PING_PACKET -> listener.onPing();
+                    case PONG_PACKET -> listener.onPong(liveness.getSmoothedRtt());
+                    case UPDATE_INTERVAL_PACKET -> listener.onUpdateInterval(input.readInt());
+                    case RING_MODE_PACKET -> listener.onRingMode();
+                    case SATELLITE_DETAIL_PACKET -> listener.onSatelliteDetail(input.readInt() != 0);
+                    default -> listener.onUnknownPacket(packet);
+                }
+            } catch (SocketTimeoutException e) {
+                // Liveness is checked after this block
+            }
+
+            if (liveness.isDead()) {
+                return End.TIMED_OUT;
+            }
+
+            // Fixes carry the probe themselves, a separate one is needed only if none go out
+            if (liveness.shouldProbe()) {
+                listener.onIdle();
+            }
+        }
+        return End.CLOSED;
+    }
+
+    /**
+     * Send a serialized ServerResponse, marked as a probe if it's time for one. Safe to call from
+     * any thread.
+     *
+     * @return bytes written, length prefix included
+     */
+    public int send(byte[] response) throws IOException {
+        return send(response, response.length);
+    }
+
+    /**
+     * Send the first {@code length} bytes of a reused buffer, see {@link #send(byte[])}
+     */
+    public int send(byte[] response, int length) throws IOException {
+        boolean probe = liveness.shouldProbe();
+        if (probe) {
+            liveness.onProbeSent();
+        }
+        channel.writeFrame(response, length, probe ? PROBE_FIELD : null);
+        return FRAME_HEADER_SIZE + length + (probe ? PROBE_FIELD.length : 0);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.shared;
+
+import android.content.SharedPreferences;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Typed in-memory snapshot of an app's preferences.
+ * <p>
+ * The snapshot is loaded once and replaced as a whole whenever a preference changes, so readers
+ * on any thread get a consistent set of values with a single volatile read and never touch the
+ * preferences machinery. Listeners are called on the main thread with the old and the new
+ * snapshot and apply changes to running components.
+ *
+ * @param <T> immutable snapshot type
+ */
+public class ConfigStore<T> {
+    public interface Loader<T> {
+        T load(SharedPreferences prefs);
+    }
+
+    public interface Listener<T> {
+        void onConfigChanged(T oldConfig, T newConfig);
+    }
+
+    private final SharedPreferences prefs;
+    private final Loader<T> loader;
+    private final CopyOnWriteArrayList<Listener<T>> listeners = new CopyOnWriteArrayList<>();
+    private volatile T current;
+
+    // SharedPreferences holds its listeners weakly, this reference keeps it alive
+    private final SharedPreferences.OnSharedPreferenceChangeListener prefsListener =
+            (prefs, key) -> reload();
+
+    public ConfigStore(SharedPreferences prefs, Loader<T> loader) {
+        this.prefs = prefs;
+        this.loader = loader;
+        this.current = loader.load(prefs);
+        prefs.registerOnSharedPreferenceChangeListener(prefsListener);
+    }
+
+    public T get() {
+        return current;
+    }
+
+    /**
+     * Changes made through the editor are published to the snapshot once applied
+     */
+    public SharedPreferences.Editor edit() {
+        return prefs.edit();
+    }
+
+    public void addListener(Listener<T> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    private void reload() {
+        T oldConfig = current;
+        T newConfig = loader.load(prefs);
+        current = newConfig;
+        for (Listener<T> listener : listeners) {
+            listener.onConfigChanged(oldConfig, newConfig);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.shared;
+
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+/**
+ * Ring of serialized fixes in shared memory, written by the server and read by consumers on the
+ * same device without any copy through a socket.
+ * <p>
+ * Every slot is guarded by a sequence lock: the writer makes the slot's sequence odd, writes the
+ * payload and makes it even again, then publishes the new write count. A reader takes the latest
+ * published slot and retries if its sequence was odd or changed while copying. With several slots
+ * the writer is normally a slot ahead of any reader, so retries are rare. Memory fences need
+ * {@link VarHandle}'s static fence methods, so the ring may only be used on Android 13 and newer.
+ * <p>
+ * Layout: header of {@link #HEADER_SIZE} bytes (magic, slot count, slot size, write count), then
+ * slots of {@code slotSize} bytes (sequence, payload length, payload).
+ */
+public class FixRing {
+    private static final int MAGIC = 0x474E5352; // "GNSR"
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int SLOT_COUNT_OFFSET = 4;
+    private static final int SLOT_SIZE_OFFSET = 8;
+    private static final int WRITE_COUNT_OFFSET = 16;
+    private static final int SLOT_HEADER_SIZE = 8;
+    private static final int MAX_READ_ATTEMPTS = 8;
+
+    private final SharedMemory memory;
+    private final ByteBuffer buffer;
+    // Positioned view for bulk copies; one writer or one reader thread per instance
+    private final ByteBuffer view;
+    private final int slotCount;
+    private final int slotSize;
+    // Write count seen by the last readNew(), fixes already in the ring when it was opened are old
+    private long lastReadCount = 0;
+
+    private FixRing(SharedMemory memory, ByteBuffer buffer, int slotCount, int slotSize) {
+        this.memory = memory;
+        this.buffer = buffer;
+        this.view = buffer.duplicate();
+        this.slotCount = slotCount;
+        this.slotSize = slotSize;
+    }
+
+    /**
+     * Create a new ring for writing
+     */
+    public static FixRing create(String name, int slotCount, int slotSize) throws ErrnoException {
+        SharedMemory memory = SharedMemory.create(name, HEADER_SIZE + slotCount * slotSize);
+        ByteBuffer buffer = memory.mapReadWrite();
+        // Consumers may only map it read-only, our own mapping stays writable
+        memory.setProtect(OsConstants.PROT_READ);
+        buffer.putInt(SLOT_COUNT_OFFSET, slotCount);
+        buffer.putInt(SLOT_SIZE_OFFSET, slotSize);
+        buffer.putLong(WRITE_COUNT_OFFSET, 0);
+        VarHandle.releaseFence();
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        return new FixRing(memory, buffer, slotCount, slotSize);
+    }
+
+    /**
+     * Map a ring received from the server for reading
+     */
+    public static FixRing open(SharedMemory memory) throws ErrnoException {
+        ByteBuffer buffer = memory.mapReadOnly();
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IllegalArgumentException("Not a fix ring");
+        }
+        VarHandle.acquireFence();
+        int slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+        int slotSize = buffer.getInt(SLOT_SIZE_OFFSET);
+        if (slotCount <= 0 || slotSize <= SLOT_HEADER_SIZE || HEADER_SIZE + (long) slotCount * slotSize > buffer.capacity()) {
+            throw new IllegalArgumentException("Corrupt fix ring header");
+        }
+        FixRing ring = new FixRing(memory, buffer, slotCount, slotSize);
+        ring.lastReadCount = ring.getWriteCount();
+        return ring;
+    }
+
+    public SharedMemory getSharedMemory() {
+        return memory;
+    }
+
+    public int getMaxPayloadSize() {
+        return slotSize - SLOT_HEADER_SIZE;
+    }
+
+    /**
+     * Publish a fix. Only one thread may write.
+     *
+     * @return false if the payload doesn't fit a slot
+     */
+    public boolean write(byte[] data) {
+        if (data.length > getMaxPayloadSize()) {
+            return false;
+        }
+
+        long writeCount = buffer.getLong(WRITE_COUNT_OFFSET);
+        int offset = slotOffset(writeCount);
+        int sequence = buffer.getInt(offset);
+
+        buffer.putInt(offset, sequence + 1);
+        VarHandle.storeStoreFence();
+        buffer.putInt(offset + 4, data.length);
+        view.position(offset + SLOT_HEADER_SIZE);
+        view.put(data);
+        VarHandle.releaseFence();
+        buffer.putInt(offset, sequence + 2);
+        VarHandle.releaseFence();
+        buffer.putLong(WRITE_COUNT_OFFSET, writeCount + 1);
+        return true;
+    }
+
+    /**
+     * @return number of fixes written so far, a new fix is available when it changes
+     */
+    public long getWriteCount() {
+        long writeCount = buffer.getLong(WRITE_COUNT_OFFSET);
+        VarHandle.acquireFence();
+        return writeCount;
+    }
+
+    /**
+     * Copy the latest fix into {@code dst}, which should hold {@link #getMaxPayloadSize()} bytes.
+     *
+     * @return payload length, or -1 if nothing was written yet or the writer kept overtaking us
+     */
+    public int readLatest(byte[] dst) {
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            long writeCount = getWriteCount();
+            if (writeCount == 0) {
+                return -1;
+            }
+
+            int offset = slotOffset(writeCount - 1);
+            int sequence = buffer.getInt(offset);
+            VarHandle.acquireFence();
+            if ((sequence & 1) != 0) {
+                continue;
+            }
+
+            int length = buffer.getInt(offset + 4);
+            if (length < 0 || length > getMaxPayloadSize() || length > dst.length) {
+                continue;
+            }
+            view.position(offset + SLOT_HEADER_SIZE);
+            view.get(dst, 0, length);
+
+            VarHandle.loadLoadFence();
+            if (buffer.getInt(offset) == sequence) {
+                return length;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy the latest fix if one was written since the previous call, for readers woken by a
+     * doorbell that may also ring without a new fix
+     *
+     * @return payload length, 0 if there is no new fix, or -1 as {@link #readLatest}
+     */
+    public int readNew(byte[] dst) {
+        long writeCount = getWriteCount();
+        if (writeCount == lastReadCount) {
+            return 0;
+        }
+        lastReadCount = writeCount;
+        return readLatest(dst);
+    }
+
+    private int slotOffset(long index) {
+        return HEADER_SIZE + (int) (index % slotCount) * slotSize;
+    }
+
+    public void close() {
+        SharedMemory.unmap(buffer);
+        memory.close();
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.shared;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.VarHandle;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cheap replacement for logging on hot paths.
+ * <p>
+ * An event is a predefined message with up to four numeric arguments. Recording one writes its
+ * id, a timestamp and the arguments into a preallocated ring owned by the calling thread, without
+ * locks or allocations; the text is produced only by {@link #dump(Writer)} at export time. Each
+ * thread keeps its last {@link #RING_CAPACITY} events. Events below the current level are not
+ * recorded at all.
+ */
+public final class FlightRecorder {
+    private static final String TAG = "FlightRecorder";
+
+    public static final int RING_CAPACITY = 512;
+    // Rings of finished threads are dropped beyond this count
+    private static final int MAX_RINGS = 64;
+    // Event id, timestamp and four arguments
+    private static final int SLOT_SIZE = 6;
+
+    /**
+     * A message template. Arguments of {@code %e}, {@code %f} and {@code %g} conversions are
+     * printed as doubles, all other arguments as whole numbers.
+     */
+    public static final class Event {
+        final int id;
+        final int level;
+        final String tag;
+        final String format;
+        final boolean[] doubleArgs;
+
+        Event(int id, int level, String tag, String format, boolean[] doubleArgs) {
+            this.id = id;
+            this.level = level;
+            this.tag = tag;
+            this.format = format;
+            this.doubleArgs = doubleArgs;
+        }
+    }
+
+    private static final class Ring {
+        final Thread thread;
+        final String threadName;
+        final long[] slots = new long[RING_CAPACITY * SLOT_SIZE];
+        // Number of events ever written, published after the slot is filled
+        final AtomicLong head = new AtomicLong();
+
+        Ring(Thread thread) {
+            this.thread = thread;
+            this.threadName = thread.getName();
+        }
+
+        void write(int eventId, double a0, double a1, double a2, double a3) {
+            long index = head.get();
+            int offset = (int) (index % RING_CAPACITY) * SLOT_SIZE;
+            slots[offset] = eventId;
+            slots[offset + 1] = SystemClock.elapsedRealtimeNanos();
+            slots[offset + 2] = Double.doubleToRawLongBits(a0);
+            slots[offset + 3] = Double.doubleToRawLongBits(a1);
+            slots[offset + 4] = Double.doubleToRawLongBits(a2);
+            slots[offset + 5] = Double.doubleToRawLongBits(a3);
+            head.lazySet(index + 1);
+        }
+    }
+
+    private static final class Entry {
+        final long timestampNanos;
+        final String threadName;
+        final Event event;
+        final double[] args;
+
+        Entry(long timestampNanos, String threadName, Event event, double[] args) {
+            this.timestampNanos = timestampNanos;
+            this.threadName = threadName;
+            this.event = event;
+            this.args = args;
+        }
+    }
+
+    private static final List<Event> events = new ArrayList<>();
+    private static final List<Ring> rings = new ArrayList<>();
+    private static final ThreadLocal<Ring> threadRing = ThreadLocal.withInitial(FlightRecorder::createRing);
+
+    private static volatile int level = Log.VERBOSE;
+    private static volatile boolean mirrorToLogcat = false;
+
+    private FlightRecorder() {
+    }
+
+    /**
+     * Define an event, normally once per call site as a static constant
+     *
+     * @param level {@link Log} priority of the event
+     */
+    public static Event define(int level, String tag, String format) {
+        synchronized (events) {
+            Event event = new Event(events.size(), level, tag, format, parseArgs(format));
+            events.add(event);
+            return event;
+        }
+    }
+
+    /**
+     * Events below this {@link Log} priority are skipped, {@link Log#ASSERT} + 1 turns recording off
+     */
+    public static void setLevel(int level) {
+        FlightRecorder.level = level;
+    }
+
+    /**
+     * Also send every recorded event to logcat, which brings back the formatting cost
+     */
+    public static void setMirrorToLogcat(boolean mirror) {
+        mirrorToLogcat = mirror;
+    }
+
+    public static boolean isRecorded(Event event) {
+        return event.level >= level;
+    }
+
+    public static void record(Event event) {
+        record(event, 0, 0, 0, 0);
+    }
+
+    public static void record(Event event, double a0) {
+        record(event, a0, 0, 0, 0);
+    }
+
+    public static void record(Event event, double a0, double a1) {
+        record(event, a0, a1, 0, 0);
+    }
+
+    public static void record(Event event, double a0, double a1, double a2) {
+        record(event, a0, a1, a2, 0);
+    }
+
+    public static void record(Event event, double a0, double a1, double a2, double a3) {
+        if (event.level < level) {
+            return;
+        }
+        threadRing.get().write(event.id, a0, a1, a2, a3);
+        if (mirrorToLogcat) {
+            Log.println(event.level, event.tag, format(event, new double[]{a0, a1, a2, a3}));
+        }
+    }
+
+    /**
+     * Write all recorded events of all threads in time order, one logcat-like line per event
+     */
+    public static void dump(Writer writer) throws IOException {
+        dump(writer, null);
+    }
+
+    /**
+     * Write recorded occurrences of one event of all threads in time order
+     *
+     * @param only the event to write, or null for all events
+     */
+    public static void dump(Writer writer, Event only) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        List<Ring> snapshot;
+        synchronized (rings) {
+            snapshot = new ArrayList<>(rings);
+        }
+        for (Ring ring : snapshot) {
+            collect(ring, only, entries);
+        }
+        entries.sort((a, b) -> Long.compare(a.timestampNanos, b.timestampNanos));
+
+        // Timestamps are on the elapsed realtime clock, shown as wall clock time
+        long wallOffsetMillis = System.currentTimeMillis() - SystemClock.elapsedRealtimeNanos() / 1_000_000;
+        SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        Date date = new Date();
+        for (Entry entry : entries) {
+            date.setTime(wallOffsetMillis + entry.timestampNanos / 1_000_000);
+            writer.append(timeFormat.format(date)).append(' ')
+                    .append(entry.threadName).append(' ')
+                    .append(levelChar(entry.event.level)).append('/')
+                    .append(entry.event.tag).append(": ")
+                    .append(format(entry.event, entry.args)).append('\n');
+        }
+    }
+
+    private static void collect(Ring ring, Event only, List<Entry> entries) {
+        Event[] known;
+        synchronized (events) {
+            known = events.toArray(new Event[0]);
+        }
+
+        long end = ring.head.get();
+        long start = Math.max(0, end - RING_CAPACITY);
+        List<Entry> copied = new ArrayList<>((int) (end - start));
+        List<Long> indices = new ArrayList<>((int) (end - start));
+        for (long index = start; index < end; index++) {
+            int offset = (int) (index % RING_CAPACITY) * SLOT_SIZE;
+            int eventId = (int) ring.slots[offset];
+            if (eventId < 0 || eventId >= known.length || (only != null && eventId != only.id)) {
+                continue;
+            }
+            double[] args = new double[4];
+            for (int i = 0; i < 4; i++) {
+                args[i] = Double.longBitsToDouble(ring.slots[offset + 2 + i]);
+            }
+            copied.add(new Entry(ring.slots[offset + 1], ring.threadName, known[eventId], args));
+            indices.add(index);
+        }
+
+        // The owner kept writing meanwhile, slots it may have reused are not trusted. The slot reads
+        // above must not be reordered after the head read, like in FixRing; an atomic update has
+        // full fence semantics on releases without VarHandle's static fences.
+        long head;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            VarHandle.loadFence();
+            head = ring.head.get();
+        } else {
+            head = ring.head.getAndAdd(0);
+        }
+        long firstValid = head - RING_CAPACITY + 1;
+        for (int i = 0; i < copied.size(); i++) {
+            if (indices.get(i) >= firstValid) {
+                entries.add(copied.get(i));
+            }
+        }
+    }
+
+    private static Ring createRing() {
+        Ring ring = new Ring(Thread.currentThread());
+        synchronized (rings) {
+            if (rings.size() >= MAX_RINGS) {
+                dropFinishedRing();
+            }
+            rings.add(ring);
+        }
+        return ring;
+    }
+
+    private static void dropFinishedRing() {
+        // The ring of a finished thread with the oldest last event goes first
+        Ring oldest = null;
+        long oldestTime = Long.MAX_VALUE;
+        for (Ring ring : rings) {
+            if (ring.thread.isAlive()) {
+                continue;
+            }
+            long head = ring.head.get();
+            long lastTime = head == 0 ? 0 : ring.slots[(int) ((head - 1) % RING_CAPACITY) * SLOT_SIZE + 1];
+            if (lastTime < oldestTime) {
+                oldestTime = lastTime;
+                oldest = ring;
+            }
+        }
+        if (oldest != null) {
+            rings.remove(oldest);
+        } else {
+            Log.w(TAG, "More than " + MAX_RINGS + " live threads are recording events");
+        }
+    }
+
+    private static String format(Event event, double[] args) {
+        Object[] values = new Object[event.doubleArgs.length];
+        for (int i = 0; i < values.length; i++) {
+            double value = i < args.length ? args[i] : 0;
+            values[i] = event.doubleArgs[i] ? (Object) value : (Object) (long) value;
+        }
+        try {
+            return String.format(Locale.US, event.format, values);
+        } catch (RuntimeException e) {
+            return event.format;
+        }
+    }
+
+    /**
+     * @return for every argument of the format, whether it is printed as a double
+     */
+    private static boolean[] parseArgs(String format) {
+        List<Boolean> kinds = new ArrayList<>();
+        for (int i = 0; i < format.length(); i++) {
+            if (format.charAt(i) != '%') {
+                continue;
+            }
+            // Skip flags, width and precision up to the conversion character
+            int j = i + 1;
+            while (j < format.length() && "-#+ 0,(.123456789".indexOf(format.charAt(j)) >= 0) {
+                j++;
+            }
+            if (j >= format.length()) {
+                break;
+            }
+            char conversion = format.charAt(j);
+            if (conversion != '%' && conversion != 'n') {
+                kinds.add(conversion == 'f' || conversion == 'e' || conversion == 'g');
+            }
+            i = j;
+        }
+        if (kinds.size() > 4) {
+            throw new IllegalArgumentException("At most 4 arguments are supported: " + format);
+        }
+        boolean[] result = new boolean[kinds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = kinds.get(i);
+        }
+        return result;
+    }
+
+    private static char levelChar(int level) {
+        return switch (level) {
+            case Log.VERBOSE -> 'V';
+            case Log.DEBUG -> 'D';
+            case Log.INFO -> 'I';
+            case Log.WARN -> 'W';
+            case Log.ERROR -> 'E';
+            default -> 'A';
+        };
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.shared;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stream connection between server and client, either over TCP or over a local socket for
+ * consumers on the same device.
+ * <p>
+ * Server messages are framed as a 4-byte big-endian length followed by the serialized message;
+ * client messages are single packet bytes, some followed by a 4-byte argument. Both transports
+ * use exactly the same framing. The local transport is {@link LocalFrameChannel}, this class has no
+ * Android dependency and is also used by the headless server.
+ */
+public abstract class FrameChannel implements Closeable {
+    // Abstract namespace name of the server's local socket
+    public static final String LOCAL_SOCKET_NAME = "dezz.gnssshare.stream";
+
+    // Anything larger means the stream is out of sync
+    private static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    // Not a monitor, the headless server writes from virtual threads
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Guarded by writeLock
+    private final byte[] header = new byte[4];
+
+    public abstract InputStream getInputStream() throws IOException;
+
+    public abstract OutputStream getOutputStream() throws IOException;
+
+    public abstract void setReadTimeout(int timeoutMillis) throws IOException;
+
+    public abstract boolean isClosed();
+
+    /**
+     * @return the peer's IP address, or null for local connections
+     */
+    public abstract InetAddress getRemoteAddress();
+
+    /**
+     * @return the address of our end of the connection, or null for local connections
+     */
+    public abstract InetAddress getLocalAddress();
+
+    public abstract String getDescription();
+
+    public void writeFrame(byte[] data) throws IOException {
+        writeFrame(data, data.length);
+    }
+
+    /**
+     * Write the first {@code length} bytes of {@code data} as a frame
+     */
+    public void writeFrame(byte[] data, int length) throws IOException {
+        writeFrame(data, length, null);
+    }
+
+    /**
+     * Write the first {@code length} bytes of {@code data} followed by {@code suffix} as one frame,
+     * e.g. a field appended to an already serialized message
+     */
+    public void writeFrame(byte[] data, int length, byte[] suffix) throws IOException {
+        int frameLength = length + (suffix == null ? 0 : suffix.length);
+        writeLock.lock();
+        try {
+            OutputStream output = getOutputStream();
+            header[0] = (byte) (frameLength >>> 24);
+            header[1] = (byte) (frameLength >>> 16);
+            header[2] = (byte) (frameLength >>> 8);
+            header[3] = (byte) frameLength;
+            output.write(header);
+            output.write(data, 0, length);
+            if (suffix != null) {
+                output.write(suffix);
+            }
+            output.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public byte[] readFrame() throws IOException {
+        InputStream input = getInputStream();
+
+        byte[] lengthBytes = new byte[4];
+        readFully(input, lengthBytes);
+        int length = ((lengthBytes[0] & 0xFF) << 24) |
+                ((lengthBytes[1] & 0xFF) << 16) |
+                ((lengthBytes[2] & 0xFF) << 8) |
+                (lengthBytes[3] & 0xFF);
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+
+        byte[] data = new byte[length];
+        readFully(input, data);
+        return data;
+    }
+
+    public void writePacket(byte packet) throws IOException {
+        writeLock.lock();
+        try {
+            OutputStream output = getOutputStream();
+            output.write(packet);
+            output.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void writePacket(byte packet, int argument) throws IOException {
+        writeLock.lock();
+        try {
+            DataOutputStream output = new DataOutputStream(getOutputStream());
+            output.writeByte(packet);
+            output.writeInt(argument);
+            output.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void readFully(InputStream input, byte[] buffer) throws IOException {
+        int bytesRead = 0;
+        while (bytesRead < buffer.length) {
+            int read = input.read(buffer, bytesRead, buffer.length - bytesRead);
+            if (read == -1) {
+                throw new IOException("Connection closed by peer");
+            }
+            bytesRead += read;
+        }
+    }
+
+    public static FrameChannel of(Socket socket) {
+        return new TcpChannel(socket);
+    }
+
+    private static class TcpChannel extends FrameChannel {
+        // Frames are flushed whole, so the length prefix and the message leave in one segment
+        private static final int OUTPUT_BUFFER_SIZE = 1024;
+
+        private final Socket socket;
+        private OutputStream output;
+
+        TcpChannel(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (output == null) {
+                output = new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+            }
+            return output;
+        }
+
+        @Override
+        public void setReadTimeout(int timeoutMillis) throws IOException {
+            socket.setSoTimeout(timeoutMillis);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        @Override
+        public InetAddress getRemoteAddress() {
+            return socket.getInetAddress();
+        }
+
+        @Override
+        public InetAddress getLocalAddress() {
+            return socket.getLocalAddress();
+        }
+
+        @Override
+        public String getDescription() {
+            return String.valueOf(socket.getRemoteSocketAddress());
+        }
+    }
+}
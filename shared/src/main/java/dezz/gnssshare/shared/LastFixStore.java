@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.shared;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the last good fix in a small file so it survives reboots.
+ * <p>
+ * The caller passes an already serialized fix; writes are throttled to at most one per
+ * {@code minIntervalMillis}, the most recent unsaved fix is kept in memory and written by
+ * {@link #flush()}. The file lives in device protected storage so it can be read before the user
+ * unlocks the device.
+ */
+public class LastFixStore {
+    private static final String TAG = "LastFixStore";
+
+    private final AtomicFile file;
+    private final long minIntervalMillis;
+
+    private byte[] pending = null;
+    private long lastWriteTime = 0;
+
+    public LastFixStore(Context context, String fileName, long minIntervalMillis) {
+        Context deviceContext = context.getApplicationContext().createDeviceProtectedStorageContext();
+        this.file = new AtomicFile(new File(deviceContext.getFilesDir(), fileName));
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    public synchronized void save(byte[] data) {
+        pending = data;
+        if (lastWriteTime == 0 || SystemClock.elapsedRealtime() - lastWriteTime >= minIntervalMillis) {
+            flush();
+        }
+    }
+
+    public synchronized void flush() {
+        if (pending == null) {
+            return;
+        }
+
+        FileOutputStream output = null;
+        try {
+            output = file.startWrite();
+            output.write(pending);
+            file.finishWrite(output);
+            Log.v(TAG, "Last fix saved, " + pending.length + " bytes");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save last fix", e);
+            if (output != null) {
+                file.failWrite(output);
+            }
+        }
+
+        pending = null;
+        lastWriteTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * @return the last saved fix, or null if there is none
+     */
+    public synchronized byte[] load() {
+        try {
+            return file.readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read last fix", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.shared;
+
+/**
+ * Latency distribution published through {@link Metrics}.
+ * <p>
+ * Every sample increments the counter of the first bucket it fits in, named
+ * {@code <name>.le_<bound>ms}, or {@code <name>.over_<last bound>ms}. Several histograms with
+ * different names can be kept side by side to compare a feature turned on and off.
+ */
+public class LatencyHistogram {
+    private static final long[] BOUNDS = {5, 10, 20, 50, 100, 200, 300, 500, 1000};
+
+    private final String[] bucketNames = new String[BOUNDS.length + 1];
+    private final String countName;
+    private final String sumName;
+
+    public LatencyHistogram(String name) {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            bucketNames[i] = name + ".le_" + BOUNDS[i] + "ms";
+        }
+        bucketNames[BOUNDS.length] = name + ".over_" + BOUNDS[BOUNDS.length - 1] + "ms";
+        countName = name + ".count";
+        sumName = name + ".sum_ms";
+    }
+
+    public void record(long millis) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+        Metrics.increment(bucketNames[bucket]);
+        Metrics.increment(countName);
+        Metrics.add(sumName, millis);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.shared;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks whether the other end of a stream connection is still alive.
+ * <p>
+ * Any frame received from the peer counts as a sign of life, so while fixes flow no extra
+ * traffic is needed. Only after {@code idleGap} of silence should the owner send a probe, which
+ * the peer answers at once. The connection is considered dead when nothing has arrived for the
+ * idle gap plus a response timeout derived from the measured round trip time (RFC 6298
+ * smoothing), capped so the total never exceeds {@code maxTimeout}.
+ * <p>
+ * Time comes from the given monotonic millisecond clock, {@code SystemClock::elapsedRealtime} in
+ * the apps, so the class has no Android dependency and can be tested with a fake clock.
+ */
+public class LivenessMonitor {
+    // Response timeout used until the first round trip is measured, and its lower bound
+    private static final long INITIAL_RESPONSE_TIMEOUT = 1000;
+    private static final long MIN_RESPONSE_TIMEOUT = 200;
+
+    private long idleGap;
+    private final long maxTimeout;
+    private final LongSupplier clock;
+
+    private long lastReceiveTime;
+    private boolean probePending = false;
+    private long probeSentTime = 0;
+    private long smoothedRtt = -1;
+    private long rttVariance = 0;
+
+    public LivenessMonitor(long idleGap, long maxTimeout, LongSupplier clock) {
+        this.idleGap = idleGap;
+        this.maxTimeout = maxTimeout;
+        this.clock = clock;
+        this.lastReceiveTime = clock.getAsLong();
+    }
+
+    /**
+     * Follow a change of the expected silence, e.g. when the peer was asked for fewer updates
+     */
+    public synchronized void setIdleGap(long idleGap) {
+        this.idleGap = idleGap;
+    }
+
+    public synchronized void onFrameReceived() {
+        long now = clock.getAsLong();
+        lastReceiveTime = now;
+        if (probePending) {
+            updateRtt(now - probeSentTime);
+            probePending = false;
+        }
+    }
+
+    /**
+     * @return true if the peer has been silent long enough to send a probe and none is pending
+     */
+    public synchronized boolean shouldProbe() {
+        return !probePending && clock.getAsLong() - lastReceiveTime >= idleGap;
+    }
+
+    public synchronized void onProbeSent() {
+        probePending = true;
+        probeSentTime = clock.getAsLong();
+    }
+
+    public synchronized boolean isDead() {
+        return clock.getAsLong() - lastReceiveTime > getTimeout();
+    }
+
+    /**
+     * @return how long the peer may stay silent before it is considered dead
+     */
+    public synchronized long getTimeout() {
+        long responseTimeout = smoothedRtt < 0
+                ? INITIAL_RESPONSE_TIMEOUT
+                : Math.max(MIN_RESPONSE_TIMEOUT, smoothedRtt + 4 * rttVariance);
+        return Math.min(maxTimeout, idleGap + responseTimeout);
+    }
+
+    /**
+     * @return smoothed round trip time in milliseconds, or -1 if not measured yet
+     */
+    public synchronized long getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    private void updateRtt(long rtt) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariance = rtt / 2;
+        } else {
+            rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - rtt)) / 4;
+            smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+        }
+    }
+}
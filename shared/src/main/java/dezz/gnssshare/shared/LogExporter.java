@@ -18,95 +18,221 @@
 package dezz.gnssshare.shared;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Exports logcat output, the flight recorder, metrics and app-provided sections into one gzipped
+ * text file.
+ * <p>
+ * The export runs on a background thread and streams everything straight into the compressor, so
+ * the size of a long session doesn't matter. Old exports are kept within a byte budget.
+ */
 public class LogExporter {
     private static final String TAG = "LogExporter";
     private static final String LOG_FILE_MIDDLE = "-logs--";
-    private static final String LOG_FILE_EXT = ".txt";
+    private static final String LOG_FILE_EXT = ".txt.gz";
+    // Exports of older versions, removed by the retention policy as well
+    private static final String OLD_LOG_FILE_EXT = ".txt";
     private static final SimpleDateFormat DATE_FORMAT =
             new SimpleDateFormat("yyyy-MM-dd--HH-mm-ss", Locale.US);
+    // Total size of kept exports, the newest one is kept even if it's larger
+    private static final long MAX_LOG_BYTES = 16 * 1024 * 1024;
+    // Progress is reported after every this many uncompressed bytes
+    private static final long PROGRESS_STEP = 256 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    public interface Callback {
+        /**
+         * @param bytesWritten uncompressed bytes written so far
+         */
+        void onProgress(long bytesWritten);
+
+        void onComplete(File file);
+
+        void onError(Exception e);
+    }
 
     /**
-     * Export logs to a file in the app's cache directory
-     *
-     * @param context Application context
-     * @return File object pointing to the exported logs, or null if failed
+     * Extra content of the export, e.g. recent fixes
      */
-    public static File exportLogs(Context context, String appName) {
-        File logFile = createLogFile(context, appName);
-        if (logFile == null) {
-            return null;
+    public interface Section {
+        void write(Writer writer) throws IOException;
+    }
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final Map<String, Section> sections = new ConcurrentSkipListMap<>();
+
+    /**
+     * Add a section to every export, replacing a previous section with the same title
+     */
+    public static void registerSection(String title, Section section) {
+        sections.put(title, section);
+    }
+
+    public static void unregisterSection(String title) {
+        sections.remove(title);
+    }
+
+    /**
+     * Export logs to a file in the app's cache directory on a background thread, then apply the
+     * retention policy. Callbacks are called on the main thread.
+     */
+    public static void exportLogsAsync(Context context, String appName, Callback callback) {
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            try {
+                File logFile = exportLogs(appContext, appName,
+                        bytes -> mainHandler.post(() -> callback.onProgress(bytes)));
+                cleanupOldLogs(appContext, appName);
+                mainHandler.post(() -> callback.onComplete(logFile));
+            } catch (IOException | InterruptedException e) {
+                Log.e(TAG, "Error exporting logs", e);
+                mainHandler.post(() -> callback.onError(e));
+            }
+        });
+    }
+
+    private interface ProgressListener {
+        void onProgress(long bytesWritten);
+    }
+
+    /**
+     * Counts uncompressed bytes on their way into the compressor
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final ProgressListener listener;
+        private long count = 0;
+        private long nextReport = PROGRESS_STEP;
+
+        CountingOutputStream(OutputStream out, ProgressListener listener) {
+            this.out = out;
+            this.listener = listener;
         }
 
-        try {
-            Process process = Runtime.getRuntime().exec("logcat -d *:V --pid=" + android.os.Process.myPid());
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream())
-            );
-            FileOutputStream output = new FileOutputStream(logFile);
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output));
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            advance(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            advance(len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                writer.append(line).append("\n");
+        private void advance(long bytes) {
+            count += bytes;
+            if (count >= nextReport) {
+                nextReport = count + PROGRESS_STEP;
+                listener.onProgress(count);
             }
+        }
+    }
 
-            writer.close();
-            output.close();
-            reader.close();
+    private static File exportLogs(Context context, String appName, ProgressListener listener)
+            throws IOException, InterruptedException {
+        File logFile = createLogFile(context, appName);
+
+        Process process = Runtime.getRuntime().exec("logcat -d *:V --pid=" + android.os.Process.myPid());
+        boolean success = false;
+        try (CountingOutputStream output = new CountingOutputStream(
+                new GZIPOutputStream(new FileOutputStream(logFile), BUFFER_SIZE), listener);
+             Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+             InputStream logcat = process.getInputStream()) {
 
+            writer.append("--- Logcat ---\n").flush();
+            // Raw bytes, no need to decode and split lines
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = logcat.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
             if (process.waitFor() != 0) {
-                Log.e(TAG, "Failed to export logs, logcat command exited with result = " + process.exitValue());
-                return null;
+                throw new IOException("logcat exited with result " + process.exitValue());
             }
 
-            Log.d(TAG, "Logs exported to: " + logFile.getAbsolutePath());
-            return logFile;
-        } catch (IOException | InterruptedException e) {
-            Log.e(TAG, "Error exporting logs", e);
-            return null;
+            // Hot paths record to the flight recorder instead of logcat
+            writer.append("\n--- Flight recorder ---\n");
+            FlightRecorder.dump(writer);
+
+            writer.append("\n--- Metrics ---\n");
+            writer.append(Metrics.dump());
+
+            for (Map.Entry<String, Section> entry : sections.entrySet()) {
+                writer.append("\n--- ").append(entry.getKey()).append(" ---\n");
+                entry.getValue().write(writer);
+            }
+            // Finish the GZIP trailer here, a failed close must not leave a truncated file behind
+            writer.close();
+            success = true;
+        } finally {
+            process.destroy();
+            if (!success && !logFile.delete()) {
+                Log.w(TAG, "Failed to delete incomplete log file: " + logFile.getAbsolutePath());
+            }
         }
+
+        Log.d(TAG, "Logs exported to: " + logFile.getAbsolutePath() + ", " + logFile.length() + " bytes");
+        return logFile;
     }
 
     /**
      * Create a log file with timestamp in the app's cache directory
      */
-    private static File createLogFile(Context context, String appName) {
-        try {
-            String timeStamp = DATE_FORMAT.format(new Date());
-            String fileName = appName + LOG_FILE_MIDDLE + timeStamp + LOG_FILE_EXT;
-            File logDir = getLogDir(context);
+    private static File createLogFile(Context context, String appName) throws IOException {
+        String timeStamp;
+        synchronized (DATE_FORMAT) {
+            timeStamp = DATE_FORMAT.format(new Date());
+        }
+        String fileName = appName + LOG_FILE_MIDDLE + timeStamp + LOG_FILE_EXT;
+        File logDir = getLogDir(context);
 
-            if (logDir.mkdirs()) {
-                Log.d(TAG, "Created new log directory: " + logDir.getAbsolutePath());
-            }
+        if (logDir.mkdirs()) {
+            Log.d(TAG, "Created new log directory: " + logDir.getAbsolutePath());
+        }
 
-            File logFile = new File(logDir, fileName);
-            if (logFile.createNewFile()) {
-                Log.d(TAG, "Created log file: " + logFile.getAbsolutePath());
-            }
-            return logFile;
-        } catch (IOException e) {
-            Log.e(TAG, "Error creating log file", e);
-            return null;
+        File logFile = new File(logDir, fileName);
+        if (logFile.createNewFile()) {
+            Log.d(TAG, "Created log file: " + logFile.getAbsolutePath());
         }
+        return logFile;
     }
 
     /**
-     * Clean up old log files (keep last 5)
+     * Clean up old log files, keeping the newest ones within {@link #MAX_LOG_BYTES}
      */
     public static void cleanupOldLogs(Context context, String appName) {
         try {
@@ -116,10 +242,11 @@ public class LogExporter {
             }
 
             File[] logFiles = logDir.listFiles((dir, name) ->
-                    name.startsWith(appName + LOG_FILE_MIDDLE) && name.endsWith(LOG_FILE_EXT)
+                    name.startsWith(appName + LOG_FILE_MIDDLE) &&
+                            (name.endsWith(LOG_FILE_EXT) || name.endsWith(OLD_LOG_FILE_EXT))
             );
 
-            if (logFiles == null || logFiles.length <= 5) {
+            if (logFiles == null || logFiles.length <= 1) {
                 return;
             }
 
@@ -128,9 +255,13 @@ public class LogExporter {
                     Long.compare(f2.lastModified(), f1.lastModified())
             );
 
-            // Keep only the 5 most recent log files
-            for (int i = 5; i < logFiles.length; i++) {
+            long totalBytes = logFiles[0].length();
+            for (int i = 1; i < logFiles.length; i++) {
                 File logFile = logFiles[i];
+                totalBytes += logFile.length();
+                if (totalBytes <= MAX_LOG_BYTES) {
+                    continue;
+                }
                 String path = logFile.getAbsolutePath();
                 if (logFile.delete()) {
                     Log.d(TAG, "Deleted old log file: " + path);
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.shared;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.util.Log;
+
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Keeps Wi-Fi out of power save while fixes are streamed.
+ * <p>
+ * A station in 802.11 power save gets its frames buffered by the access point until the next
+ * beacon, which adds up to a few hundred milliseconds to random fixes. The lock is meant to be
+ * held only while streaming, as it costs battery. On Android 10+ the low latency lock is used,
+ * older versions fall back to the high performance lock.
+ */
+public class LowLatencyWifi {
+    private static final String TAG = "LowLatencyWifi";
+
+    // DSCP EF (expedited forwarding), mapped to the voice access category by WMM
+    private static final int TRAFFIC_CLASS_LOW_LATENCY = 0xB8;
+
+    private final WifiManager.WifiLock wifiLock;
+
+    public LowLatencyWifi(Context context, String tag) {
+        WifiManager wifiManager = context.getApplicationContext().getSystemService(WifiManager.class);
+        if (wifiManager == null) {
+            wifiLock = null;
+            return;
+        }
+        int mode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? WifiManager.WIFI_MODE_FULL_LOW_LATENCY
+                : WifiManager.WIFI_MODE_FULL_HIGH_PERF;
+        wifiLock = wifiManager.createWifiLock(mode, tag);
+        wifiLock.setReferenceCounted(false);
+    }
+
+    public void acquire() {
+        if (wifiLock != null && !wifiLock.isHeld()) {
+            wifiLock.acquire();
+            Log.d(TAG, "Wi-Fi lock acquired");
+        }
+    }
+
+    public void release() {
+        if (wifiLock != null && wifiLock.isHeld()) {
+            wifiLock.release();
+            Log.d(TAG, "Wi-Fi lock released");
+        }
+    }
+
+    /**
+     * Mark the socket's traffic as latency sensitive and disable Nagle's algorithm, so small fix
+     * frames are sent at once and queued ahead of bulk traffic.
+     */
+    public static void applySocketOptions(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setTrafficClass(TRAFFIC_CLASS_LOW_LATENCY);
+        } catch (SocketException e) {
+            Log.w(TAG, "Failed to set low latency socket options", e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.gnssshare.shared;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide named counters and gauges.
+ * <p>
+ * Updating a metric is a map lookup plus an atomic operation, so it is cheap enough for the fix
+ * path. Names are dotted, e.g. {@code "server.clients"}.
+ */
+public class Metrics {
+    private static final ConcurrentHashMap<String, AtomicLong> values = new ConcurrentHashMap<>();
+
+    private static AtomicLong get(String name) {
+        AtomicLong value = values.get(name);
+        if (value == null) {
+            value = values.computeIfAbsent(name, k -> new AtomicLong());
+        }
+        return value;
+    }
+
+    public static void set(String name, long value) {
+        get(name).set(value);
+    }
+
+    public static void increment(String name) {
+        get(name).incrementAndGet();
+    }
+
+    public static void add(String name, long delta) {
+        get(name).addAndGet(delta);
+    }
+
+    public static long value(String name) {
+        AtomicLong value = values.get(name);
+        return value == null ? 0 : value.get();
+    }
+
+    /**
+     * @return all metrics sorted by name
+     */
+    public static Map<String, Long> snapshot() {
+        TreeMap<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : values.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return all metrics as "name = value" lines
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+            sb.append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.shared;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClientSessionTest {
+    private long now = 0;
+    private final List<String> calls = new ArrayList<>();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private final ClientSession.Listener listener = new ClientSession.Listener() {
+        @Override
+        public void onPing() {
+            calls.add("ping");
+        }
+
+        @Override
+        public void onPong(long smoothedRtt) {
+            calls.add("pong");
+        }
+
+        @Override
+        public void onUpdateInterval(int interval) {
+            calls.add("interval " + interval);
+        }
+
+        @Override
+        public void onRingMode() {
+            calls.add("ring");
+        }
+
+        @Override
+        public void onSatelliteDetail(boolean enabled) {
+            calls.add("satellites " + enabled);
+        }
+
+        @Override
+        public void onUnknownPacket(int packet) {
+            calls.add("unknown " + packet);
+        }
+
+        @Override
+        public void onIdle() {
+            calls.add("idle");
+        }
+    };
+
+    private ClientSession createSession(byte... input) {
+        FrameChannel channel = new FrameChannel() {
+            private final InputStream in = new ByteArrayInputStream(input);
+
+            @Override
+            public InputStream getInputStream() {
+                return in;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return output;
+            }
+
+            @Override
+            public void setReadTimeout(int timeoutMillis) {
+            }
+
+            @Override
+            public boolean isClosed() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public InetAddress getRemoteAddress() {
+                return null;
+            }
+
+            @Override
+            public InetAddress getLocalAddress() {
+                return null;
+            }
+
+            @Override
+            public String getDescription() {
+                return "test";
+            }
+        };
+        return new ClientSession(channel, () -> now, listener);
+    }
+
+    @Test
+    public void packetsAreDispatchedUntilTheClientCloses() throws Exception {
+        ClientSession session = createSession(new byte[]{
+                ClientSession.PING_PACKET,
+                ClientSession.UPDATE_INTERVAL_PACKET, 0, 0, 0x03, (byte) 0xE8,
+                ClientSession.RING_MODE_PACKET,
+                ClientSession.SATELLITE_DETAIL_PACKET, 0, 0, 0, 1,
+                ClientSession.PONG_PACKET,
+                0x7F
+        });
+
+        assertEquals(ClientSession.End.CLOSED_BY_CLIENT, session.run());
+        assertEquals(List.of("ping", "interval 1000", "ring", "satellites true", "pong", "unknown 127"), calls);
+    }
+
+    @Test
+    public void responseCarriesTheProbeOnceTheClientIsSilent() throws Exception {
+        ClientSession session = createSession();
+        byte[] response = {0x0A, 0x01, 0x41};
+
+        assertEquals(4 + 3, session.send(response));
+        now = 1500;
+        assertEquals(4 + 3 + 2, session.send(response));
+        // Only one probe until the client answers
+        assertEquals(4 + 3, session.send(response));
+
+        assertArrayEquals(new byte[]{
+                0, 0, 0, 3, 0x0A, 0x01, 0x41,
+                0, 0, 0, 5, 0x0A, 0x01, 0x41, 0x28, 0x01,
+                0, 0, 0, 3, 0x0A, 0x01, 0x41
+        }, output.toByteArray());
+    }
+}
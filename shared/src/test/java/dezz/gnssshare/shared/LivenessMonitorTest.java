@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dezz.gnssshare.shared;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LivenessMonitorTest {
+    private long now = 0;
+    private final LivenessMonitor liveness = new LivenessMonitor(1500, 3000, () -> now);
+
+    @Test
+    public void probesAfterTheIdleGapOnly() {
+        now = 1499;
+        assertFalse(liveness.shouldProbe());
+        now = 1500;
+        assertTrue(liveness.shouldProbe());
+
+        liveness.onProbeSent();
+        assertFalse("One probe at a time", liveness.shouldProbe());
+    }
+
+    @Test
+    public void answeredProbeMeasuresTheRoundTrip() {
+        now = 1500;
+        liveness.onProbeSent();
+        now = 1600;
+        liveness.onFrameReceived();
+
+        assertEquals(100, liveness.getSmoothedRtt());
+        // Idle gap plus the RTT and four times its variance, at least 200 ms
+        assertEquals(1500 + 100 + 4 * 50, liveness.getTimeout());
+        assertFalse(liveness.shouldProbe());
+    }
+
+    @Test
+    public void silentPeerIsDeadAfterTheTimeout() {
+        // Without a measured round trip the response timeout is a second
+        now = 2500;
+        assertFalse(liveness.isDead());
+        now = 2501;
+        assertTrue(liveness.isDead());
+
+        liveness.onFrameReceived();
+        assertFalse(liveness.isDead());
+    }
+
+    @Test
+    public void timeoutIsCapped() {
+        now = 1500;
+        liveness.onProbeSent();
+        now = 11500;
+        liveness.onFrameReceived();
+
+        assertEquals(3000, liveness.getTimeout());
+    }
+
+    @Test
+    public void longerIdleGapKeepsTheDeadline() {
+        // Fixes asked for every 5 s, the peer's own probes are what keeps the link alive
+        liveness.setIdleGap(6500);
+        now = 2999;
+        assertFalse(liveness.shouldProbe());
+        assertFalse(liveness.isDead());
+        now = 3001;
+        assertTrue(liveness.isDead());
+    }
+}